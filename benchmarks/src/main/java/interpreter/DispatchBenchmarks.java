@@ -0,0 +1,44 @@
+package interpreter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+// Each Interpreter dispatch mode on a tight arithmetic while loop. One operation is one loop
+// iteration, so the GC profiler's gc.alloc.rate.norm is the bytes allocated per iteration.
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)  // interpreter.Scope shadows the import
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@OperationsPerInvocation(DispatchBenchmarks.ITERATIONS)
+public class DispatchBenchmarks {
+    static final int ITERATIONS = 100_000;
+
+    // Interpreter.Dispatch names; the enum is package-private, which JMH cannot inject
+    @Param({"REFLECTIVE", "TABLE", "PRIMITIVE"})
+    public String mode;
+
+    private Interpreter.Dispatch dispatch;
+    private AST tree;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dispatch = Interpreter.Dispatch.valueOf(mode);
+        tree = new Parser(new Lexer("I = 0\n" +
+                                    "S = 0\n" +
+                                    "while I < " + ITERATIONS + "\n" +
+                                    "S = S + I * 2\n" +
+                                    "I = I + 1\n" +
+                                    "end\n")).parse();
+    }
+
+    @Benchmark
+    public Interpreter loop() {
+        Interpreter interpreter = new Interpreter(tree, dispatch);
+        interpreter.interpret();
+        return interpreter;
+    }
+}
@@ -0,0 +1,69 @@
+package interpreter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+// Cost of never-overflowing integers: the same integer loop as plain Java longs, as longs with
+// Math.*Exact overflow checks, in the SpecializingInterpreter and in the double-valued Interpreter.
+// The checked loop should match the plain one, and with the GC profiler the specializing run
+// should show no allocation per operation while every value stays within a long.
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)  // interpreter.Scope shadows the import
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class IntegerBenchmarks {
+
+    @Param({"100000"})
+    public int iterations;
+
+    private AST tree;
+    private SpecializingInterpreter specializing;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String source = "i = 0\n" +
+                        "s = 0\n" +
+                        "while i < " + iterations + "\n" +
+                        "s = s + i * 3 % 7\n" +
+                        "i = i + 1\n" +
+                        "end\n";
+        tree = new Parser(new Lexer(source)).parse();
+        // Reused across invocations, so it is measured with its nodes already specialized
+        specializing = new SpecializingInterpreter(new Parser(new Lexer(source)).parse());
+    }
+
+    @Benchmark
+    public long plainLongLoop() {
+        long s = 0;
+        for (long i = 0; i < iterations; i++) {
+            s = s + i * 3 % 7;
+        }
+        return s;
+    }
+
+    @Benchmark
+    public long checkedLongLoop() {
+        long s = 0;
+        for (long i = 0; i < iterations; i = Math.addExact(i, 1)) {
+            s = Math.addExact(s, Math.multiplyExact(i, 3) % 7);
+        }
+        return s;
+    }
+
+    @Benchmark
+    public SpecializingInterpreter specializingInterpreter() {
+        specializing.interpret();
+        return specializing;
+    }
+
+    @Benchmark
+    public Interpreter interpreter() {
+        Interpreter interpreter = new Interpreter(tree);
+        interpreter.interpret();
+        return interpreter;
+    }
+}
@@ -0,0 +1,39 @@
+package interpreter;
+
+import org.openjdk.jmh.annotations.*;
+
+
+public class InterpreterBenchmarks extends StageBenchmark {
+
+    private AST tree;
+    private Program closures;
+    private double[] memory;
+
+    @Override
+    void prepare() {
+        tree = new Parser(new Lexer(source)).parse();
+        closures = ClosureCompiler.compile(new Parser(new Lexer(source)).parse());
+        memory = closures.newMemory();
+    }
+
+    @Benchmark
+    public Interpreter interpret() {
+        Interpreter interpreter = new Interpreter(tree);
+        interpreter.interpret();
+        return interpreter;
+    }
+
+    @Benchmark
+    public Interpreter interpretTableDispatch() {
+        Interpreter interpreter = new Interpreter(tree, Interpreter.Dispatch.TABLE);
+        interpreter.interpret();
+        return interpreter;
+    }
+
+    // Same tree compiled to closures, for comparison with the tree walk
+    @Benchmark
+    public double[] closureProgram() {
+        closures.execute(memory);
+        return memory;
+    }
+}
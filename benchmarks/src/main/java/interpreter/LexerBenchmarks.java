@@ -0,0 +1,22 @@
+package interpreter;
+
+import org.openjdk.jmh.annotations.*;
+
+
+public class LexerBenchmarks extends StageBenchmark {
+
+    @Benchmark
+    public int getNextToken() {
+        Lexer lexer = new Lexer(source);
+        int tokens = 0;
+        while (lexer.getNextToken().getType() != TokenType.EOF) {
+            tokens++;
+        }
+        return tokens;
+    }
+
+    @Benchmark
+    public PackedTokens packed() {
+        return PackedTokens.tokenize(new Lexer(source));
+    }
+}
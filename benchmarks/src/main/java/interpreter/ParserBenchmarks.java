@@ -0,0 +1,25 @@
+package interpreter;
+
+import org.openjdk.jmh.annotations.*;
+
+
+public class ParserBenchmarks extends StageBenchmark {
+
+    private PackedTokens tokens;
+
+    @Override
+    void prepare() {
+        tokens = PackedTokens.tokenize(new Lexer(source));
+    }
+
+    // Parsing alone, fed from tokens lexed during setup
+    @Benchmark
+    public AST parse() {
+        return new Parser(tokens.cursor()).parse();
+    }
+
+    @Benchmark
+    public AST lexAndParse() {
+        return new Parser(new Lexer(source)).parse();
+    }
+}
@@ -0,0 +1,63 @@
+package interpreter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+// Small scripts pushed through a ScriptService in batches, on one thread and on every core. With
+// distinct = 0 every script is new and goes through the whole front end; otherwise the batch
+// cycles through that many sources, which the program cache then serves. One operation is one
+// script.
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)  // interpreter.Scope shadows the import
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@OperationsPerInvocation(ScriptServiceBenchmarks.BATCH)
+public class ScriptServiceBenchmarks {
+    static final int BATCH = 1000;
+
+    @Param({"1", "0"})
+    public int threads;
+
+    @Param({"0", "16"})
+    public int distinct;
+
+    private ScriptService service;
+    private long seed;
+
+    // threads = 0 stands for one thread per available processor
+    @Setup(Level.Trial)
+    public void setup() {
+        int concurrency = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        service = new ScriptService(concurrency, 4 * concurrency, 1000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.close();
+    }
+
+    @Benchmark
+    public void scripts() throws Exception {
+        CompletableFuture<?>[] results = new CompletableFuture<?>[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            long next = seed++;
+            results[i] = service.submit(script(distinct > 0 ? next % distinct : next));
+        }
+        CompletableFuture.allOf(results).get();
+    }
+
+    static String script(long seed) {
+        return "N = " + (50 + seed % 50) + "\n" +
+               "S = 0\n" +
+               "I = 0\n" +
+               "while I < N\n" +
+               "S = S + I * " + seed + "\n" +
+               "I = I + 1\n" +
+               "end\n";
+    }
+}
@@ -0,0 +1,36 @@
+package interpreter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+// Shared JMH settings for the per-stage benchmarks: throughput plus sampled latency, whose
+// percentiles JMH reports, over every generated workload. BenchmarkRunner adds the GC profiler
+// for allocation rates.
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)  // interpreter.Scope shadows the import
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public abstract class StageBenchmark {
+
+    @Param({"arithmetic", "nested", "loop", "identifiers", "mixed"})
+    public String workload;
+
+    @Param({"200"})
+    public int size;
+
+    String source;
+
+    // JMH does not order @Setup methods across a class hierarchy, so subclasses hook in here
+    @Setup(Level.Trial)
+    public void setup() {
+        source = Workloads.generate(workload, size);
+        prepare();
+    }
+
+    void prepare() {
+    }
+}
@@ -0,0 +1,136 @@
+package interpreter;
+
+import java.util.Random;
+
+
+// Generated scripts for the JMH benchmarks. size scales each workload roughly linearly:
+//   arithmetic   size assignments of long mixed-precedence expressions over a few variables
+//   nested       size blocks of if / elsif / else nested NESTING_DEPTH deep
+//   loop         one while loop of size * 100 iterations with a handful of statements per turn
+//   identifiers  size assignments between many distinct, long variable names
+//   mixed        size groups of commented assignments, short while loops and if / else, mixing
+//                keywords, integer and real literals, unary minus and comments
+// Every if has an else, since that is what the parser expects to close it.
+final class Workloads {
+    static final String[] KINDS = {"arithmetic", "nested", "loop", "identifiers", "mixed"};
+    private static final int NESTING_DEPTH = 8;
+    private static final String[] OPERATORS = {" + ", " - ", " * ", " / ", " % "};
+
+    private Workloads() {
+    }
+
+    static String generate(String kind, int size) {
+        switch (kind) {
+            case "arithmetic":
+                return arithmetic(size);
+            case "nested":
+                return nested(size);
+            case "loop":
+                return loop(size);
+            case "identifiers":
+                return identifiers(size);
+            case "mixed":
+                return mixed(size);
+            default:
+                throw new IllegalArgumentException("Unknown workload: " + kind);
+        }
+    }
+
+    private static String arithmetic(int size) {
+        Random random = new Random(1);
+        StringBuilder source = new StringBuilder("a = 3\nb = 5.5\nc = 7\nd = 11\n");
+        for (int i = 0; i < size; i++) {
+            source.append("r").append(i % 16).append(" = ");
+            for (int term = 0; term < 24; term++) {
+                if (term > 0) {
+                    source.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+                }
+                switch (random.nextInt(4)) {
+                    case 0:
+                        source.append((char) ('a' + random.nextInt(4)));
+                        break;
+                    case 1:
+                        source.append(1 + random.nextInt(99));
+                        break;
+                    case 2:
+                        source.append(random.nextInt(100)).append('.').append(random.nextInt(100));
+                        break;
+                    default:
+                        source.append("(").append((char) ('a' + random.nextInt(4))).append(" - ")
+                              .append(1 + random.nextInt(9)).append(")");
+                        break;
+                }
+            }
+            source.append('\n');
+        }
+        return source.toString();
+    }
+
+    private static String nested(int size) {
+        StringBuilder source = new StringBuilder("y = 0\n");
+        for (int i = 0; i < size; i++) {
+            source.append("x = ").append(i % 3).append('\n');
+            nest(source, NESTING_DEPTH);
+        }
+        return source.toString();
+    }
+
+    private static void nest(StringBuilder source, int depth) {
+        source.append("if x < 1\n");
+        if (depth > 1) {
+            nest(source, depth - 1);
+        } else {
+            source.append("y = y + 1\n");
+        }
+        source.append("elsif x < 2\n")
+              .append("y = y + 2\n")
+              .append("else\n")
+              .append("y = y + 3\n")
+              .append("end\n");
+    }
+
+    private static String loop(int size) {
+        return "I = 0\n" +
+               "S = 0\n" +
+               "T = 1\n" +
+               "while I < " + size * 100 + "\n" +
+               "S = S + I * 2 % 7\n" +
+               "T = T * 1.0001 - S / 1000000\n" +
+               "I = I + 1\n" +
+               "end\n";
+    }
+
+    private static String identifiers(int size) {
+        String[] nouns = {"customer", "order", "invoice", "shipment", "discount", "balance", "account", "product"};
+        String[] suffixes = {"total", "count", "rate", "amount", "limit", "index"};
+        Random random = new Random(2);
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            for (int name = 0; name < 4; name++) {
+                if (name == 1) {
+                    source.append(" = ");
+                } else if (name > 1) {
+                    source.append(" + ");
+                }
+                source.append(nouns[random.nextInt(nouns.length)]).append('_')
+                      .append(suffixes[random.nextInt(suffixes.length)]).append('_')
+                      .append(random.nextInt(500));
+            }
+            source.append('\n');
+        }
+        return source.toString();
+    }
+
+    private static String mixed(int size) {
+        StringBuilder source = new StringBuilder("rate = 1.5\n");
+        for (int i = 0; i < size; i++) {
+            source.append("total_").append(i % 97).append(" = (rate * 3.25 + count").append(i % 13)
+                  .append(") % 7 - -12 / (a + b * c - d) # running total\n")
+                  .append("while index").append(i % 5).append(" <= 1000\n")
+                  .append("index").append(i % 5).append(" = index").append(i % 5).append(" + 1\n")
+                  .append("end\n")
+                  .append("if total_").append(i % 97).append(" >= 2\nx = 1\nelse\nx = 2 * x\nend\n");
+        }
+        return source.toString();
+    }
+}
@@ -0,0 +1,515 @@
+package interpreter;
+
+import java.util.*;
+
+
+// Columnar execution engine for running one script over many independent rows.
+// Every variable becomes a column of BLOCK_SIZE doubles and each node is compiled into a closure
+// that processes a whole block with one tight primitive loop, so tree dispatch is paid once per
+// block instead of once per row. If and While are turned into lane masks: both branches of an If
+// run over the block and assignments only land in the lanes whose mask is set, and a While keeps
+// looping while any lane is still active. A for loop keeps a counter and a trip-count column per
+// lane, since every row may have its own range, and runs until the longest range is done.
+// Expressions have no side effects and double arithmetic never traps, so evaluating them in
+// masked-off lanes is harmless.
+class BatchCompiler {
+    public static final int BLOCK_SIZE = 1024;
+
+    // Returns the array holding the block's values: a variable's column, a constant column or
+    // the expression's register. Callers only read it.
+    interface ColumnExpr {
+        double[] eval(BatchProgram.Batch batch, int n);
+    }
+
+    // Writes the condition of every lane into result
+    interface ColumnCond {
+        void test(BatchProgram.Batch batch, boolean[] result, int n);
+    }
+
+    // A null mask means every lane is active
+    interface ColumnStmt {
+        void exec(BatchProgram.Batch batch, boolean[] mask, int n, Budget budget);
+    }
+
+    private static final ColumnStmt EMPTY = (batch, mask, n, budget) -> { };
+
+    private int registers;   // Scratch columns expressions need at the deepest point
+    private int maskDepth;   // Nesting depth of If, While and for, each level needs two masks
+
+    public static BatchProgram compile(AST tree) {
+        Scope scope = Resolver.resolve(tree);
+        BatchCompiler compiler = new BatchCompiler();
+        ColumnStmt root = compiler.statement(tree, 0);
+        return new BatchProgram(root, scope, compiler.registers, compiler.maskDepth);
+    }
+
+    private void error(AST node) {
+        throw new RuntimeException("Cannot compile " + node);
+    }
+
+    private ColumnStmt statement(AST node, int depth) {
+        switch (node.kind()) {
+            case COMPOUND:
+                return block(((Compound) node).getChildren(), depth);
+            case ASSIGN:
+                return assign((Assign) node);
+            case IF:
+                return ifStatement((If) node, depth);
+            case ELSE:
+                return block(((Else) node).getBody(), depth);
+            case WHILE:
+                return whileStatement((While) node, depth);
+            case FOR:
+                return forStatement((For) node, depth);
+            case NO_OP:
+                return EMPTY;
+            default:
+                // Bare expression statements change no column; compiling still rejects bad nodes
+                expr(node, 0);
+                return EMPTY;
+        }
+    }
+
+    private ColumnStmt block(List<AST> nodes, int depth) {
+        List<ColumnStmt> body = new ArrayList<>();
+        for (AST node : nodes) {
+            ColumnStmt stmt = statement(node, depth);
+            if (stmt != EMPTY) {
+                body.add(stmt);
+            }
+        }
+        switch (body.size()) {
+            case 0:
+                return EMPTY;
+            case 1:
+                return body.get(0);
+            default: {
+                ColumnStmt[] statements = body.toArray(new ColumnStmt[0]);
+                return (batch, mask, n, budget) -> {
+                    for (ColumnStmt stmt : statements) {
+                        stmt.exec(batch, mask, n, budget);
+                    }
+                };
+            }
+        }
+    }
+
+    private ColumnStmt assign(Assign node) {
+        int slot = ((Var) node.getLeft()).getSlot();
+        ColumnExpr value = expr(node.getRight(), 0);
+        return (batch, mask, n, budget) -> {
+            double[] values = value.eval(batch, n);
+            double[] column = batch.columns[slot];
+            if (mask == null) {
+                System.arraycopy(values, 0, column, 0, n);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    column[i] = mask[i] ? values[i] : column[i];
+                }
+            }
+        };
+    }
+
+    private ColumnStmt ifStatement(If node, int depth) {
+        maskDepth = Math.max(maskDepth, depth + 1);
+        ColumnCond condition = condition(node.getCondition(), 0);
+        ColumnStmt body = block(node.getBody(), depth + 1);
+        ColumnStmt rest = block(node.getRest(), depth + 1);
+        int thenMask = 2 * depth;
+        int elseMask = 2 * depth + 1;
+        return (batch, mask, n, budget) -> {
+            boolean[] taken = batch.masks[thenMask];
+            boolean[] notTaken = batch.masks[elseMask];
+            condition.test(batch, taken, n);
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                boolean active = mask == null || mask[i];
+                boolean test = taken[i];
+                taken[i] = active & test;
+                notTaken[i] = active & !test;
+                count += taken[i] ? 1 : 0;
+            }
+            // A branch no lane takes is skipped; one every active lane takes keeps the outer mask
+            int activeCount = mask == null ? n : count(mask, n);
+            if (count > 0) {
+                body.exec(batch, count == n ? null : taken, n, budget);
+            }
+            if (count < activeCount) {
+                rest.exec(batch, count == 0 && mask == null ? null : notTaken, n, budget);
+            }
+        };
+    }
+
+    private ColumnStmt whileStatement(While node, int depth) {
+        maskDepth = Math.max(maskDepth, depth + 1);
+        ColumnCond condition = condition(node.getCondition(), 0);
+        ColumnStmt body = block(node.getBody(), depth + 1);
+        int activeMask = 2 * depth;
+        int testMask = 2 * depth + 1;
+        // Charges the budget once per pass over the block, however many lanes are still active
+        return (batch, mask, n, budget) -> {
+            boolean[] active = batch.masks[activeMask];
+            boolean[] test = batch.masks[testMask];
+            boolean[] previous = mask;
+            while (true) {
+                condition.test(batch, test, n);
+                int count = 0;
+                for (int i = 0; i < n; i++) {
+                    active[i] = (previous == null || previous[i]) & test[i];
+                    count += active[i] ? 1 : 0;
+                }
+                if (count == 0) {
+                    return;
+                }
+                budget.backEdge();
+                body.exec(batch, count == n ? null : active, n, budget);
+                previous = active;
+            }
+        };
+    }
+
+    private ColumnStmt forStatement(For node, int depth) {
+        maskDepth = Math.max(maskDepth, depth + 1);
+        int slot = node.getVariable().getSlot();
+        ColumnExpr from = expr(node.getFrom(), 0);
+        ColumnExpr to = expr(node.getTo(), 0);
+        ColumnStmt body = block(node.getBody(), depth + 1);
+        int activeMask = 2 * depth;
+        int counterColumn = 2 * depth;
+        int tripsColumn = 2 * depth + 1;
+        return (batch, mask, n, budget) -> {
+            boolean[] active = batch.masks[activeMask];
+            double[] counter = batch.counters[counterColumn];
+            double[] trips = batch.counters[tripsColumn];
+            double[] column = batch.columns[slot];
+            // Both bounds may be in register 0, so the first is copied out before the second runs
+            System.arraycopy(from.eval(batch, n), 0, counter, 0, n);
+            double[] last = to.eval(batch, n);
+            // Lanes count their trips down rather than comparing the counter, which stops moving
+            // past 2^53; capped there, the count stays exact as a double
+            for (int i = 0; i < n; i++) {
+                trips[i] = Math.min(For.tripCount(counter[i], last[i]), 1L << 53);
+            }
+            boolean[] previous = mask;
+            while (true) {
+                int count = 0;
+                for (int i = 0; i < n; i++) {
+                    active[i] = (previous == null || previous[i]) & trips[i] > 0.0;
+                    count += active[i] ? 1 : 0;
+                }
+                if (count == 0) {
+                    return;
+                }
+                budget.backEdge();
+                for (int i = 0; i < n; i++) {
+                    column[i] = active[i] ? counter[i] : column[i];
+                }
+                body.exec(batch, count == n ? null : active, n, budget);
+                for (int i = 0; i < n; i++) {
+                    counter[i]++;
+                    trips[i]--;
+                }
+                previous = active;
+            }
+        };
+    }
+
+    private static int count(boolean[] mask, int n) {
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            count += mask[i] ? 1 : 0;
+        }
+        return count;
+    }
+
+    // Comparisons write the lane mask directly instead of producing 1.0 / 0.0 columns
+    private ColumnCond condition(AST node, int register) {
+        if (node instanceof BinOp && ClosureCompiler.isComparison(((BinOp) node).getOp().getType())) {
+            BinOp op = (BinOp) node;
+            ColumnExpr left = expr(op.getLeft(), register);
+            ColumnExpr right = expr(op.getRight(), register + 1);
+            switch (op.getOp().getType()) {
+                case EQUAL:
+                    return (batch, result, n) -> {
+                        double[] a = left.eval(batch, n);
+                        double[] b = right.eval(batch, n);
+                        for (int i = 0; i < n; i++) {
+                            result[i] = a[i] == b[i];
+                        }
+                    };
+                case NOT:
+                    return (batch, result, n) -> {
+                        double[] a = left.eval(batch, n);
+                        double[] b = right.eval(batch, n);
+                        for (int i = 0; i < n; i++) {
+                            result[i] = a[i] != b[i];
+                        }
+                    };
+                case GRE:
+                    return (batch, result, n) -> {
+                        double[] a = left.eval(batch, n);
+                        double[] b = right.eval(batch, n);
+                        for (int i = 0; i < n; i++) {
+                            result[i] = a[i] >= b[i];
+                        }
+                    };
+                case LESE:
+                    return (batch, result, n) -> {
+                        double[] a = left.eval(batch, n);
+                        double[] b = right.eval(batch, n);
+                        for (int i = 0; i < n; i++) {
+                            result[i] = a[i] <= b[i];
+                        }
+                    };
+                case GRET:
+                    return (batch, result, n) -> {
+                        double[] a = left.eval(batch, n);
+                        double[] b = right.eval(batch, n);
+                        for (int i = 0; i < n; i++) {
+                            result[i] = a[i] > b[i];
+                        }
+                    };
+                default:
+                    return (batch, result, n) -> {
+                        double[] a = left.eval(batch, n);
+                        double[] b = right.eval(batch, n);
+                        for (int i = 0; i < n; i++) {
+                            result[i] = a[i] < b[i];
+                        }
+                    };
+            }
+        }
+        ColumnExpr value = expr(node, register);
+        return (batch, result, n) -> {
+            double[] a = value.eval(batch, n);
+            for (int i = 0; i < n; i++) {
+                result[i] = a[i] != 0.0;
+            }
+        };
+    }
+
+    // register is the scratch column this expression writes to; its operands use register and
+    // register + 1, so the left result is never overwritten while the right one is computed
+    private ColumnExpr expr(AST node, int register) {
+        switch (node.kind()) {
+            case NUM: {
+                double[] column = new double[BLOCK_SIZE];
+                Arrays.fill(column, constant((Num) node));
+                return (batch, n) -> column;
+            }
+            case VAR: {
+                int slot = ((Var) node).getSlot();
+                return (batch, n) -> batch.columns[slot];
+            }
+            case UNARY_OP:
+                return unaryOp((UnaryOp) node, register);
+            case BIN_OP:
+                return binOp((BinOp) node, register);
+            default:
+                error(node);
+                return null;
+        }
+    }
+
+    private ColumnExpr unaryOp(UnaryOp node, int register) {
+        registers = Math.max(registers, register + 1);
+        ColumnExpr expr = expr(node.getExpr(), register);
+        switch (node.getOp().getType()) {
+            case PLUS:
+                return expr;
+            case MINUS:
+                return (batch, n) -> {
+                    double[] a = expr.eval(batch, n);
+                    double[] result = batch.registers[register];
+                    for (int i = 0; i < n; i++) {
+                        result[i] = -a[i];
+                    }
+                    return result;
+                };
+            default:
+                throw new IllegalArgumentException("Invalid unary operation type: " + node.getOp().getType());
+        }
+    }
+
+    private ColumnExpr binOp(BinOp node, int register) {
+        registers = Math.max(registers, register + 1);
+        TokenType type = node.getOp().getType();
+        if (ClosureCompiler.isComparison(type)) {
+            ColumnCond test = condition(node, register);
+            return (batch, n) -> {
+                boolean[] lanes = batch.comparison;
+                test.test(batch, lanes, n);
+                double[] result = batch.registers[register];
+                for (int i = 0; i < n; i++) {
+                    result[i] = lanes[i] ? 1.0 : 0.0;
+                }
+                return result;
+            };
+        }
+
+        ColumnExpr left = expr(node.getLeft(), register);
+        ColumnExpr right = expr(node.getRight(), register + 1);
+        switch (type) {
+            case PLUS:
+                return (batch, n) -> {
+                    double[] a = left.eval(batch, n);
+                    double[] b = right.eval(batch, n);
+                    double[] result = batch.registers[register];
+                    for (int i = 0; i < n; i++) {
+                        result[i] = a[i] + b[i];
+                    }
+                    return result;
+                };
+            case MINUS:
+                return (batch, n) -> {
+                    double[] a = left.eval(batch, n);
+                    double[] b = right.eval(batch, n);
+                    double[] result = batch.registers[register];
+                    for (int i = 0; i < n; i++) {
+                        result[i] = a[i] - b[i];
+                    }
+                    return result;
+                };
+            case MUL:
+                return (batch, n) -> {
+                    double[] a = left.eval(batch, n);
+                    double[] b = right.eval(batch, n);
+                    double[] result = batch.registers[register];
+                    for (int i = 0; i < n; i++) {
+                        result[i] = a[i] * b[i];
+                    }
+                    return result;
+                };
+            case DIV:
+                return (batch, n) -> {
+                    double[] a = left.eval(batch, n);
+                    double[] b = right.eval(batch, n);
+                    double[] result = batch.registers[register];
+                    for (int i = 0; i < n; i++) {
+                        result[i] = a[i] / b[i];
+                    }
+                    return result;
+                };
+            case MOD:
+                return (batch, n) -> {
+                    double[] a = left.eval(batch, n);
+                    double[] b = right.eval(batch, n);
+                    double[] result = batch.registers[register];
+                    for (int i = 0; i < n; i++) {
+                        result[i] = a[i] % b[i];
+                    }
+                    return result;
+                };
+            default:
+                throw new IllegalArgumentException("Invalid operation type: " + type);
+        }
+    }
+
+    private static double constant(Num node) {
+        Object value = node.getValue();
+        if (!(value instanceof Number)) {
+            throw new RuntimeException("Cannot compile " + node);
+        }
+        return ((Number) value).doubleValue();
+    }
+}
+
+// A program compiled for columnar execution. The program itself is immutable and can be shared;
+// each thread evaluates rows through its own Batch, which owns the block-sized working columns.
+class BatchProgram {
+    private final BatchCompiler.ColumnStmt root;
+    private final Scope scope;
+    private final int registers;
+    private final int maskDepth;
+
+    BatchProgram(BatchCompiler.ColumnStmt root, Scope scope, int registers, int maskDepth) {
+        this.root = root;
+        this.scope = scope;
+        this.registers = registers;
+        this.maskDepth = maskDepth;
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    public Batch newBatch() {
+        return new Batch();
+    }
+
+    // Binds input and output columns by variable name and runs the program once per row.
+    // Every row starts with unbound variables at 0.0, exactly like a fresh Interpreter; bound
+    // inputs supply the starting value instead, and outputs receive each variable's final value.
+    // A column may be both an input and an output.
+    class Batch {
+        final double[][] columns;
+        final double[][] registers;
+        final boolean[][] masks;
+        final double[][] counters;  // Counter and trip count of the for loop at each nesting depth
+        final boolean[] comparison = new boolean[BatchCompiler.BLOCK_SIZE];
+        private final double[][] inputs;
+        private final double[][] outputs;
+
+        Batch() {
+            int size = scope.size();
+            columns = new double[size][BatchCompiler.BLOCK_SIZE];
+            registers = new double[BatchProgram.this.registers][BatchCompiler.BLOCK_SIZE];
+            masks = new boolean[2 * maskDepth][BatchCompiler.BLOCK_SIZE];
+            counters = new double[2 * maskDepth][BatchCompiler.BLOCK_SIZE];
+            inputs = new double[size][];
+            outputs = new double[size][];
+        }
+
+        private int slotOf(String name) {
+            int slot = scope.slotOf(name);
+            if (slot < 0) {
+                throw new IllegalArgumentException("Unknown variable: " + name);
+            }
+            return slot;
+        }
+
+        public Batch bind(String name, double[] column) {
+            inputs[slotOf(name)] = column;
+            return this;
+        }
+
+        public Batch output(String name, double[] column) {
+            outputs[slotOf(name)] = column;
+            return this;
+        }
+
+        public void run(int rows) {
+            run(rows, Budget.unlimited());
+        }
+
+        public void run(int rows, Budget budget) {
+            for (int slot = 0; slot < columns.length; slot++) {
+                checkLength(inputs[slot], rows, slot);
+                checkLength(outputs[slot], rows, slot);
+            }
+            for (int start = 0; start < rows; start += BatchCompiler.BLOCK_SIZE) {
+                int n = Math.min(BatchCompiler.BLOCK_SIZE, rows - start);
+                for (int slot = 0; slot < columns.length; slot++) {
+                    if (inputs[slot] != null) {
+                        System.arraycopy(inputs[slot], start, columns[slot], 0, n);
+                    } else {
+                        Arrays.fill(columns[slot], 0, n, 0.0);
+                    }
+                }
+                root.exec(this, null, n, budget);
+                for (int slot = 0; slot < columns.length; slot++) {
+                    if (outputs[slot] != null) {
+                        System.arraycopy(columns[slot], 0, outputs[slot], start, n);
+                    }
+                }
+            }
+        }
+
+        private void checkLength(double[] column, int rows, int slot) {
+            if (column != null && column.length < rows) {
+                throw new IllegalArgumentException("Column " + scope.nameOf(slot) + " has " +
+                        column.length + " rows, expected " + rows);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package interpreter;
+
+// Limits on one execution of a script: how many loop iterations it may run and how long it may
+// take. Engines call backEdge() each time a while or for loop is about to run its body; that
+// is a counter decrement, and only every CHECK_INTERVAL iterations does check() read the clock
+// and the thread's interrupt flag. Straight-line code is bounded by the size of the program, so
+// counting back-edges is enough to bound the work of any run.
+// Not thread-safe: each execution gets its own Budget, and work that runs in parallel draws from
+// it through split() budgets, one per thread.
+class Budget {
+    public static final long UNLIMITED = Long.MAX_VALUE;
+    static final int CHECK_INTERVAL = 1024;
+
+    private final long deadline;   // System.nanoTime() value, only meaningful if hasDeadline
+    private final boolean hasDeadline;
+    private final long timeoutMillis;
+    private final long maxIterations;
+    private long fuel;             // Iterations not yet handed out
+    private long checkedAt;        // fuel at the last clock and interrupt check
+    private int countdown;         // Iterations backEdge() has acquired but not used
+
+    private final Budget parent;   // Set on split() budgets, which draw their fuel from it
+    private final Thread owner;    // Thread that called split(); interrupting it stops the split
+    private volatile boolean cancelled;
+    private int running;           // Splits not yet joined, guarded by this
+    private int waiting;           // Of those, splits blocked in draw() on empty fuel
+
+    public Budget(long maxIterations, long timeoutMillis) {
+        if (maxIterations < 0 || timeoutMillis < 0) {
+            throw new IllegalArgumentException("Invalid budget: " + maxIterations + " iterations, " +
+                    timeoutMillis + " ms");
+        }
+        this.maxIterations = maxIterations;
+        this.timeoutMillis = timeoutMillis;
+        this.hasDeadline = timeoutMillis < UNLIMITED / 1_000_000;
+        this.deadline = hasDeadline ? System.nanoTime() + timeoutMillis * 1_000_000 : 0;
+        this.fuel = maxIterations;
+        this.checkedAt = maxIterations;
+        this.parent = null;
+        this.owner = null;
+    }
+
+    private Budget(Budget parent) {
+        this.maxIterations = parent.maxIterations;
+        this.timeoutMillis = parent.timeoutMillis;
+        this.hasDeadline = parent.hasDeadline;
+        this.deadline = parent.deadline;
+        this.parent = parent;
+        this.owner = Thread.currentThread();
+    }
+
+    // Still stops on interrupt, so a cancelled run always ends within CHECK_INTERVAL iterations
+    public static Budget unlimited() {
+        return new Budget(UNLIMITED, UNLIMITED);
+    }
+
+    public static Budget iterations(long maxIterations) {
+        return new Budget(maxIterations, UNLIMITED);
+    }
+
+    public static Budget timeout(long timeoutMillis) {
+        return new Budget(UNLIMITED, timeoutMillis);
+    }
+
+    public void backEdge() {
+        if (countdown == 0) {
+            countdown = acquire();
+        }
+        countdown--;
+    }
+
+    // For engines that keep the count in a local: takes up to CHECK_INTERVAL iterations at once.
+    // What is left when the loop exits must be handed back with release(), and no other loop may
+    // acquire in the meantime, so only innermost loops should do this.
+    public int acquire() {
+        if (parent != null && fuel == 0) {
+            // Each refill is at most CHECK_INTERVAL iterations, so checking on refill is enough
+            check();
+            fuel = parent.draw(countdown == 0);
+            checkedAt = fuel;
+        } else if (checkedAt - fuel >= CHECK_INTERVAL) {
+            check();
+        }
+        if (fuel == 0 && countdown == 0) {
+            throw new BudgetExceededException(BudgetExceededException.Reason.FUEL,
+                    "Script exceeded " + maxIterations + " loop iterations");
+        }
+        if (fuel == 0 && countdown > 0) {
+            // An outer loop's iterations sit in countdown; hand them on so the limit stays exact
+            int chunk = countdown;
+            countdown = 0;
+            return chunk;
+        }
+        int chunk = (int) Math.min(CHECK_INTERVAL, fuel);
+        fuel -= chunk;
+        return chunk;
+    }
+
+    public void release(int unused) {
+        fuel += unused;
+    }
+
+    // A budget for one of several branches running in parallel on other threads. It shares this
+    // budget's deadline and takes iterations from its fuel CHECK_INTERVAL at a time, so the limit
+    // holds across all branches. This budget must not be used until every split is joined, and
+    // no loop may be running on it: the iterations its loops hold are returned to the fuel first.
+    public synchronized Budget split() {
+        fuel += countdown;
+        countdown = 0;
+        running++;
+        return new Budget(this);
+    }
+
+    // Gives back what a finished split did not use, and wakes splits waiting for it
+    public void join(Budget split) {
+        synchronized (this) {
+            fuel += split.fuel + split.countdown;
+            running--;
+            notifyAll();
+        }
+        split.fuel = 0;
+        split.countdown = 0;
+    }
+
+    // Makes every split stop at its next check, once one branch has failed
+    public synchronized void cancel() {
+        cancelled = true;
+        notifyAll();
+    }
+
+    // A split that finds the fuel empty waits while another split still runs, since that one may
+    // join with iterations it did not use. It runs out only when every other split has joined or
+    // is waiting too, so the limit is exact: no iteration is left unused in a sibling.
+    private synchronized int draw(boolean block) {
+        waiting++;
+        try {
+            while (block && fuel == 0 && running > waiting && !cancelled) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BudgetExceededException(BudgetExceededException.Reason.INTERRUPTED,
+                    "Script interrupted");
+        } finally {
+            waiting--;
+        }
+        int chunk = (int) Math.min(CHECK_INTERVAL, fuel);
+        fuel -= chunk;
+        return chunk;
+    }
+
+    // Runs once per CHECK_INTERVAL iterations actually used, however they were acquired
+    private void check() {
+        checkedAt = fuel;
+        if (hasDeadline && System.nanoTime() - deadline > 0) {
+            throw new BudgetExceededException(BudgetExceededException.Reason.DEADLINE,
+                    "Script exceeded " + timeoutMillis + " ms");
+        }
+        if (Thread.currentThread().isInterrupted() || (parent != null && (parent.cancelled || owner.isInterrupted()))) {
+            throw new BudgetExceededException(BudgetExceededException.Reason.INTERRUPTED, "Script interrupted");
+        }
+    }
+
+    public long getIterations() {
+        return maxIterations - fuel - countdown;
+    }
+}
+
+class BudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    enum Reason {
+        FUEL, DEADLINE, INTERRUPTED
+    }
+
+    private final Reason reason;
+
+    BudgetExceededException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
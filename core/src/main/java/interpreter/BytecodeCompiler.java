@@ -0,0 +1,1039 @@
+package interpreter;
+
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+
+// Compiles a parsed program to a JVM class and loads it as a hidden class, so HotSpot
+// JIT-compiles the script's arithmetic and loops like ordinary Java code.
+// Each top-level loop gets a method of its own and the straight-line statements between loops
+// share one, so HotSpot compiles each loop on its own and no method passes HUGE_METHOD_LIMIT.
+// A method keeps the variables it uses in JVM locals and writes them back to memory on exit.
+// Statements that cannot be compiled are handed to the tree Interpreter at run time.
+class BytecodeCompiler {
+
+    interface Code {
+        void run(double[] memory, Budget budget);
+    }
+
+    static class UnsupportedConstruct extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedConstruct(String message) {
+            super(message);
+        }
+    }
+
+    // Two local slots per double variable after `this`, the memory array and the budget,
+    // then one int for the loop iterations acquired from the budget but not yet used, then the
+    // induction variable (a double) and remaining trip count (a long) of each nesting level of
+    // for loops
+    private static final int MAX_LOCALS = 0xFFFF;
+    private static final int MAX_CODE_LENGTH = 0xFFFF;
+    // HotSpot never JIT-compiles a method with more bytecode than this (-XX:HugeMethodLimit).
+    // It also keeps every branch offset well inside a short.
+    static final int HUGE_METHOD_LIMIT = 8000;
+    // Internal names of the classes generated code refers to; all share BytecodeCompiler's package
+    private static final String PACKAGE = packagePrefix();
+    private static final String CLASS_NAME = PACKAGE + "CompiledScript";
+    private static final String COMPILER = PACKAGE + "BytecodeCompiler";
+    private static final String BUDGET = PACKAGE + "Budget";
+    private static final String AST_DESCRIPTOR = "L" + PACKAGE + "AST;";
+    private static final String BUDGET_DESCRIPTOR = "L" + BUDGET + ";";
+    private static final String FALLBACK_DESCRIPTOR = "[" + AST_DESCRIPTOR;
+    private static final String RUN_DESCRIPTOR = "([D" + BUDGET_DESCRIPTOR + ")V";
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    // Opcodes
+    private static final int ICONST_0 = 0x03, LCONST_0 = 0x09, LCONST_1 = 0x0a, DCONST_0 = 0x0e, DCONST_1 = 0x0f, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13, LDC2_W = 0x14;
+    private static final int ILOAD = 0x15, LLOAD = 0x16, DLOAD = 0x18, ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD_2 = 0x2c;
+    private static final int DALOAD = 0x31, AALOAD = 0x32;
+    private static final int ISTORE = 0x36, LSTORE = 0x37, DSTORE = 0x39, DASTORE = 0x52, POP2 = 0x58, DUP2 = 0x5c, IINC = 0x84, WIDE = 0xc4;
+    private static final int DADD = 0x63, LSUB = 0x65, DSUB = 0x67, DMUL = 0x6b, DDIV = 0x6f, DREM = 0x73, DNEG = 0x77;
+    private static final int LCMP = 0x94, DCMPL = 0x97, DCMPG = 0x98;
+    private static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+    private static final int GOTO = 0xa7, RETURN = 0xb1, GETFIELD = 0xb4, PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+    private static final int ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002;
+
+    private final ConstantPool pool = new ConstantPool();
+    private final List<AST> fallbacks = new ArrayList<>();
+    private final List<Method> methods = new ArrayList<>();
+    private final int slotCount;
+    // The method being generated
+    private CodeBuffer code;
+    private int[] variables;      // Slots kept in locals, in local order
+    private int[] localOf;        // Index in variables of each slot, or -1
+    private int[] written;        // Slots the method may assign
+    private int forLevels;        // Deepest nesting of for loops
+    private int forDepth;         // For loops enclosing the statement being compiled
+
+    private BytecodeCompiler(int slotCount) {
+        this.slotCount = slotCount;
+    }
+
+    // A generated statement method, ready to write
+    private static class Method {
+        final String name;
+        final CodeBuffer code;
+        final int maxLocals;
+        final byte[] frames;
+
+        Method(String name, CodeBuffer code, int maxLocals, byte[] frames) {
+            this.name = name;
+            this.code = code;
+            this.maxLocals = maxLocals;
+            this.frames = frames;
+        }
+    }
+
+    private static String packagePrefix() {
+        String name = BytecodeCompiler.class.getName();
+        return name.substring(0, name.lastIndexOf('.') + 1).replace('.', '/');
+    }
+
+    public static Code compile(AST tree) {
+        Scope scope = Resolver.resolve(tree);
+        BytecodeCompiler compiler = new BytecodeCompiler(scope.size());
+        byte[] classFile = compiler.generate(tree);
+        try {
+            MethodHandles.Lookup hidden = LOOKUP.defineHiddenClass(classFile, true);
+            AST[] fallbacks = compiler.fallbacks.toArray(new AST[0]);
+            return (Code) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class, AST[].class))
+                    .invoke(fallbacks);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException("Cannot load compiled program", e);
+        }
+    }
+
+    // Bytecode length of each statement method, in the order run() calls them; for tests
+    static int[] methodSizes(AST tree) {
+        BytecodeCompiler compiler = new BytecodeCompiler(Resolver.resolve(tree).size());
+        compiler.generate(tree);
+        return compiler.methods.stream().mapToInt(method -> method.code.length()).toArray();
+    }
+
+    // Runtime support called from generated code
+
+    static void interpretFallback(AST node, double[] memory, Budget budget) {
+        new Interpreter(node, memory, budget).interpret();
+    }
+
+    static long tripCount(double from, double to) {
+        return For.tripCount(from, to);
+    }
+
+    static double equal(double left, double right) {
+        return left == right ? 1.0 : 0.0;
+    }
+
+    static double notEqual(double left, double right) {
+        return left != right ? 1.0 : 0.0;
+    }
+
+    static double greaterOrEqual(double left, double right) {
+        return left >= right ? 1.0 : 0.0;
+    }
+
+    static double lessOrEqual(double left, double right) {
+        return left <= right ? 1.0 : 0.0;
+    }
+
+    static double greater(double left, double right) {
+        return left > right ? 1.0 : 0.0;
+    }
+
+    static double less(double left, double right) {
+        return left < right ? 1.0 : 0.0;
+    }
+
+    private static int forLevels(List<AST> nodes) {
+        int levels = 0;
+        for (AST node : nodes) {
+            switch (node.kind()) {
+                case COMPOUND:
+                    levels = Math.max(levels, forLevels(((Compound) node).getChildren()));
+                    break;
+                case ELSE:
+                    levels = Math.max(levels, forLevels(((Else) node).getBody()));
+                    break;
+                case IF:
+                    levels = Math.max(levels, Math.max(forLevels(((If) node).getBody()), forLevels(((If) node).getRest())));
+                    break;
+                case WHILE:
+                    levels = Math.max(levels, forLevels(((While) node).getBody()));
+                    break;
+                case FOR:
+                    levels = Math.max(levels, 1 + forLevels(((For) node).getBody()));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return levels;
+    }
+
+    // Code generation
+
+    private byte[] generate(AST tree) {
+        List<AST> statements = tree.kind() == NodeKind.COMPOUND
+                ? ((Compound) tree).getChildren() : Collections.singletonList(tree);
+        List<AST> straight = new ArrayList<>();
+        for (AST statement : statements) {
+            if (ClosureCompiler.containsLoop(Collections.singletonList(statement))) {
+                methods(straight);
+                straight.clear();
+                methods(Collections.singletonList(statement));
+            } else {
+                straight.add(statement);
+            }
+        }
+        methods(straight);
+
+        // run(memory, budget) calls the statement methods in order
+        CodeBuffer run = new CodeBuffer();
+        for (Method method : methods) {
+            run.op(ALOAD_0, 1);
+            run.op(ALOAD_1, 1);
+            run.op(ALOAD_2, 1);
+            run.op(INVOKESPECIAL, -3);
+            run.u2(pool.method(CLASS_NAME, method.name, RUN_DESCRIPTOR));
+        }
+        run.op(RETURN, 0);
+        if (run.length() > MAX_CODE_LENGTH || pool.count > 0xFFFF) {
+            throw new UnsupportedConstruct("Program too large to compile");
+        }
+        return writeClass(run);
+    }
+
+    // Compiles the statements into methods of at most HUGE_METHOD_LIMIT bytes, halving the list
+    // until each part fits. A single statement that still does not fit is interpreted.
+    private void methods(List<AST> statements) {
+        if (statements.isEmpty()) {
+            return;
+        }
+        Method method = method(statements, false);
+        if (method == null && statements.size() > 1) {
+            int half = statements.size() / 2;
+            methods(statements.subList(0, half));
+            methods(statements.subList(half, statements.size()));
+        } else {
+            methods.add(method != null ? method : method(statements, true));
+        }
+    }
+
+    // Generates one method for the statements, or returns null if it would be too large. An
+    // interpreted method only hands its single statement to the Interpreter.
+    private Method method(List<AST> statements, boolean interpreted) {
+        int fallbackMark = fallbacks.size();
+        BitSet used = new BitSet();
+        BitSet writes = new BitSet();
+        if (!interpreted) {
+            ParallelProgram.accesses(statements, used, writes);
+            used.or(writes);
+        }
+        variables = used.stream().toArray();
+        written = writes.stream().toArray();
+        localOf = new int[slotCount];
+        Arrays.fill(localOf, -1);
+        for (int i = 0; i < variables.length; i++) {
+            localOf[variables[i]] = i;
+        }
+        forLevels = interpreted ? 0 : forLevels(statements);
+        forDepth = 0;
+        code = new CodeBuffer();
+        if (forLocal(forLevels) > MAX_LOCALS) {
+            return null;
+        }
+
+        // Prologue: every variable is loaded into its local before the first branch target,
+        // so a single frame layout is valid everywhere in the method
+        loadLocals(variables);
+        code.op(ICONST_0, 1);
+        countdownOp(ISTORE, -1);
+        for (int level = 0; level < forLevels; level++) {
+            code.op(DCONST_0, 2);
+            wideOp(DSTORE, forLocal(level), -2);
+            code.op(LCONST_0, 2);
+            wideOp(LSTORE, forLocal(level) + 2, -2);
+        }
+        if (interpreted) {
+            fallback(statements.get(0));
+        } else {
+            block(statements);
+        }
+        storeLocals();
+        code.op(ALOAD_2, 1);
+        countdownOp(ILOAD, 1);
+        code.op(INVOKEVIRTUAL, -2);
+        code.u2(pool.method(BUDGET, "release", "(I)V"));
+        code.op(RETURN, 0);
+
+        if (code.length() > HUGE_METHOD_LIMIT) {
+            fallbacks.subList(fallbackMark, fallbacks.size()).clear();
+            return null;
+        }
+        code.patchJumps();
+        return new Method("s" + methods.size(), code, forLocal(forLevels), stackMapFrames());
+    }
+
+    private int local(int slot) {
+        return 3 + 2 * localOf[slot];
+    }
+
+    private int countdownLocal() {
+        return 3 + 2 * variables.length;
+    }
+
+    // Induction variable of the for loops at this nesting level; their trip count is the next long
+    private int forLocal(int level) {
+        return countdownLocal() + 1 + 4 * level;
+    }
+
+    private void localOp(int opcode, int slot, int stackDelta) {
+        wideOp(opcode, local(slot), stackDelta);
+    }
+
+    private void countdownOp(int opcode, int stackDelta) {
+        wideOp(opcode, countdownLocal(), stackDelta);
+    }
+
+    private void wideOp(int opcode, int local, int stackDelta) {
+        if (local > 0xFF) {
+            code.op(WIDE, 0);
+            code.op(opcode, stackDelta);
+            code.u2(local);
+        } else {
+            code.op(opcode, stackDelta);
+            code.u1(local);
+        }
+    }
+
+    private void loadLocals(int[] slots) {
+        for (int slot : slots) {
+            code.op(ALOAD_1, 1);
+            pushInt(slot);
+            code.op(DALOAD, 0);
+            localOp(DSTORE, slot, -2);
+        }
+    }
+
+    // Only assigned variables can differ from memory
+    private void storeLocals() {
+        for (int slot : written) {
+            code.op(ALOAD_1, 1);
+            pushInt(slot);
+            localOp(DLOAD, slot, 2);
+            code.op(DASTORE, -4);
+        }
+    }
+
+    private void statement(AST node) {
+        int codeMark = code.length();
+        int jumpMark = code.jumpCount();
+        try {
+            compileStatement(node);
+        } catch (UnsupportedConstruct e) {
+            code.rollback(codeMark, jumpMark);
+            fallback(node);
+        }
+    }
+
+    private void compileStatement(AST node) {
+        switch (node.kind()) {
+            case COMPOUND:
+                block(((Compound) node).getChildren());
+                break;
+            case ELSE:
+                block(((Else) node).getBody());
+                break;
+            case NO_OP:
+                break;
+            case ASSIGN:
+                assign((Assign) node);
+                break;
+            case IF:
+                ifStatement((If) node);
+                break;
+            case WHILE:
+                whileStatement((While) node);
+                break;
+            case FOR:
+                forStatement((For) node);
+                break;
+            default:
+                expr(node);
+                code.op(POP2, -2);
+                break;
+        }
+    }
+
+    private void block(List<AST> nodes) {
+        for (AST node : nodes) {
+            statement(node);
+        }
+    }
+
+    // The interpreter sees memory, so locals are spilled before the call and reloaded after it.
+    // The unused part of the countdown goes back to the budget first, so the interpreted loops
+    // draw on the full remaining allowance and the next back-edge acquires a fresh chunk.
+    private void fallback(AST node) {
+        storeLocals();
+        code.op(ALOAD_2, 1);
+        countdownOp(ILOAD, 1);
+        code.op(INVOKEVIRTUAL, -2);
+        code.u2(pool.method(BUDGET, "release", "(I)V"));
+        code.op(ICONST_0, 1);
+        countdownOp(ISTORE, -1);
+        code.op(ALOAD_0, 1);
+        code.op(GETFIELD, 0);
+        code.u2(pool.field(CLASS_NAME, "fallback", FALLBACK_DESCRIPTOR));
+        pushInt(fallbacks.size());
+        code.op(AALOAD, -1);
+        code.op(ALOAD_1, 1);
+        code.op(ALOAD_2, 1);
+        code.op(INVOKESTATIC, -3);
+        code.u2(pool.method(COMPILER, "interpretFallback", "(" + AST_DESCRIPTOR + "[D" + BUDGET_DESCRIPTOR + ")V"));
+        fallbacks.add(node);
+        loadLocals(written);
+    }
+
+    private void assign(Assign node) {
+        int slot = slot((Var) node.getLeft());
+        expr(node.getRight());
+        localOp(DSTORE, slot, -2);
+    }
+
+    private void ifStatement(If node) {
+        Label otherwise = new Label();
+        jumpIfFalse(node.getCondition(), otherwise);
+        block(node.getBody());
+        if (node.getRest().isEmpty()) {
+            code.bind(otherwise);
+            return;
+        }
+        Label end = new Label();
+        code.jump(GOTO, end, 0);
+        code.bind(otherwise);
+        block(node.getRest());
+        code.bind(end);
+    }
+
+    private void whileStatement(While node) {
+        Label loop = new Label();
+        Label end = new Label();
+        code.bind(loop);
+        jumpIfFalse(node.getCondition(), end);
+        chargeIteration();
+        block(node.getBody());
+        code.jump(GOTO, loop, 0);
+        code.bind(end);
+    }
+
+    // The induction variable and the remaining trip count stay in locals for the whole loop; the
+    // variable's own local only receives a copy for the body, so assigning to it cannot change the
+    // iteration. Counting trips down keeps ranges beyond 2^53, where i + 1 == i, finite.
+    private void forStatement(For node) {
+        int slot = slot(node.getVariable());
+        int counter = forLocal(forDepth);
+        int remaining = counter + 2;
+        expr(node.getFrom());
+        code.op(DUP2, 2);
+        wideOp(DSTORE, counter, -2);
+        expr(node.getTo());
+        code.op(INVOKESTATIC, -2);
+        code.u2(pool.method(COMPILER, "tripCount", "(DD)J"));
+        wideOp(LSTORE, remaining, -2);
+
+        Label loop = new Label();
+        Label end = new Label();
+        code.bind(loop);
+        wideOp(LLOAD, remaining, 2);
+        code.op(LCONST_0, 2);
+        code.op(LCMP, -3);
+        code.jump(IFLE, end, -1);
+        chargeIteration();
+        wideOp(DLOAD, counter, 2);
+        localOp(DSTORE, slot, -2);
+        forDepth++;
+        try {
+            block(node.getBody());
+        } finally {
+            forDepth--;
+        }
+        wideOp(DLOAD, counter, 2);
+        code.op(DCONST_1, 2);
+        code.op(DADD, -2);
+        wideOp(DSTORE, counter, -2);
+        wideOp(LLOAD, remaining, 2);
+        code.op(LCONST_1, 2);
+        code.op(LSUB, -2);
+        wideOp(LSTORE, remaining, -2);
+        code.jump(GOTO, loop, 0);
+        code.bind(end);
+    }
+
+    // Budget.backEdge() with the counter kept in an int local: if (countdown == 0) countdown =
+    // budget.acquire(); countdown--. The budget is only called once per CHECK_INTERVAL iterations.
+    private void chargeIteration() {
+        Label charged = new Label();
+        countdownOp(ILOAD, 1);
+        code.jump(IFNE, charged, -1);
+        code.op(ALOAD_2, 1);
+        code.op(INVOKEVIRTUAL, 0);
+        code.u2(pool.method(BUDGET, "acquire", "()I"));
+        countdownOp(ISTORE, -1);
+        code.bind(charged);
+        int local = countdownLocal();
+        if (local > 0xFF) {
+            code.op(WIDE, 0);
+            code.op(IINC, 0);
+            code.u2(local);
+            code.u2(0xFFFF);  // -1
+        } else {
+            code.op(IINC, 0);
+            code.u1(local);
+            code.u1(0xFF);    // -1
+        }
+    }
+
+    // Comparisons become native branches; dcmpg/dcmpl are chosen so NaN takes the false edge
+    private void jumpIfFalse(AST condition, Label target) {
+        if (condition instanceof BinOp && ClosureCompiler.isComparison(((BinOp) condition).getOp().getType())) {
+            BinOp op = (BinOp) condition;
+            expr(op.getLeft());
+            expr(op.getRight());
+            switch (op.getOp().getType()) {
+                case LEST:
+                    code.op(DCMPG, -3);
+                    code.jump(IFGE, target, -1);
+                    break;
+                case LESE:
+                    code.op(DCMPG, -3);
+                    code.jump(IFGT, target, -1);
+                    break;
+                case GRET:
+                    code.op(DCMPL, -3);
+                    code.jump(IFLE, target, -1);
+                    break;
+                case GRE:
+                    code.op(DCMPL, -3);
+                    code.jump(IFLT, target, -1);
+                    break;
+                case EQUAL:
+                    code.op(DCMPL, -3);
+                    code.jump(IFNE, target, -1);
+                    break;
+                default:
+                    code.op(DCMPL, -3);
+                    code.jump(IFEQ, target, -1);
+                    break;
+            }
+            return;
+        }
+        expr(condition);
+        code.op(DCONST_0, 2);
+        code.op(DCMPL, -3);
+        code.jump(IFEQ, target, -1);
+    }
+
+    private void expr(AST node) {
+        switch (node.kind()) {
+            case NUM: {
+                Object value = ((Num) node).getValue();
+                if (!(value instanceof Number)) {
+                    throw new UnsupportedConstruct("Non-numeric literal " + value);
+                }
+                pushDouble(((Number) value).doubleValue());
+                break;
+            }
+            case VAR:
+                localOp(DLOAD, slot((Var) node), 2);
+                break;
+            case UNARY_OP: {
+                UnaryOp op = (UnaryOp) node;
+                expr(op.getExpr());
+                if (op.getOp().getType() == TokenType.MINUS) {
+                    code.op(DNEG, 0);
+                } else if (op.getOp().getType() != TokenType.PLUS) {
+                    throw new UnsupportedConstruct("Unary " + op.getOp().getType());
+                }
+                break;
+            }
+            case BIN_OP:
+                binOp((BinOp) node);
+                break;
+            default:
+                throw new UnsupportedConstruct("Expression " + node.kind());
+        }
+    }
+
+    private void binOp(BinOp node) {
+        TokenType type = node.getOp().getType();
+        expr(node.getLeft());
+        expr(node.getRight());
+        switch (type) {
+            case PLUS:
+                code.op(DADD, -2);
+                break;
+            case MINUS:
+                code.op(DSUB, -2);
+                break;
+            case MUL:
+                code.op(DMUL, -2);
+                break;
+            case DIV:
+                code.op(DDIV, -2);
+                break;
+            case MOD:
+                code.op(DREM, -2);
+                break;
+            case EQUAL:
+                compare("equal");
+                break;
+            case NOT:
+                compare("notEqual");
+                break;
+            case GRE:
+                compare("greaterOrEqual");
+                break;
+            case LESE:
+                compare("lessOrEqual");
+                break;
+            case GRET:
+                compare("greater");
+                break;
+            case LEST:
+                compare("less");
+                break;
+            default:
+                throw new UnsupportedConstruct("Operator " + type);
+        }
+    }
+
+    // Comparisons used as values go through a static helper so no branch leaves values on the stack
+    private void compare(String helper) {
+        code.op(INVOKESTATIC, -2);
+        code.u2(pool.method(COMPILER, helper, "(DD)D"));
+    }
+
+    private int slot(Var node) {
+        if (node.getSlot() < 0) {
+            throw new UnsupportedConstruct("Unresolved variable " + node.getValue());
+        }
+        return node.getSlot();
+    }
+
+    private void pushInt(int value) {
+        if (value <= 5) {
+            code.op(0x03 + value, 1); // iconst_<n>
+        } else if (value <= Byte.MAX_VALUE) {
+            code.op(BIPUSH, 1);
+            code.u1(value);
+        } else if (value <= Short.MAX_VALUE) {
+            code.op(SIPUSH, 1);
+            code.u2(value);
+        } else {
+            code.op(LDC_W, 1);
+            code.u2(pool.intConstant(value));
+        }
+    }
+
+    private void pushDouble(double value) {
+        if (Double.doubleToRawLongBits(value) == 0L) {
+            code.op(DCONST_0, 2);
+        } else if (value == 1.0) {
+            code.op(DCONST_1, 2);
+        } else {
+            code.op(LDC2_W, 2);
+            code.u2(pool.doubleConstant(value));
+        }
+    }
+
+    // Class file layout
+
+    private byte[] writeClass(CodeBuffer run) {
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int codeInterface = pool.classRef(COMPILER + "$Code");
+        int fallbackName = pool.utf8("fallback");
+        int fallbackDescriptor = pool.utf8(FALLBACK_DESCRIPTOR);
+
+        // <init>(AST[]): super(); this.fallback = fallbacks;
+        CodeBuffer init = new CodeBuffer();
+        init.op(ALOAD_0, 1);
+        init.op(INVOKESPECIAL, -1);
+        init.u2(pool.method("java/lang/Object", "<init>", "()V"));
+        init.op(ALOAD_0, 1);
+        init.op(ALOAD_1, 1);
+        init.op(PUTFIELD, -2);
+        init.u2(pool.field(CLASS_NAME, "fallback", FALLBACK_DESCRIPTOR));
+        init.op(RETURN, 0);
+
+        int initName = pool.utf8("<init>");
+        int initDescriptor = pool.utf8("(" + FALLBACK_DESCRIPTOR + ")V");
+        int runName = pool.utf8("run");
+        int runDescriptor = pool.utf8(RUN_DESCRIPTOR);
+        int codeName = pool.utf8("Code");
+        int stackMapName = pool.utf8("StackMapTable");
+        int[] methodNames = new int[methods.size()];
+        for (int i = 0; i < methodNames.length; i++) {
+            methodNames[i] = pool.utf8(methods.get(i).name);
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(52); // Java 8 class file format
+            pool.write(out);
+            out.writeShort(0x0030); // ACC_FINAL | ACC_SUPER
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(codeInterface);
+
+            out.writeShort(1);
+            out.writeShort(0x0012); // ACC_PRIVATE | ACC_FINAL
+            out.writeShort(fallbackName);
+            out.writeShort(fallbackDescriptor);
+            out.writeShort(0);
+
+            out.writeShort(2 + methods.size());
+            writeMethod(out, ACC_PUBLIC, initName, initDescriptor, codeName, init, 2, -1, null);
+            writeMethod(out, ACC_PUBLIC, runName, runDescriptor, codeName, run, 3, -1, null);
+            for (int i = 0; i < methodNames.length; i++) {
+                Method method = methods.get(i);
+                writeMethod(out, ACC_PRIVATE, methodNames[i], runDescriptor, codeName, method.code,
+                        method.maxLocals, stackMapName, method.frames);
+            }
+
+            out.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeMethod(DataOutputStream out, int access, int name, int descriptor, int codeName, CodeBuffer body,
+                             int maxLocals, int stackMapName, byte[] frames) throws IOException {
+        boolean hasFrames = frames != null && frames.length > 2;
+        out.writeShort(access);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + body.length() + (hasFrames ? 6 + frames.length : 0));
+        out.writeShort(body.maxStack());
+        out.writeShort(maxLocals);
+        out.writeInt(body.length());
+        body.writeTo(out);
+        out.writeShort(0); // exception table
+        if (hasFrames) {
+            out.writeShort(1);
+            out.writeShort(stackMapName);
+            out.writeInt(frames.length);
+            out.write(frames);
+        } else {
+            out.writeShort(0);
+        }
+    }
+
+    // Every branch target of the current method has the same frame with an empty stack:
+    // [this, double[], Budget, double..., int, (double, long)...]
+    private byte[] stackMapFrames() {
+        int thisClass = pool.classRef(CLASS_NAME);
+        int doubleArray = pool.classRef("[D");
+        int budgetClass = pool.classRef(BUDGET);
+        int[] targets = code.branchTargets();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(targets.length);
+            int previous = -1;
+            for (int target : targets) {
+                out.writeByte(255); // full_frame
+                out.writeShort(target - previous - 1);
+                out.writeShort(4 + variables.length + 2 * forLevels);
+                out.writeByte(7); // Object_variable_info
+                out.writeShort(thisClass);
+                out.writeByte(7);
+                out.writeShort(doubleArray);
+                out.writeByte(7);
+                out.writeShort(budgetClass);
+                for (int i = 0; i < variables.length; i++) {
+                    out.writeByte(3); // Double_variable_info
+                }
+                out.writeByte(1); // Integer_variable_info
+                for (int i = 0; i < forLevels; i++) {
+                    out.writeByte(3);
+                    out.writeByte(4); // Long_variable_info
+                }
+                out.writeShort(0);
+                previous = target;
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static class Label {
+        int position = -1;
+    }
+
+    // Growable method body that tracks operand stack depth and pending jumps
+    static class CodeBuffer {
+        private byte[] bytes = new byte[256];
+        private int length;
+        private int stack;
+        private int maxStack;
+        private final List<int[]> jumpSites = new ArrayList<>();
+        private final List<Label> jumpTargets = new ArrayList<>();
+
+        int length() {
+            return length;
+        }
+
+        int maxStack() {
+            return maxStack;
+        }
+
+        int jumpCount() {
+            return jumpSites.size();
+        }
+
+        void u1(int value) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        void op(int opcode, int stackDelta) {
+            u1(opcode);
+            stack += stackDelta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        void jump(int opcode, Label target, int stackDelta) {
+            int site = length;
+            op(opcode, stackDelta);
+            u2(0);
+            jumpSites.add(new int[] {site});
+            jumpTargets.add(target);
+        }
+
+        void bind(Label label) {
+            label.position = length;
+        }
+
+        // Drops everything emitted after a mark; statements are emitted with an empty stack
+        void rollback(int codeMark, int jumpMark) {
+            length = codeMark;
+            stack = 0;
+            while (jumpSites.size() > jumpMark) {
+                jumpSites.remove(jumpSites.size() - 1);
+                jumpTargets.remove(jumpTargets.size() - 1);
+            }
+        }
+
+        void patchJumps() {
+            for (int i = 0; i < jumpSites.size(); i++) {
+                int site = jumpSites.get(i)[0];
+                int offset = jumpTargets.get(i).position - site;
+                bytes[site + 1] = (byte) (offset >> 8);
+                bytes[site + 2] = (byte) offset;
+            }
+        }
+
+        int[] branchTargets() {
+            TreeSet<Integer> targets = new TreeSet<>();
+            for (Label label : jumpTargets) {
+                targets.add(label.position);
+            }
+            int[] result = new int[targets.size()];
+            int i = 0;
+            for (int target : targets) {
+                result[i++] = target;
+            }
+            return result;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.write(bytes, 0, length);
+        }
+    }
+
+    static class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        private int entry(String key, int size, Writer writer) {
+            Integer index = entries.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                writer.write(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int result = count;
+            count += size;
+            entries.put(key, result);
+            return result;
+        }
+
+        int utf8(String value) {
+            return entry("U" + value, 1, out -> {
+                out.writeByte(1);
+                out.writeUTF(value);
+            });
+        }
+
+        int classRef(String name) {
+            int nameIndex = utf8(name);
+            return entry("C" + name, 1, out -> {
+                out.writeByte(7);
+                out.writeShort(nameIndex);
+            });
+        }
+
+        int intConstant(int value) {
+            return entry("I" + value, 1, out -> {
+                out.writeByte(3);
+                out.writeInt(value);
+            });
+        }
+
+        int doubleConstant(double value) {
+            return entry("D" + Double.doubleToRawLongBits(value), 2, out -> {
+                out.writeByte(6);
+                out.writeDouble(value);
+            });
+        }
+
+        private int nameAndType(String name, String descriptor) {
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            return entry("N" + name + ":" + descriptor, 1, out -> {
+                out.writeByte(12);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+        }
+
+        private int member(int tag, String owner, String name, String descriptor) {
+            int ownerIndex = classRef(owner);
+            int nameAndTypeIndex = nameAndType(name, descriptor);
+            return entry(tag + owner + "." + name + ":" + descriptor, 1, out -> {
+                out.writeByte(tag);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndTypeIndex);
+            });
+        }
+
+        int method(String owner, String name, String descriptor) {
+            return member(10, owner, name, descriptor);
+        }
+
+        int field(String owner, String name, String descriptor) {
+            return member(9, owner, name, descriptor);
+        }
+
+        void write(DataOutputStream target) throws IOException {
+            target.writeShort(count);
+            bytes.writeTo(target);
+        }
+
+        interface Writer {
+            void write(DataOutputStream out) throws IOException;
+        }
+    }
+}
+
+// Runs a program in the tree interpreter until it has executed compileThreshold times,
+// then switches to bytecode. Programs the compiler rejects, or whose class the JVM refuses to
+// load, stay interpreted.
+class TieredProgram implements Program {
+    public static final int DEFAULT_COMPILE_THRESHOLD = 2;
+
+    private final AST tree;
+    private final Scope scope;
+    private final int compileThreshold;
+    private final Function<AST, BytecodeCompiler.Code> compiler;
+    // Shared by every thread running the program; once compiled is set, execute() only reads it
+    private final AtomicInteger executions = new AtomicInteger();
+    private volatile boolean compileFailed;
+    private volatile BytecodeCompiler.Code compiled;
+
+    public TieredProgram(AST tree) {
+        this(tree, DEFAULT_COMPILE_THRESHOLD);
+    }
+
+    public TieredProgram(AST tree, int compileThreshold) {
+        this(tree, compileThreshold, BytecodeCompiler::compile);
+    }
+
+    TieredProgram(AST tree, int compileThreshold, Function<AST, BytecodeCompiler.Code> compiler) {
+        this.tree = tree;
+        this.scope = Resolver.resolve(tree);
+        this.compileThreshold = compileThreshold;
+        this.compiler = compiler;
+    }
+
+    @Override
+    public Scope getScope() {
+        return scope;
+    }
+
+    @Override
+    public double[] newMemory() {
+        return scope.newFrame();
+    }
+
+    @Override
+    public void execute(double[] memory, Budget budget) {
+        BytecodeCompiler.Code code = compiled;
+        if (code == null && !compileFailed && executions.getAndIncrement() >= compileThreshold) {
+            code = compile();
+        }
+        if (code != null) {
+            code.run(memory, budget);
+        } else {
+            new Interpreter(tree, memory, budget).interpret();
+        }
+    }
+
+    // Threads that reach the threshold together compile once; the rest wait for the result
+    private synchronized BytecodeCompiler.Code compile() {
+        if (compiled == null && !compileFailed) {
+            try {
+                compiled = compiler.apply(tree);
+            } catch (BytecodeCompiler.UnsupportedConstruct | LinkageError e) {
+                // LinkageError covers a VerifyError or ClassFormatError from defineHiddenClass
+                compileFailed = true;
+            }
+        }
+        return compiled;
+    }
+
+    public boolean isCompiled() {
+        return compiled != null;
+    }
+}
@@ -0,0 +1,390 @@
+package interpreter;
+
+import java.util.*;
+
+
+// Closure-compiled execution engine.
+// One pass over the tree from Parser.parse() turns every node into a pre-linked closure:
+// children are compiled once, operators are chosen once and variable slots are computed once,
+// so running the program never switches on a TokenType or goes through NodeVisitor.
+class ClosureCompiler {
+
+    interface ExprNode {
+        double eval(double[] memory);
+    }
+
+    interface CondNode {
+        boolean test(double[] memory);
+    }
+
+    // Statements also get the run's Budget, which loops charge once per iteration
+    interface StmtNode {
+        void exec(double[] memory, Budget budget);
+    }
+
+    private static final StmtNode EMPTY = (memory, budget) -> { };
+
+    public static ClosureProgram compile(AST tree) {
+        return compile(tree, new Scope());
+    }
+
+    // Keeps the slots already in scope and adds the tree's new names after them
+    public static ClosureProgram compile(AST tree, Scope scope) {
+        Resolver.resolve(tree, scope);
+        return new ClosureProgram(new ClosureCompiler().statement(tree), scope);
+    }
+
+    // For a statement of a tree the caller has already resolved, e.g. one branch of a ParallelProgram
+    static StmtNode compileResolved(AST node) {
+        return new ClosureCompiler().statement(node);
+    }
+
+    private void error(AST node) {
+        throw new RuntimeException("Cannot compile " + node);
+    }
+
+    private StmtNode statement(AST node) {
+        switch (node.kind()) {
+            case COMPOUND:
+                return block(((Compound) node).getChildren());
+            case ASSIGN:
+                return assign((Assign) node);
+            case IF:
+                return ifStatement((If) node);
+            case ELSE:
+                return block(((Else) node).getBody());
+            case WHILE:
+                return whileStatement((While) node);
+            case FOR:
+                return forStatement((For) node);
+            case NO_OP:
+                return EMPTY;
+            default:
+                // Bare expression statement: evaluated for its side effects only
+                ExprNode expr = expr(node);
+                return (memory, budget) -> expr.eval(memory);
+        }
+    }
+
+    private StmtNode block(List<AST> nodes) {
+        StmtNode[] body = new StmtNode[nodes.size()];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = statement(nodes.get(i));
+        }
+
+        switch (body.length) {
+            case 0:
+                return EMPTY;
+            case 1:
+                return body[0];
+            case 2: {
+                StmtNode first = body[0];
+                StmtNode second = body[1];
+                return (memory, budget) -> {
+                    first.exec(memory, budget);
+                    second.exec(memory, budget);
+                };
+            }
+            default:
+                return (memory, budget) -> {
+                    for (StmtNode stmt : body) {
+                        stmt.exec(memory, budget);
+                    }
+                };
+        }
+    }
+
+    private StmtNode assign(Assign node) {
+        int index = ((Var) node.getLeft()).getSlot();
+        AST right = node.getRight();
+
+        // x = x + c and x = x - c are the usual loop increments
+        if (right instanceof BinOp) {
+            BinOp op = (BinOp) right;
+            TokenType type = op.getOp().getType();
+            if ((type == TokenType.PLUS || type == TokenType.MINUS) &&
+                    op.getLeft() instanceof Var && ((Var) op.getLeft()).getSlot() == index &&
+                    op.getRight() instanceof Num) {
+                double step = constant((Num) op.getRight());
+                double delta = type == TokenType.PLUS ? step : -step;
+                return (memory, budget) -> memory[index] += delta;
+            }
+        }
+
+        ExprNode value = expr(right);
+        return (memory, budget) -> memory[index] = value.eval(memory);
+    }
+
+    private StmtNode ifStatement(If node) {
+        CondNode condition = condition(node.getCondition());
+        StmtNode body = block(node.getBody());
+        StmtNode rest = block(node.getRest());
+        if (rest == EMPTY) {
+            return (memory, budget) -> {
+                if (condition.test(memory)) {
+                    body.exec(memory, budget);
+                }
+            };
+        }
+        return (memory, budget) -> {
+            if (condition.test(memory)) {
+                body.exec(memory, budget);
+            } else {
+                rest.exec(memory, budget);
+            }
+        };
+    }
+
+    private StmtNode whileStatement(While node) {
+        CondNode condition = condition(node.getCondition());
+        StmtNode body = block(node.getBody());
+        if (containsLoop(node.getBody())) {
+            return (memory, budget) -> {
+                while (condition.test(memory)) {
+                    budget.backEdge();
+                    body.exec(memory, budget);
+                }
+            };
+        }
+        // Innermost loops are strip-mined: iterations are taken from the budget in chunks and the
+        // inner loop only counts against a local, so the budget costs nothing per iteration
+        return (memory, budget) -> {
+            while (condition.test(memory)) {
+                int chunk = budget.acquire();
+                body.exec(memory, budget);
+                int used = 1;
+                while (used < chunk && condition.test(memory)) {
+                    body.exec(memory, budget);
+                    used++;
+                }
+                if (used < chunk) {
+                    budget.release(chunk - used);
+                    return;
+                }
+            }
+        };
+    }
+
+    // Counted loop: the bounds are evaluated once and the induction variable lives in a local,
+    // only copied to its slot for the body to read
+    private StmtNode forStatement(For node) {
+        int index = node.getVariable().getSlot();
+        ExprNode from = expr(node.getFrom());
+        ExprNode to = expr(node.getTo());
+        StmtNode body = block(node.getBody());
+        if (containsLoop(node.getBody())) {
+            return (memory, budget) -> {
+                double i = from.eval(memory);
+                long trips = For.tripCount(i, to.eval(memory));
+                for (long remaining = trips; remaining > 0; remaining--, i++) {
+                    budget.backEdge();
+                    memory[index] = i;
+                    body.exec(memory, budget);
+                }
+            };
+        }
+        // Strip-mined like an innermost while loop
+        return (memory, budget) -> {
+            double i = from.eval(memory);
+            long remaining = For.tripCount(i, to.eval(memory));
+            while (remaining > 0) {
+                int chunk = budget.acquire();
+                int used = 0;
+                for (; used < chunk && remaining > 0; used++, remaining--, i++) {
+                    memory[index] = i;
+                    body.exec(memory, budget);
+                }
+                if (used < chunk) {
+                    budget.release(chunk - used);
+                    return;
+                }
+            }
+        };
+    }
+
+    static boolean containsLoop(List<AST> nodes) {
+        for (AST node : nodes) {
+            switch (node.kind()) {
+                case WHILE:
+                case FOR:
+                    return true;
+                case COMPOUND:
+                    if (containsLoop(((Compound) node).getChildren())) {
+                        return true;
+                    }
+                    break;
+                case ELSE:
+                    if (containsLoop(((Else) node).getBody())) {
+                        return true;
+                    }
+                    break;
+                case IF:
+                    if (containsLoop(((If) node).getBody()) || containsLoop(((If) node).getRest())) {
+                        return true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return false;
+    }
+
+    // Comparisons used as conditions branch directly instead of producing 1.0 / 0.0
+    private CondNode condition(AST node) {
+        if (node instanceof BinOp) {
+            BinOp op = (BinOp) node;
+            TokenType type = op.getOp().getType();
+            if (isComparison(type)) {
+                ExprNode left = expr(op.getLeft());
+                // Comparing against a literal is the common loop bound
+                if (op.getRight() instanceof Num) {
+                    double bound = constant((Num) op.getRight());
+                    switch (type) {
+                        case EQUAL:
+                            return memory -> left.eval(memory) == bound;
+                        case NOT:
+                            return memory -> left.eval(memory) != bound;
+                        case GRE:
+                            return memory -> left.eval(memory) >= bound;
+                        case LESE:
+                            return memory -> left.eval(memory) <= bound;
+                        case GRET:
+                            return memory -> left.eval(memory) > bound;
+                        default:
+                            return memory -> left.eval(memory) < bound;
+                    }
+                }
+                ExprNode right = expr(op.getRight());
+                switch (type) {
+                    case EQUAL:
+                        return memory -> left.eval(memory) == right.eval(memory);
+                    case NOT:
+                        return memory -> left.eval(memory) != right.eval(memory);
+                    case GRE:
+                        return memory -> left.eval(memory) >= right.eval(memory);
+                    case LESE:
+                        return memory -> left.eval(memory) <= right.eval(memory);
+                    case GRET:
+                        return memory -> left.eval(memory) > right.eval(memory);
+                    default:
+                        return memory -> left.eval(memory) < right.eval(memory);
+                }
+            }
+        }
+        ExprNode value = expr(node);
+        return memory -> value.eval(memory) != 0.0;
+    }
+
+    private ExprNode expr(AST node) {
+        switch (node.kind()) {
+            case NUM: {
+                double value = constant((Num) node);
+                return memory -> value;
+            }
+            case VAR: {
+                int index = ((Var) node).getSlot();
+                return memory -> memory[index];
+            }
+            case UNARY_OP:
+                return unaryOp((UnaryOp) node);
+            case BIN_OP:
+                return binOp((BinOp) node);
+            default:
+                error(node);
+                return null;
+        }
+    }
+
+    private ExprNode unaryOp(UnaryOp node) {
+        ExprNode expr = expr(node.getExpr());
+        switch (node.getOp().getType()) {
+            case PLUS:
+                return expr;
+            case MINUS:
+                return memory -> -expr.eval(memory);
+            default:
+                throw new IllegalArgumentException("Invalid unary operation type: " + node.getOp().getType());
+        }
+    }
+
+    private ExprNode binOp(BinOp node) {
+        TokenType type = node.getOp().getType();
+        if (isComparison(type)) {
+            CondNode test = condition(node);
+            return memory -> test.test(memory) ? 1.0 : 0.0;
+        }
+
+        ExprNode left = expr(node.getLeft());
+        ExprNode right = expr(node.getRight());
+        switch (type) {
+            case PLUS:
+                return memory -> left.eval(memory) + right.eval(memory);
+            case MINUS:
+                return memory -> left.eval(memory) - right.eval(memory);
+            case MUL:
+                return memory -> left.eval(memory) * right.eval(memory);
+            case DIV:
+                return memory -> left.eval(memory) / right.eval(memory);
+            case MOD:
+                return memory -> left.eval(memory) % right.eval(memory);
+            default:
+                throw new IllegalArgumentException("Invalid operation type: " + type);
+        }
+    }
+
+    private static double constant(Num node) {
+        return ((Number) node.getValue()).doubleValue();
+    }
+
+    static boolean isComparison(TokenType type) {
+        switch (type) {
+            case EQUAL:
+            case NOT:
+            case GRE:
+            case LESE:
+            case GRET:
+            case LEST:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
+
+// A compiled program; closures hold no state, so the same program can run against any memory
+class ClosureProgram implements Program {
+    private final ClosureCompiler.StmtNode root;
+    private final Scope scope;
+
+    ClosureProgram(ClosureCompiler.StmtNode root, Scope scope) {
+        this.root = root;
+        this.scope = scope;
+    }
+
+    @Override
+    public Scope getScope() {
+        return scope;
+    }
+
+    @Override
+    public double[] newMemory() {
+        return scope.newFrame();
+    }
+
+    @Override
+    public void execute(double[] memory, Budget budget) {
+        root.exec(memory, budget);
+    }
+
+    public double[] run() {
+        double[] memory = newMemory();
+        execute(memory);
+        return memory;
+    }
+
+    public double getVariable(double[] memory, String name) {
+        int slot = scope.slotOf(name);
+        return slot < 0 ? 0.0 : memory[slot];
+    }
+}
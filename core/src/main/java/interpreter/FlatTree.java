@@ -0,0 +1,627 @@
+package interpreter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+
+// A parsed program stored as a struct of arrays instead of a graph of AST objects.
+// Node n is described by kinds[n], ops[n] (TokenType ordinal for operators) and two operands
+// whose meaning depends on the kind:
+//   NUM       first = index into literals
+//   VAR       first = frame slot
+//   UNARY_OP  first = operand node
+//   BIN_OP    first = left node, second = right node
+//   ASSIGN    first = frame slot, second = value node
+//   COMPOUND  first = block
+//   ELSE      first = block
+//   IF        first = condition node, second = offset into lists of the body and else blocks
+//   WHILE     first = condition node, second = body block
+//   FOR       first = frame slot, second = offset into lists of the from node, to node and body block
+// A block is an offset into lists holding the statement count followed by the statement nodes.
+// Children are always stored before their parents, so a front-to-back walk is a post-order walk.
+// write() / load() store the arrays as they are, so loading a precompiled program is a bulk
+// copy out of a mapped file followed by a bounds check of every operand.
+class FlatTree implements Program {
+    private static final NodeKind[] KINDS = NodeKind.values();
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int MAGIC = 0x464C5431; // "FLT1"
+
+    private byte[] kinds = new byte[64];
+    private byte[] ops = new byte[64];
+    private int[] first = new int[64];
+    private int[] second = new int[64];
+    private int count;
+
+    private int[] lists = new int[64];
+    private int listLength;
+
+    private double[] literals = new double[16];
+    private int literalCount;
+
+    private final Scope scope;
+    private int root;
+
+    private FlatTree(Scope scope) {
+        this.scope = scope;
+    }
+
+    public static FlatTree parse(TokenSource tokens) {
+        return of(new Parser(tokens).parse());
+    }
+
+    // Resolves the tree and copies it into arrays; the AST objects can be dropped afterwards
+    public static FlatTree of(AST tree) {
+        return of(tree, new Scope());
+    }
+
+    // Keeps the slots already in scope and adds the tree's new names after them
+    public static FlatTree of(AST tree, Scope scope) {
+        FlatTree flat = new FlatTree(Resolver.resolve(tree, scope));
+        flat.root = flat.add(tree);
+        flat.trim();
+        return flat;
+    }
+
+    private int add(AST node) {
+        switch (node.kind()) {
+            case NUM: {
+                Object value = ((Num) node).getValue();
+                if (!(value instanceof Number)) {
+                    throw new IllegalArgumentException("Not a numeric literal: " + node);
+                }
+                return node(NodeKind.NUM, null, literal(((Number) value).doubleValue()), 0);
+            }
+            case VAR:
+                return node(NodeKind.VAR, null, ((Var) node).getSlot(), 0);
+            case UNARY_OP: {
+                UnaryOp op = (UnaryOp) node;
+                return node(NodeKind.UNARY_OP, op.getOp().getType(), add(op.getExpr()), 0);
+            }
+            case BIN_OP: {
+                BinOp op = (BinOp) node;
+                int left = add(op.getLeft());
+                int right = add(op.getRight());
+                return node(NodeKind.BIN_OP, op.getOp().getType(), left, right);
+            }
+            case ASSIGN: {
+                Assign assign = (Assign) node;
+                int value = add(assign.getRight());
+                return node(NodeKind.ASSIGN, null, ((Var) assign.getLeft()).getSlot(), value);
+            }
+            case COMPOUND:
+                return node(NodeKind.COMPOUND, null, block(((Compound) node).getChildren()), 0);
+            case ELSE:
+                return node(NodeKind.ELSE, null, block(((Else) node).getBody()), 0);
+            case IF: {
+                If branch = (If) node;
+                int condition = add(branch.getCondition());
+                int body = block(branch.getBody());
+                int rest = block(branch.getRest());
+                return node(NodeKind.IF, null, condition, pair(body, rest));
+            }
+            case WHILE: {
+                While loop = (While) node;
+                int condition = add(loop.getCondition());
+                return node(NodeKind.WHILE, null, condition, block(loop.getBody()));
+            }
+            case FOR: {
+                For loop = (For) node;
+                int from = add(loop.getFrom());
+                int to = add(loop.getTo());
+                int body = block(loop.getBody());
+                return node(NodeKind.FOR, null, loop.getVariable().getSlot(), triple(from, to, body));
+            }
+            case NO_OP:
+                return node(NodeKind.NO_OP, null, 0, 0);
+            default:
+                throw new IllegalArgumentException("Cannot flatten " + node);
+        }
+    }
+
+    private int block(List<AST> nodes) {
+        // Statements are added first so the block itself is one contiguous run of lists
+        int[] children = new int[nodes.size()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = add(nodes.get(i));
+        }
+        if (listLength + children.length + 1 > lists.length) {
+            lists = Arrays.copyOf(lists, Math.max(lists.length * 2, listLength + children.length + 1));
+        }
+        int offset = listLength;
+        lists[listLength++] = children.length;
+        System.arraycopy(children, 0, lists, listLength, children.length);
+        listLength += children.length;
+        return offset;
+    }
+
+    private int pair(int a, int b) {
+        if (listLength + 2 > lists.length) {
+            lists = Arrays.copyOf(lists, lists.length * 2);
+        }
+        lists[listLength] = a;
+        lists[listLength + 1] = b;
+        listLength += 2;
+        return listLength - 2;
+    }
+
+    private int triple(int a, int b, int c) {
+        if (listLength + 3 > lists.length) {
+            lists = Arrays.copyOf(lists, lists.length * 2);
+        }
+        lists[listLength] = a;
+        lists[listLength + 1] = b;
+        lists[listLength + 2] = c;
+        listLength += 3;
+        return listLength - 3;
+    }
+
+    private int node(NodeKind kind, TokenType op, int a, int b) {
+        if (count == kinds.length) {
+            int capacity = count * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            ops = Arrays.copyOf(ops, capacity);
+            first = Arrays.copyOf(first, capacity);
+            second = Arrays.copyOf(second, capacity);
+        }
+        kinds[count] = (byte) kind.ordinal();
+        ops[count] = op == null ? -1 : (byte) op.ordinal();
+        first[count] = a;
+        second[count] = b;
+        return count++;
+    }
+
+    private int literal(double value) {
+        if (literalCount == literals.length) {
+            literals = Arrays.copyOf(literals, literalCount * 2);
+        }
+        literals[literalCount] = value;
+        return literalCount++;
+    }
+
+    private void trim() {
+        kinds = Arrays.copyOf(kinds, count);
+        ops = Arrays.copyOf(ops, count);
+        first = Arrays.copyOf(first, count);
+        second = Arrays.copyOf(second, count);
+        lists = Arrays.copyOf(lists, listLength);
+        literals = Arrays.copyOf(literals, literalCount);
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(count);
+        out.writeInt(listLength);
+        out.writeInt(literalCount);
+        out.writeInt(root);
+        List<String> names = scope.getNames();
+        out.writeInt(names.size());
+        for (String name : names) {
+            // Plain UTF-8 rather than writeUTF, so the loader can decode it straight from the buffer
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.write(kinds, 0, count);
+        out.write(ops, 0, count);
+        for (int i = 0; i < count; i++) {
+            out.writeInt(first[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            out.writeInt(second[i]);
+        }
+        for (int i = 0; i < listLength; i++) {
+            out.writeInt(lists[i]);
+        }
+        for (int i = 0; i < literalCount; i++) {
+            out.writeDouble(literals[i]);
+        }
+    }
+
+    public void save(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            write(out);
+        }
+    }
+
+    public static FlatTree load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static FlatTree read(ByteBuffer in) throws IOException {
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a precompiled program");
+            }
+            int count = in.getInt();
+            int listLength = in.getInt();
+            int literalCount = in.getInt();
+            int root = in.getInt();
+            int variableCount = in.getInt();
+            // Sizes are checked against the bytes left before anything is allocated, so a damaged
+            // header cannot ask for more memory than the file itself occupies
+            if (count < 0 || listLength < 0 || literalCount < 0 || variableCount < 0 ||
+                    4L * variableCount > in.remaining()) {
+                throw new IOException("Bad header");
+            }
+
+            Scope scope = new Scope();
+            for (int i = 0; i < variableCount; i++) {
+                int length = in.getInt();
+                if (length < 0 || length > in.remaining()) {
+                    throw new IOException("Bad variable name length " + length);
+                }
+                byte[] bytes = new byte[length];
+                in.get(bytes);
+                scope.define(new String(bytes, StandardCharsets.UTF_8).intern());
+            }
+
+            if (10L * count + 4L * listLength + 8L * literalCount > in.remaining()) {
+                throw new IOException("Truncated precompiled program");
+            }
+            FlatTree tree = new FlatTree(scope);
+            tree.count = count;
+            tree.listLength = listLength;
+            tree.literalCount = literalCount;
+            tree.root = root;
+            tree.kinds = new byte[count];
+            tree.ops = new byte[count];
+            tree.first = new int[count];
+            tree.second = new int[count];
+            tree.lists = new int[listLength];
+            tree.literals = new double[literalCount];
+            in.get(tree.kinds);
+            in.get(tree.ops);
+            in.asIntBuffer().get(tree.first);
+            in.position(in.position() + 4 * count);
+            in.asIntBuffer().get(tree.second);
+            in.position(in.position() + 4 * count);
+            in.asIntBuffer().get(tree.lists);
+            in.position(in.position() + 4 * listLength);
+            in.asDoubleBuffer().get(tree.literals);
+            tree.validate();
+            return tree;
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, NegativeArraySizeException and friends from a damaged file
+            throw new IOException("Corrupt precompiled program", e);
+        }
+    }
+
+    // Every operand must point inside its table and every child before its parent, so a loaded
+    // program can neither index out of bounds nor loop while it is being walked. Operands that
+    // are evaluated must be expressions, with operators their node kind accepts, so a loaded
+    // program also never reaches the interpreter's invalid-node errors.
+    private void validate() throws IOException {
+        int variables = scope.size();
+        for (int node = 0; node < count; node++) {
+            if (kinds[node] < 0 || kinds[node] >= KINDS.length || ops[node] >= TYPES.length) {
+                throw new IOException("Bad node " + node);
+            }
+            boolean valid;
+            switch (KINDS[kinds[node]]) {
+                case NUM:
+                    valid = inRange(first[node], literalCount);
+                    break;
+                case VAR:
+                    valid = inRange(first[node], variables);
+                    break;
+                case UNARY_OP:
+                    valid = isUnaryOperator(ops[node]) && isExpression(first[node], node);
+                    break;
+                case BIN_OP:
+                    valid = isBinaryOperator(ops[node]) && isExpression(first[node], node) &&
+                            isExpression(second[node], node);
+                    break;
+                case ASSIGN:
+                    valid = inRange(first[node], variables) && isExpression(second[node], node);
+                    break;
+                case COMPOUND:
+                case ELSE:
+                    valid = isBlock(first[node], node);
+                    break;
+                case IF:
+                    valid = isExpression(first[node], node) && second[node] >= 0 &&
+                            second[node] + 1 < listLength && isBlock(lists[second[node]], node) &&
+                            isBlock(lists[second[node] + 1], node);
+                    break;
+                case WHILE:
+                    valid = isExpression(first[node], node) && isBlock(second[node], node);
+                    break;
+                case FOR:
+                    valid = inRange(first[node], variables) && second[node] >= 0 &&
+                            second[node] + 2 < listLength && isExpression(lists[second[node]], node) &&
+                            isExpression(lists[second[node] + 1], node) &&
+                            isBlock(lists[second[node] + 2], node);
+                    break;
+                default:
+                    valid = true;
+                    break;
+            }
+            if (!valid) {
+                throw new IOException("Bad operands for " + KINDS[kinds[node]] + " node " + node);
+            }
+        }
+        if (!inRange(root, count)) {
+            throw new IOException("Bad root node " + root);
+        }
+    }
+
+    private static boolean inRange(int index, int limit) {
+        return index >= 0 && index < limit;
+    }
+
+    // Nodes before the parent have already been validated, so their kind is in range
+    private boolean isExpression(int operand, int parent) {
+        if (!inRange(operand, parent)) {
+            return false;
+        }
+        switch (KINDS[kinds[operand]]) {
+            case NUM:
+            case VAR:
+            case UNARY_OP:
+            case BIN_OP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isUnaryOperator(byte op) {
+        return op == TokenType.PLUS.ordinal() || op == TokenType.MINUS.ordinal();
+    }
+
+    private static boolean isBinaryOperator(byte op) {
+        if (op < 0) {
+            return false;
+        }
+        switch (TYPES[op]) {
+            case PLUS:
+            case MINUS:
+            case MUL:
+            case DIV:
+            case MOD:
+                return true;
+            default:
+                return ClosureCompiler.isComparison(TYPES[op]);
+        }
+    }
+
+    private boolean isBlock(int block, int parent) {
+        if (!inRange(block, listLength) || lists[block] < 0 || lists[block] > listLength - block - 1) {
+            return false;
+        }
+        for (int i = 0; i < lists[block]; i++) {
+            if (!inRange(lists[block + 1 + i], parent)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Scope getScope() {
+        return scope;
+    }
+
+    @Override
+    public double[] newMemory() {
+        return scope.newFrame();
+    }
+
+    @Override
+    public void execute(double[] memory, Budget budget) {
+        new FlatInterpreter(this).execute(memory, budget);
+    }
+
+    public double getVariable(double[] memory, String name) {
+        int slot = scope.slotOf(name);
+        return slot < 0 ? 0.0 : memory[slot];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getRoot() {
+        return root;
+    }
+
+    public NodeKind kind(int node) {
+        return KINDS[kinds[node]];
+    }
+
+    public TokenType op(int node) {
+        return ops[node] < 0 ? null : TYPES[ops[node]];
+    }
+
+    public int first(int node) {
+        return first[node];
+    }
+
+    public int second(int node) {
+        return second[node];
+    }
+
+    public int thenBlock(int node) {
+        return lists[second[node]];
+    }
+
+    public int elseBlock(int node) {
+        return lists[second[node] + 1];
+    }
+
+    public int forFrom(int node) {
+        return lists[second[node]];
+    }
+
+    public int forTo(int node) {
+        return lists[second[node] + 1];
+    }
+
+    public int forBody(int node) {
+        return lists[second[node] + 2];
+    }
+
+    public double literal(int node) {
+        return literals[first[node]];
+    }
+
+    public int blockSize(int block) {
+        return lists[block];
+    }
+
+    public int blockStatement(int block, int index) {
+        return lists[block + 1 + index];
+    }
+}
+
+// Walks a FlatTree directly; the hot loops only index primitive arrays
+class FlatInterpreter {
+    private final FlatTree tree;
+
+    public FlatInterpreter(FlatTree tree) {
+        this.tree = tree;
+    }
+
+    public double[] run() {
+        double[] memory = tree.newMemory();
+        execute(memory);
+        return memory;
+    }
+
+    public void execute(double[] memory) {
+        execute(memory, Budget.unlimited());
+    }
+
+    public void execute(double[] memory, Budget budget) {
+        statement(tree.getRoot(), memory, budget);
+    }
+
+    private void statement(int node, double[] memory, Budget budget) {
+        switch (tree.kind(node)) {
+            case COMPOUND:
+            case ELSE:
+                block(tree.first(node), memory, budget);
+                break;
+            case ASSIGN:
+                memory[tree.first(node)] = evalDouble(tree.second(node), memory);
+                break;
+            case IF:
+                if (evalCondition(tree.first(node), memory)) {
+                    block(tree.thenBlock(node), memory, budget);
+                } else {
+                    block(tree.elseBlock(node), memory, budget);
+                }
+                break;
+            case WHILE: {
+                int condition = tree.first(node);
+                int body = tree.second(node);
+                while (evalCondition(condition, memory)) {
+                    budget.backEdge();
+                    block(body, memory, budget);
+                }
+                break;
+            }
+            case FOR: {
+                int slot = tree.first(node);
+                int body = tree.forBody(node);
+                double i = evalDouble(tree.forFrom(node), memory);
+                long trips = For.tripCount(i, evalDouble(tree.forTo(node), memory));
+                for (long remaining = trips; remaining > 0; remaining--, i++) {
+                    budget.backEdge();
+                    memory[slot] = i;
+                    block(body, memory, budget);
+                }
+                break;
+            }
+            case NO_OP:
+                break;
+            default:
+                // Bare expression statement: evaluated for its side effects only
+                evalDouble(node, memory);
+                break;
+        }
+    }
+
+    private void block(int block, double[] memory, Budget budget) {
+        int size = tree.blockSize(block);
+        for (int i = 0; i < size; i++) {
+            statement(tree.blockStatement(block, i), memory, budget);
+        }
+    }
+
+    private double evalDouble(int node, double[] memory) {
+        switch (tree.kind(node)) {
+            case NUM:
+                return tree.literal(node);
+            case VAR:
+                return memory[tree.first(node)];
+            case UNARY_OP:
+                switch (tree.op(node)) {
+                    case PLUS:
+                        return evalDouble(tree.first(node), memory);
+                    case MINUS:
+                        return -evalDouble(tree.first(node), memory);
+                    default:
+                        throw new IllegalArgumentException("Invalid unary operation type: " + tree.op(node));
+                }
+            case BIN_OP: {
+                int left = tree.first(node);
+                int right = tree.second(node);
+                switch (tree.op(node)) {
+                    case PLUS:
+                        return evalDouble(left, memory) + evalDouble(right, memory);
+                    case MINUS:
+                        return evalDouble(left, memory) - evalDouble(right, memory);
+                    case MUL:
+                        return evalDouble(left, memory) * evalDouble(right, memory);
+                    case DIV:
+                        return evalDouble(left, memory) / evalDouble(right, memory);
+                    case MOD:
+                        return evalDouble(left, memory) % evalDouble(right, memory);
+                    case EQUAL:
+                    case NOT:
+                    case GRE:
+                    case LESE:
+                    case GRET:
+                    case LEST:
+                        return evalCondition(node, memory) ? 1.0 : 0.0;
+                    default:
+                        throw new IllegalArgumentException("Invalid operation type: " + tree.op(node));
+                }
+            }
+            default:
+                throw new IllegalArgumentException("Not an expression: " + tree.kind(node));
+        }
+    }
+
+    // Comparisons in conditions produce a boolean directly instead of 1.0 / 0.0
+    private boolean evalCondition(int node, double[] memory) {
+        if (tree.kind(node) == NodeKind.BIN_OP) {
+            int left = tree.first(node);
+            int right = tree.second(node);
+            switch (tree.op(node)) {
+                case EQUAL:
+                    return evalDouble(left, memory) == evalDouble(right, memory);
+                case NOT:
+                    return evalDouble(left, memory) != evalDouble(right, memory);
+                case GRE:
+                    return evalDouble(left, memory) >= evalDouble(right, memory);
+                case LESE:
+                    return evalDouble(left, memory) <= evalDouble(right, memory);
+                case GRET:
+                    return evalDouble(left, memory) > evalDouble(right, memory);
+                case LEST:
+                    return evalDouble(left, memory) < evalDouble(right, memory);
+                default:
+                    break;
+            }
+        }
+        return evalDouble(node, memory) != 0.0;
+    }
+}
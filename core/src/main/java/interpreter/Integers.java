@@ -0,0 +1,107 @@
+package interpreter;
+
+import java.math.BigInteger;
+
+
+// Integers that never overflow, the way Ruby's do: a value is a Long while it fits and a
+// BigInteger only beyond that. Operations on two longs check for overflow like Math.addExact
+// and build BigIntegers only when the result does not fit; results that fit a long again are
+// always returned as Long, so later operations are back on the fast path.
+// Division and remainder follow the double engines: a quotient is only an integer when the
+// division is exact, and % truncates toward zero.
+final class Integers {
+    private Integers() {
+    }
+
+    public static boolean isInteger(Object value) {
+        return value instanceof Long || value instanceof BigInteger;
+    }
+
+    public static Object valueOf(BigInteger value) {
+        return value.bitLength() < Long.SIZE ? (Object) value.longValue() : value;
+    }
+
+    public static BigInteger toBigInteger(Object value) {
+        return value instanceof BigInteger ? (BigInteger) value : BigInteger.valueOf((Long) value);
+    }
+
+    public static Object add(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) {
+            long x = (Long) a;
+            long y = (Long) b;
+            long result = x + y;
+            if (((x ^ result) & (y ^ result)) >= 0) {
+                return result;
+            }
+        }
+        return valueOf(toBigInteger(a).add(toBigInteger(b)));
+    }
+
+    public static Object subtract(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) {
+            long x = (Long) a;
+            long y = (Long) b;
+            long result = x - y;
+            if (((x ^ y) & (x ^ result)) >= 0) {
+                return result;
+            }
+        }
+        return valueOf(toBigInteger(a).subtract(toBigInteger(b)));
+    }
+
+    public static Object multiply(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) {
+            long x = (Long) a;
+            long y = (Long) b;
+            long result = x * y;
+            if (Math.multiplyHigh(x, y) == result >> 63) {
+                return result;
+            }
+        }
+        return valueOf(toBigInteger(a).multiply(toBigInteger(b)));
+    }
+
+    // The quotient if b divides a, otherwise null and the caller divides as doubles
+    public static Object divideExact(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) {
+            long x = (Long) a;
+            long y = (Long) b;
+            if (y == 0 || x % y != 0) {
+                return null;
+            }
+            if (x != Long.MIN_VALUE || y != -1) {
+                return x / y;
+            }
+        }
+        BigInteger divisor = toBigInteger(b);
+        if (divisor.signum() == 0) {
+            return null;
+        }
+        BigInteger[] result = toBigInteger(a).divideAndRemainder(divisor);
+        return result[1].signum() == 0 ? valueOf(result[0]) : null;
+    }
+
+    // Truncated remainder, or null for a zero divisor
+    public static Object remainder(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) {
+            long y = (Long) b;
+            return y == 0 ? null : (Object) ((Long) a % y);
+        }
+        BigInteger divisor = toBigInteger(b);
+        return divisor.signum() == 0 ? null : valueOf(toBigInteger(a).remainder(divisor));
+    }
+
+    public static Object negate(Object value) {
+        if (value instanceof Long && (Long) value != Long.MIN_VALUE) {
+            return -(Long) value;
+        }
+        return valueOf(toBigInteger(value).negate());
+    }
+
+    public static int compare(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) {
+            return Long.compare((Long) a, (Long) b);
+        }
+        return toBigInteger(a).compareTo(toBigInteger(b));
+    }
+}
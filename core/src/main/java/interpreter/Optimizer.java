@@ -0,0 +1,625 @@
+package interpreter;
+
+import java.math.BigInteger;
+import java.util.*;
+
+
+// AST optimizer run after Parser.parse(). Passes rewrite the tree in place and can be switched
+// off individually; the optimizer reports how many nodes folding removed and how many loop
+// invariant expressions were hoisted.
+class Optimizer {
+    private boolean constantFolding = true;
+    private boolean loopInvariantMotion = true;
+    private int nodesRemoved;
+    private int expressionsHoisted;
+
+    public Optimizer constantFolding(boolean enabled) {
+        this.constantFolding = enabled;
+        return this;
+    }
+
+    public Optimizer loopInvariantMotion(boolean enabled) {
+        this.loopInvariantMotion = enabled;
+        return this;
+    }
+
+    public AST optimize(AST tree) {
+        if (constantFolding) {
+            int before = countNodes(tree);
+            tree = new ConstantFolder().fold(tree);
+            nodesRemoved += before - countNodes(tree);
+        }
+        if (loopInvariantMotion) {
+            LoopInvariantMotion motion = new LoopInvariantMotion(tree);
+            tree = motion.apply(tree);
+            expressionsHoisted += motion.getHoisted();
+        }
+        return tree;
+    }
+
+    public int getNodesRemoved() {
+        return nodesRemoved;
+    }
+
+    public int getExpressionsHoisted() {
+        return expressionsHoisted;
+    }
+
+    static int countNodes(AST node) {
+        switch (node.kind()) {
+            case BIN_OP:
+                return 1 + countNodes(((BinOp) node).getLeft()) + countNodes(((BinOp) node).getRight());
+            case UNARY_OP:
+                return 1 + countNodes(((UnaryOp) node).getExpr());
+            case ASSIGN:
+                return 1 + countNodes(((Assign) node).getLeft()) + countNodes(((Assign) node).getRight());
+            case COMPOUND:
+                return 1 + countNodes(((Compound) node).getChildren());
+            case IF:
+                return 1 + countNodes(((If) node).getCondition()) + countNodes(((If) node).getBody()) +
+                        countNodes(((If) node).getRest());
+            case ELSE:
+                return 1 + countNodes(((Else) node).getBody());
+            case WHILE:
+                return 1 + countNodes(((While) node).getCondition()) + countNodes(((While) node).getBody());
+            case FOR:
+                return 1 + countNodes(((For) node).getVariable()) + countNodes(((For) node).getFrom()) +
+                        countNodes(((For) node).getTo()) + countNodes(((For) node).getBody());
+            default:
+                return 1;
+        }
+    }
+
+    static int countNodes(List<AST> nodes) {
+        int count = 0;
+        for (AST node : nodes) {
+            count += countNodes(node);
+        }
+        return count;
+    }
+}
+
+// Folds BinOp/UnaryOp subtrees built from Num leaves, applies the algebraic identities that are
+// exact for doubles, and replaces if/while statements whose condition is constant and for loops
+// over a constant empty range.
+//
+// x * 1, 1 * x, x / 1 and x - 0 are exact for every double. x + 0 is not (-0.0 + 0 is 0.0) and
+// x * 0 is not (NaN, infinities, negative x), so those are left alone unless x is itself constant.
+//
+// Integer literals fold exactly through Integers, the way SpecializingInterpreter evaluates them,
+// into INTEGER literals; a folded sum beyond 2^53 or 2^63 keeps every digit. Division that is not
+// exact, % 0 and anything involving a REAL fold as doubles. Comparisons fold to INTEGER 1 or 0.
+// An integer 0 that doubles would compute as -0.0 cannot be one literal for both kinds of engine,
+// so those expressions are left as written.
+class ConstantFolder {
+
+    public AST fold(AST node) {
+        switch (node.kind()) {
+            case COMPOUND: {
+                Compound compound = (Compound) node;
+                compound.children = foldBlock(compound.children);
+                return compound;
+            }
+            case ELSE: {
+                Else elseNode = (Else) node;
+                elseNode.body = foldBlock(elseNode.body);
+                return elseNode;
+            }
+            case ASSIGN: {
+                Assign assign = (Assign) node;
+                assign.right = fold(assign.right);
+                return assign;
+            }
+            case IF:
+            case WHILE:
+            case FOR: {
+                // A lone statement passed as the root; it may fold away to zero or several statements
+                Compound root = new Compound();
+                root.children = foldBlock(Collections.singletonList(node));
+                return root;
+            }
+            case UNARY_OP:
+                return foldUnary((UnaryOp) node);
+            case BIN_OP:
+                return foldBinary((BinOp) node);
+            default:
+                return node;
+        }
+    }
+
+    List<AST> foldBlock(List<AST> nodes) {
+        List<AST> result = new ArrayList<>(nodes.size());
+        for (AST node : nodes) {
+            switch (node.kind()) {
+                case IF: {
+                    If ifNode = (If) node;
+                    ifNode.condition = fold(ifNode.condition);
+                    if (isConstant(ifNode.condition)) {
+                        result.addAll(foldBlock(value(ifNode.condition) != 0.0 ? ifNode.body : ifNode.rest));
+                    } else {
+                        ifNode.body = foldBlock(ifNode.body);
+                        ifNode.rest = foldBlock(ifNode.rest);
+                        result.add(ifNode);
+                    }
+                    break;
+                }
+                case WHILE: {
+                    While whileNode = (While) node;
+                    whileNode.condition = fold(whileNode.condition);
+                    if (isConstant(whileNode.condition) && value(whileNode.condition) == 0.0) {
+                        break;
+                    }
+                    whileNode.body = foldBlock(whileNode.body);
+                    result.add(whileNode);
+                    break;
+                }
+                case FOR: {
+                    // An empty range leaves the variable alone, so the loop can go entirely
+                    For forNode = (For) node;
+                    forNode.from = fold(forNode.from);
+                    forNode.to = fold(forNode.to);
+                    if (isConstant(forNode.from) && isConstant(forNode.to) &&
+                            !(value(forNode.from) <= value(forNode.to))) {
+                        break;
+                    }
+                    forNode.body = foldBlock(forNode.body);
+                    result.add(forNode);
+                    break;
+                }
+                case NO_OP:
+                    break;
+                default:
+                    result.add(fold(node));
+                    break;
+            }
+        }
+        return result;
+    }
+
+    private AST foldUnary(UnaryOp node) {
+        node.expr = fold(node.expr);
+        TokenType type = node.op.getType();
+        if (type == TokenType.PLUS) {
+            return node.expr;
+        }
+        if (type == TokenType.MINUS) {
+            if (isInteger(node.expr)) {
+                // -0 is -0.0 to the double engines and 0 to SpecializingInterpreter
+                Object value = integerValue(node.expr);
+                return Integers.compare(value, 0L) == 0 ? node : integer(Integers.negate(value));
+            }
+            if (isConstant(node.expr)) {
+                return constant(-value(node.expr));
+            }
+            // -(-x) is exact
+            if (node.expr instanceof UnaryOp && ((UnaryOp) node.expr).op.getType() == TokenType.MINUS) {
+                return ((UnaryOp) node.expr).expr;
+            }
+        }
+        return node;
+    }
+
+    private AST foldBinary(BinOp node) {
+        node.left = fold(node.left);
+        node.right = fold(node.right);
+        TokenType type = node.token.getType();
+
+        if (isInteger(node.left) && isInteger(node.right)) {
+            AST folded = applyIntegers(type, integerValue(node.left), integerValue(node.right));
+            if (folded != null) {
+                // Likewise 0 * -1, -4 % 2 and 0 / -3, which give -0.0 as doubles
+                boolean negativeZero = Double.doubleToRawLongBits(
+                        apply(type, value(node.left), value(node.right))) == Long.MIN_VALUE;
+                return negativeZero ? node : folded;
+            }
+        }
+        if (isConstant(node.left) && isConstant(node.right)) {
+            double result = apply(type, value(node.left), value(node.right));
+            // Comparisons yield the integers 1 and 0
+            return ClosureCompiler.isComparison(type) ? integer((long) result) : constant(result);
+        }
+
+        switch (type) {
+            case MUL:
+                if (isConstant(node.right, 1.0)) {
+                    return node.left;
+                }
+                if (isConstant(node.left, 1.0)) {
+                    return node.right;
+                }
+                break;
+            case DIV:
+                if (isConstant(node.right, 1.0)) {
+                    return node.left;
+                }
+                break;
+            case MINUS:
+                if (isPositiveZero(node.right)) {
+                    return node.left;
+                }
+                break;
+            default:
+                break;
+        }
+        return node;
+    }
+
+    // Same semantics as Interpreter.visit_BinOp
+    static double apply(TokenType type, double left, double right) {
+        switch (type) {
+            case PLUS:
+                return left + right;
+            case MINUS:
+                return left - right;
+            case MUL:
+                return left * right;
+            case DIV:
+                return left / right;
+            case MOD:
+                return left % right;
+            case EQUAL:
+                return left == right ? 1.0 : 0.0;
+            case NOT:
+                return left != right ? 1.0 : 0.0;
+            case GRE:
+                return left >= right ? 1.0 : 0.0;
+            case LESE:
+                return left <= right ? 1.0 : 0.0;
+            case GRET:
+                return left > right ? 1.0 : 0.0;
+            case LEST:
+                return left < right ? 1.0 : 0.0;
+            default:
+                throw new IllegalArgumentException("Invalid operation type: " + type);
+        }
+    }
+
+    // Same semantics as SpecializingInterpreter.arith and compare on integers, or null where the
+    // result is not an integer and the operation folds as doubles instead
+    private static AST applyIntegers(TokenType type, Object left, Object right) {
+        switch (type) {
+            case PLUS:
+                return integer(Integers.add(left, right));
+            case MINUS:
+                return integer(Integers.subtract(left, right));
+            case MUL:
+                return integer(Integers.multiply(left, right));
+            case DIV: {
+                Object quotient = Integers.divideExact(left, right);
+                return quotient == null ? null : integer(quotient);
+            }
+            case MOD: {
+                Object remainder = Integers.remainder(left, right);
+                return remainder == null ? null : integer(remainder);
+            }
+            case EQUAL:
+            case NOT:
+            case GRE:
+            case LESE:
+            case GRET:
+            case LEST:
+                int order = Integers.compare(left, right);
+                return integer(SpecializingInterpreter.compare(type, order) ? 1L : 0L);
+            default:
+                throw new IllegalArgumentException("Invalid operation type: " + type);
+        }
+    }
+
+    static boolean isConstant(AST node) {
+        return node instanceof Num && ((Num) node).getValue() instanceof Number;
+    }
+
+    private static boolean isConstant(AST node, double expected) {
+        return isConstant(node) && value(node) == expected;
+    }
+
+    private static boolean isPositiveZero(AST node) {
+        return isConstant(node) && Double.doubleToRawLongBits(value(node)) == 0L;
+    }
+
+    static double value(AST node) {
+        return ((Number) ((Num) node).getValue()).doubleValue();
+    }
+
+    static Num constant(double value) {
+        return new Num(new Token(TokenType.REAL, value));
+    }
+
+    private static boolean isInteger(AST node) {
+        if (!(node instanceof Num)) {
+            return false;
+        }
+        Object value = ((Num) node).getValue();
+        return value instanceof Integer || value instanceof Long || value instanceof BigInteger;
+    }
+
+    // INTEGER literals hold an Integer, Long or BigInteger; Integers works on Long and BigInteger
+    private static Object integerValue(AST node) {
+        Object value = ((Num) node).getValue();
+        return value instanceof Integer ? (Object) ((Integer) value).longValue() : value;
+    }
+
+    // An INTEGER literal as the Lexer would have produced it
+    private static Num integer(Object value) {
+        Object literal = value instanceof Long ? Lexer.integerLiteral((Long) value) : value;
+        return new Num(new Token(TokenType.INTEGER, literal));
+    }
+}
+
+// Loop-invariant code motion for While and for loops.
+// Assignment analysis collects every variable written anywhere in a loop (condition and nested
+// bodies included). A BinOp/UnaryOp subtree in the loop that reads none of them is computed once
+// into a temporary before the loop, and the subtree is replaced by a read of that temporary.
+// Expressions have no side effects and never throw on numbers, so hoisting out of a loop that runs
+// zero times, or out of a branch that is not taken, is safe. Inner loops are handled first, so an
+// expression can move out of several nested loops in turn.
+class LoopInvariantMotion {
+    // Temporaries start with a character the lexer never puts in an identifier
+    private static final String TEMP_PREFIX = "$inv";
+
+    private final Set<String> usedNames = new HashSet<>();
+    private int nextTemp;
+    private int hoisted;
+
+    LoopInvariantMotion(AST tree) {
+        collectNames(tree, usedNames);
+    }
+
+    public int getHoisted() {
+        return hoisted;
+    }
+
+    public AST apply(AST node) {
+        switch (node.kind()) {
+            case COMPOUND: {
+                Compound compound = (Compound) node;
+                compound.children = block(compound.children);
+                return compound;
+            }
+            case WHILE:
+            case FOR:
+            case IF: {
+                Compound root = new Compound();
+                root.children = block(Collections.singletonList(node));
+                return root;
+            }
+            default:
+                return node;
+        }
+    }
+
+    private List<AST> block(List<AST> nodes) {
+        List<AST> result = new ArrayList<>(nodes.size());
+        for (AST node : nodes) {
+            switch (node.kind()) {
+                case WHILE: {
+                    While loop = (While) node;
+                    loop.body = block(loop.body);
+                    result.addAll(hoist(loop));
+                    result.add(loop);
+                    break;
+                }
+                case FOR: {
+                    For loop = (For) node;
+                    loop.body = block(loop.body);
+                    result.addAll(hoist(loop));
+                    result.add(loop);
+                    break;
+                }
+                case IF: {
+                    If ifNode = (If) node;
+                    ifNode.body = block(ifNode.body);
+                    ifNode.rest = block(ifNode.rest);
+                    result.add(ifNode);
+                    break;
+                }
+                case ELSE: {
+                    Else elseNode = (Else) node;
+                    elseNode.body = block(elseNode.body);
+                    result.add(elseNode);
+                    break;
+                }
+                case COMPOUND: {
+                    Compound compound = (Compound) node;
+                    compound.children = block(compound.children);
+                    result.add(compound);
+                    break;
+                }
+                default:
+                    result.add(node);
+                    break;
+            }
+        }
+        return result;
+    }
+
+    // Rewrites the loop in place and returns the assignments that belong in front of it
+    private List<AST> hoist(While loop) {
+        Set<String> assigned = new HashSet<>();
+        collectAssigned(loop.body, assigned);
+
+        Map<String, Var> temps = new HashMap<>();
+        List<AST> preheader = new ArrayList<>();
+        loop.condition = hoistExpr(loop.condition, assigned, temps, preheader);
+        hoistBlock(loop.body, assigned, temps, preheader);
+        return preheader;
+    }
+
+    // The bounds are evaluated once already; only the body has anything to hoist
+    private List<AST> hoist(For loop) {
+        Set<String> assigned = new HashSet<>();
+        assigned.add(loop.variable.getValue());
+        collectAssigned(loop.body, assigned);
+
+        Map<String, Var> temps = new HashMap<>();
+        List<AST> preheader = new ArrayList<>();
+        hoistBlock(loop.body, assigned, temps, preheader);
+        return preheader;
+    }
+
+    private void hoistBlock(List<AST> nodes, Set<String> assigned, Map<String, Var> temps, List<AST> preheader) {
+        for (AST node : nodes) {
+            switch (node.kind()) {
+                case ASSIGN:
+                    ((Assign) node).right = hoistExpr(((Assign) node).right, assigned, temps, preheader);
+                    break;
+                case IF: {
+                    If ifNode = (If) node;
+                    ifNode.condition = hoistExpr(ifNode.condition, assigned, temps, preheader);
+                    hoistBlock(ifNode.body, assigned, temps, preheader);
+                    hoistBlock(ifNode.rest, assigned, temps, preheader);
+                    break;
+                }
+                case WHILE: {
+                    While inner = (While) node;
+                    inner.condition = hoistExpr(inner.condition, assigned, temps, preheader);
+                    hoistBlock(inner.body, assigned, temps, preheader);
+                    break;
+                }
+                case FOR: {
+                    For inner = (For) node;
+                    inner.from = hoistExpr(inner.from, assigned, temps, preheader);
+                    inner.to = hoistExpr(inner.to, assigned, temps, preheader);
+                    hoistBlock(inner.body, assigned, temps, preheader);
+                    break;
+                }
+                case ELSE:
+                    hoistBlock(((Else) node).body, assigned, temps, preheader);
+                    break;
+                case COMPOUND:
+                    hoistBlock(((Compound) node).children, assigned, temps, preheader);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    // Replaces maximal invariant subtrees; identical subtrees share one temporary
+    private AST hoistExpr(AST node, Set<String> assigned, Map<String, Var> temps, List<AST> preheader) {
+        if (!(node instanceof BinOp) && !(node instanceof UnaryOp)) {
+            return node;
+        }
+        if (isInvariant(node, assigned)) {
+            String key = node.toString();
+            Var temp = temps.get(key);
+            if (temp == null) {
+                temp = newTemp();
+                temps.put(key, temp);
+                preheader.add(new Assign(temp, new Token(TokenType.ASSIGN, '='), node));
+                hoisted++;
+            }
+            return new Var(temp.token);
+        }
+        if (node instanceof BinOp) {
+            BinOp op = (BinOp) node;
+            op.left = hoistExpr(op.left, assigned, temps, preheader);
+            op.right = hoistExpr(op.right, assigned, temps, preheader);
+        } else {
+            UnaryOp op = (UnaryOp) node;
+            op.expr = hoistExpr(op.expr, assigned, temps, preheader);
+        }
+        return node;
+    }
+
+    private static boolean isInvariant(AST node, Set<String> assigned) {
+        switch (node.kind()) {
+            case NUM:
+                return ConstantFolder.isConstant(node);
+            case VAR:
+                return !assigned.contains(((Var) node).getValue());
+            case UNARY_OP:
+                return isInvariant(((UnaryOp) node).getExpr(), assigned);
+            case BIN_OP:
+                return isInvariant(((BinOp) node).getLeft(), assigned) &&
+                        isInvariant(((BinOp) node).getRight(), assigned);
+            default:
+                return false;
+        }
+    }
+
+    private Var newTemp() {
+        String name;
+        do {
+            name = TEMP_PREFIX + nextTemp++;
+        } while (!usedNames.add(name));
+        return new Var(new Token(TokenType.ID, name));
+    }
+
+    private static void collectAssigned(List<AST> nodes, Set<String> assigned) {
+        for (AST node : nodes) {
+            switch (node.kind()) {
+                case ASSIGN:
+                    assigned.add(((Var) ((Assign) node).getLeft()).getValue());
+                    break;
+                case IF:
+                    collectAssigned(((If) node).getBody(), assigned);
+                    collectAssigned(((If) node).getRest(), assigned);
+                    break;
+                case WHILE:
+                    collectAssigned(((While) node).getBody(), assigned);
+                    break;
+                case FOR:
+                    assigned.add(((For) node).getVariable().getValue());
+                    collectAssigned(((For) node).getBody(), assigned);
+                    break;
+                case ELSE:
+                    collectAssigned(((Else) node).getBody(), assigned);
+                    break;
+                case COMPOUND:
+                    collectAssigned(((Compound) node).getChildren(), assigned);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void collectNames(AST node, Set<String> names) {
+        switch (node.kind()) {
+            case VAR:
+                names.add(((Var) node).getValue());
+                break;
+            case BIN_OP:
+                collectNames(((BinOp) node).getLeft(), names);
+                collectNames(((BinOp) node).getRight(), names);
+                break;
+            case UNARY_OP:
+                collectNames(((UnaryOp) node).getExpr(), names);
+                break;
+            case ASSIGN:
+                collectNames(((Assign) node).getLeft(), names);
+                collectNames(((Assign) node).getRight(), names);
+                break;
+            case COMPOUND:
+                collectNames(((Compound) node).getChildren(), names);
+                break;
+            case IF:
+                collectNames(((If) node).getCondition(), names);
+                collectNames(((If) node).getBody(), names);
+                collectNames(((If) node).getRest(), names);
+                break;
+            case ELSE:
+                collectNames(((Else) node).getBody(), names);
+                break;
+            case WHILE:
+                collectNames(((While) node).getCondition(), names);
+                collectNames(((While) node).getBody(), names);
+                break;
+            case FOR:
+                collectNames(((For) node).getVariable(), names);
+                collectNames(((For) node).getFrom(), names);
+                collectNames(((For) node).getTo(), names);
+                collectNames(((For) node).getBody(), names);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void collectNames(List<AST> nodes, Set<String> names) {
+        for (AST node : nodes) {
+            collectNames(node, names);
+        }
+    }
+}
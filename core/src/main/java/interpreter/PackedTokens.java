@@ -0,0 +1,192 @@
+package interpreter;
+
+import java.math.BigInteger;
+import java.util.*;
+
+
+// A whole token stream packed into parallel primitive arrays instead of a list of Token objects.
+// Per token it keeps the TokenType ordinal, the source offset, length and line, and an operand:
+// the index of the token in symbols for IDs and strings, or of the value in integers / reals.
+// Integer literals too large for a long keep their token in symbols, at the complement index.
+// A Cursor feeds it to the Parser; keywords, operators and names come back as the Lexer's
+// shared tokens, so re-parsing a packed stream allocates nothing but the literals' Num tokens.
+class PackedTokens {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private int[] types = new int[256];
+    private int[] offsets = new int[256];
+    private int[] lengths = new int[256];
+    private int[] lines = new int[256];
+    private int[] operands = new int[256];
+    private int count;
+
+    private long[] integers = new long[16];
+    private int integerCount;
+    private double[] reals = new double[16];
+    private int realCount;
+
+    private Token[] symbols = new Token[16];
+    private int symbolCount;
+
+    private PackedTokens() {
+    }
+
+    // Runs the lexer to the end of its input; the EOF token is stored as the last entry
+    public static PackedTokens tokenize(Lexer lexer) {
+        PackedTokens tokens = new PackedTokens();
+        Map<Token, Integer> symbolIndex = new IdentityHashMap<>();
+        Token token;
+        do {
+            token = lexer.scanToken();
+            TokenType type = token.getType();
+            int operand = 0;
+            switch (type) {
+                case INTEGER:
+                    operand = lexer.getBigIntegerValue() != null
+                            ? ~tokens.addSymbol(new Token(TokenType.INTEGER, lexer.getBigIntegerValue()))
+                            : tokens.addInteger(lexer.getIntegerValue());
+                    break;
+                case REAL:
+                    operand = tokens.addReal(lexer.getRealValue());
+                    break;
+                case STR:
+                    // String literals are not interned; each keeps its own token
+                    operand = tokens.addSymbol(token);
+                    break;
+                case ID: {
+                    // ID tokens come from the lexer's SymbolTable, so each name is one instance
+                    Integer index = symbolIndex.get(token);
+                    if (index == null) {
+                        index = tokens.addSymbol(token);
+                        symbolIndex.put(token, index);
+                    }
+                    operand = index;
+                    break;
+                }
+                default:
+                    break;
+            }
+            tokens.add(type, lexer.getTokenOffset(), lexer.getTokenLength(), lexer.getLine(), operand);
+        } while (token.getType() != TokenType.EOF);
+        return tokens;
+    }
+
+    private void add(TokenType type, long offset, int length, int line, int operand) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            operands = Arrays.copyOf(operands, capacity);
+        }
+        if (offset > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Source too large to pack: offset " + offset);
+        }
+        types[count] = type.ordinal();
+        offsets[count] = (int) offset;
+        lengths[count] = length;
+        lines[count] = line;
+        operands[count] = operand;
+        count++;
+    }
+
+    private int addInteger(long value) {
+        if (integerCount == integers.length) {
+            integers = Arrays.copyOf(integers, integerCount * 2);
+        }
+        integers[integerCount] = value;
+        return integerCount++;
+    }
+
+    private int addReal(double value) {
+        if (realCount == reals.length) {
+            reals = Arrays.copyOf(reals, realCount * 2);
+        }
+        reals[realCount] = value;
+        return realCount++;
+    }
+
+    private int addSymbol(Token token) {
+        if (symbolCount == symbols.length) {
+            symbols = Arrays.copyOf(symbols, symbolCount * 2);
+        }
+        symbols[symbolCount] = token;
+        return symbolCount++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public TokenType getType(int index) {
+        return TYPES[types[index]];
+    }
+
+    public int getOffset(int index) {
+        return offsets[index];
+    }
+
+    public int getLength(int index) {
+        return lengths[index];
+    }
+
+    public int getLine(int index) {
+        return lines[index];
+    }
+
+    // Throws ArithmeticException for a literal that does not fit a long
+    public long getInteger(int index) {
+        int operand = operands[index];
+        return operand < 0 ? ((BigInteger) symbols[~operand].value).longValueExact() : integers[operand];
+    }
+
+    public double getReal(int index) {
+        return reals[operands[index]];
+    }
+
+    public String getName(int index) {
+        return (String) symbols[operands[index]].value;
+    }
+
+    // Builds the Token the Lexer would have returned at this position
+    public Token getToken(int index) {
+        TokenType type = TYPES[types[index]];
+        switch (type) {
+            case INTEGER: {
+                int operand = operands[index];
+                return operand < 0 ? symbols[~operand]
+                        : new Token(TokenType.INTEGER, Lexer.integerLiteral(integers[operand]));
+            }
+            case REAL:
+                return new Token(TokenType.REAL, reals[operands[index]]);
+            case ID:
+            case STR:
+                return symbols[operands[index]];
+            default:
+                return Lexer.sharedToken(type);
+        }
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    // Walks the packed stream front to back; past the end it keeps returning EOF like the Lexer
+    class Cursor implements TokenSource {
+        private int position;
+        private int line;
+
+        @Override
+        public Token getNextToken() {
+            int index = position < count ? position++ : count - 1;
+            line = lines[index];
+            return getToken(index);
+        }
+
+        @Override
+        public int getLine() {
+            return line;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package interpreter;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+
+// Runs the top-level statements of a program in parallel where they touch disjoint variables.
+// Each statement gets the set of slots it reads and the set it writes, and is placed in the
+// first stage after every earlier statement it conflicts with (read after write, write after
+// read or write after write). Statements in one stage are independent of each other, so any
+// interleaving gives the same memory as running the program in order.
+// Only loops are worth a task; within a stage every loop statement is its own branch and the
+// straight-line statements share one, and a stage with fewer than two loops runs inline.
+// Statements are closure-compiled, so like ClosureProgram this keeps no per-run state.
+class ParallelProgram implements Program {
+    private final Scope scope;
+    private final ClosureCompiler.StmtNode[][] stages;  // Branches of each stage
+    private final ForkJoinPool pool;
+
+    private ParallelProgram(Scope scope, ClosureCompiler.StmtNode[][] stages, ForkJoinPool pool) {
+        this.scope = scope;
+        this.stages = stages;
+        this.pool = pool;
+    }
+
+    public static ParallelProgram compile(AST tree) {
+        return compile(tree, ForkJoinPool.commonPool());
+    }
+
+    public static ParallelProgram compile(AST tree, ForkJoinPool pool) {
+        Scope scope = Resolver.resolve(tree);
+        List<AST> statements = tree.kind() == NodeKind.COMPOUND
+                ? ((Compound) tree).getChildren() : Collections.singletonList(tree);
+
+        // Highest stage that has written / read each slot so far
+        int[] lastWrite = new int[scope.size()];
+        int[] lastRead = new int[scope.size()];
+        Arrays.fill(lastWrite, -1);
+        Arrays.fill(lastRead, -1);
+        List<List<AST>> loops = new ArrayList<>();
+        List<List<AST>> straight = new ArrayList<>();
+        BitSet reads = new BitSet();
+        BitSet writes = new BitSet();
+        for (AST statement : statements) {
+            reads.clear();
+            writes.clear();
+            accesses(statement, reads, writes);
+            int stage = 0;
+            for (int slot = reads.nextSetBit(0); slot >= 0; slot = reads.nextSetBit(slot + 1)) {
+                stage = Math.max(stage, lastWrite[slot] + 1);
+            }
+            for (int slot = writes.nextSetBit(0); slot >= 0; slot = writes.nextSetBit(slot + 1)) {
+                stage = Math.max(stage, Math.max(lastWrite[slot], lastRead[slot]) + 1);
+            }
+            for (int slot = reads.nextSetBit(0); slot >= 0; slot = reads.nextSetBit(slot + 1)) {
+                lastRead[slot] = Math.max(lastRead[slot], stage);
+            }
+            for (int slot = writes.nextSetBit(0); slot >= 0; slot = writes.nextSetBit(slot + 1)) {
+                lastWrite[slot] = Math.max(lastWrite[slot], stage);
+            }
+            while (loops.size() <= stage) {
+                loops.add(new ArrayList<>());
+                straight.add(new ArrayList<>());
+            }
+            (ClosureCompiler.containsLoop(Collections.singletonList(statement)) ? loops : straight)
+                    .get(stage).add(statement);
+        }
+
+        ClosureCompiler.StmtNode[][] stages = new ClosureCompiler.StmtNode[loops.size()][];
+        for (int stage = 0; stage < stages.length; stage++) {
+            List<ClosureCompiler.StmtNode> branches = new ArrayList<>();
+            if (loops.get(stage).size() < 2) {
+                List<AST> all = new ArrayList<>(straight.get(stage));
+                all.addAll(loops.get(stage));
+                branches.add(branch(all));
+            } else {
+                for (AST loop : loops.get(stage)) {
+                    branches.add(branch(Collections.singletonList(loop)));
+                }
+                if (!straight.get(stage).isEmpty()) {
+                    branches.add(branch(straight.get(stage)));
+                }
+            }
+            stages[stage] = branches.toArray(new ClosureCompiler.StmtNode[0]);
+        }
+        return new ParallelProgram(scope, stages, pool);
+    }
+
+    private static ClosureCompiler.StmtNode branch(List<AST> statements) {
+        Compound block = new Compound();
+        block.children.addAll(statements);
+        return ClosureCompiler.compileResolved(block);
+    }
+
+    // Slots a statement may read and may write, whichever way its branches and loops go
+    private static void accesses(AST node, BitSet reads, BitSet writes) {
+        switch (node.kind()) {
+            case VAR:
+                reads.set(((Var) node).getSlot());
+                break;
+            case BIN_OP:
+                accesses(((BinOp) node).getLeft(), reads, writes);
+                accesses(((BinOp) node).getRight(), reads, writes);
+                break;
+            case UNARY_OP:
+                accesses(((UnaryOp) node).getExpr(), reads, writes);
+                break;
+            case ASSIGN:
+                writes.set(((Var) ((Assign) node).getLeft()).getSlot());
+                accesses(((Assign) node).getRight(), reads, writes);
+                break;
+            case COMPOUND:
+                accesses(((Compound) node).getChildren(), reads, writes);
+                break;
+            case IF:
+                accesses(((If) node).getCondition(), reads, writes);
+                accesses(((If) node).getBody(), reads, writes);
+                accesses(((If) node).getRest(), reads, writes);
+                break;
+            case ELSE:
+                accesses(((Else) node).getBody(), reads, writes);
+                break;
+            case WHILE:
+                accesses(((While) node).getCondition(), reads, writes);
+                accesses(((While) node).getBody(), reads, writes);
+                break;
+            case FOR:
+                writes.set(((For) node).getVariable().getSlot());
+                accesses(((For) node).getFrom(), reads, writes);
+                accesses(((For) node).getTo(), reads, writes);
+                accesses(((For) node).getBody(), reads, writes);
+                break;
+            default:
+                break;
+        }
+    }
+
+    static void accesses(List<AST> nodes, BitSet reads, BitSet writes) {
+        for (AST node : nodes) {
+            accesses(node, reads, writes);
+        }
+    }
+
+    @Override
+    public Scope getScope() {
+        return scope;
+    }
+
+    public int getStageCount() {
+        return stages.length;
+    }
+
+    // Stages that fork, i.e. have more than one branch
+    public int getParallelStageCount() {
+        int count = 0;
+        for (ClosureCompiler.StmtNode[] branches : stages) {
+            if (branches.length > 1) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void execute(double[] memory, Budget budget) {
+        for (ClosureCompiler.StmtNode[] branches : stages) {
+            if (branches.length == 1) {
+                branches[0].exec(memory, budget);
+            } else {
+                fork(branches, memory, budget);
+            }
+        }
+    }
+
+    // Branches write disjoint slots of the shared memory; joining the tasks publishes the writes.
+    // A branch hands back its unused iterations as soon as it ends. One that runs out waits for
+    // the others to end before it fails, so an iteration limit is exact, as on one thread.
+    private void fork(ClosureCompiler.StmtNode[] branches, double[] memory, Budget budget) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(branches.length);
+        for (ClosureCompiler.StmtNode branch : branches) {
+            Budget split = budget.split();
+            tasks.add(ForkJoinTask.adapt(() -> {
+                try {
+                    branch.exec(memory, split);
+                } catch (RuntimeException | Error e) {
+                    budget.cancel();
+                    throw e;
+                } finally {
+                    budget.join(split);
+                }
+            }));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+}
@@ -0,0 +1,231 @@
+package interpreter;
+
+import java.io.PrintStream;
+import java.util.*;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+
+// Execution counts and times for each node of one run, keyed by the node's source line.
+// It works by wrapping the Interpreter's dispatch table, so only an Interpreter built with a
+// Profiler pays for it; every other run uses the plain table and has nothing to check.
+// With Dispatch.PRIMITIVE expressions are evaluated unboxed without going through the table,
+// so their time is charged to the statement they belong to; Dispatch.TABLE profiles every node.
+// Self time excludes nested nodes, so summing it per line never counts anything twice.
+// Not thread-safe: each profiled run gets its own Profiler.
+class Profiler {
+    private final Map<AST, Site> sites = new IdentityHashMap<>();
+    private long childNanos;  // Time spent in nodes nested inside the one being timed
+
+    // What was recorded for one node
+    static class Site {
+        final AST node;
+        long count;
+        long totalNanos;
+        long selfNanos;
+        long iterations;  // Loops only
+
+        Site(AST node) {
+            this.node = node;
+        }
+
+        public int getLine() {
+            return node.getLine();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getSelfNanos() {
+            return selfNanos;
+        }
+
+        public long getIterations() {
+            return iterations;
+        }
+
+        public String describe() {
+            switch (node.kind()) {
+                case ASSIGN:
+                    return "ASSIGN " + ((Var) ((Assign) node).getLeft()).getValue();
+                case VAR:
+                    return "VAR " + ((Var) node).getValue();
+                case BIN_OP:
+                    return "BIN_OP " + ((BinOp) node).getOp().getType();
+                case FOR:
+                    return "FOR " + ((For) node).getVariable().getValue();
+                default:
+                    return node.kind().name();
+            }
+        }
+    }
+
+    // Summary of one node after a run, for JDK Flight Recorder
+    @Name("interpreter.HotSpot")
+    @Label("Script Hot Spot")
+    @Category("Interpreter")
+    static class HotSpotEvent extends Event {
+        @Label("Line")
+        int line;
+
+        @Label("Node")
+        String node;
+
+        @Label("Count")
+        long count;
+
+        @Label("Self Time")
+        @Timespan
+        long selfTime;
+
+        @Label("Total Time")
+        @Timespan
+        long totalTime;
+
+        @Label("Iterations")
+        long iterations;
+    }
+
+    NodeVisitor.Handler[] instrument(NodeVisitor.Handler[] table) {
+        if (table == null) {
+            throw new IllegalArgumentException("Reflective dispatch cannot be profiled");
+        }
+        // A loop cut short by its budget still reports the iterations it ran
+        NodeVisitor.Handler whileLoop = (visitor, node) -> {
+            Interpreter interpreter = (Interpreter) visitor;
+            try {
+                interpreter.loop((While) node);
+            } finally {
+                site(node).iterations += interpreter.loopIterations;
+            }
+            return null;
+        };
+        NodeVisitor.Handler forLoop = (visitor, node) -> {
+            Interpreter interpreter = (Interpreter) visitor;
+            try {
+                interpreter.loop((For) node);
+            } finally {
+                site(node).iterations += interpreter.loopIterations;
+            }
+            return null;
+        };
+        NodeVisitor.Handler[] instrumented = table.clone();
+        for (NodeKind kind : NodeKind.values()) {
+            NodeVisitor.Handler handler = kind == NodeKind.WHILE ? whileLoop
+                    : kind == NodeKind.FOR ? forLoop : table[kind.ordinal()];
+            if (handler != null) {
+                instrumented[kind.ordinal()] = (v, n) -> record(site(n), handler, v, n);
+            }
+        }
+        return instrumented;
+    }
+
+    private Site site(AST node) {
+        return sites.computeIfAbsent(node, Site::new);
+    }
+
+    private Object record(Site site, NodeVisitor.Handler handler, NodeVisitor visitor, AST node) {
+        long outerChildNanos = childNanos;
+        childNanos = 0;
+        long start = System.nanoTime();
+        try {
+            return handler.visit(visitor, node);
+        } finally {
+            // Also on BudgetExceededException, so a run that was cut short still has a profile
+            long elapsed = System.nanoTime() - start;
+            site.count++;
+            site.totalNanos += elapsed;
+            site.selfNanos += elapsed - childNanos;
+            childNanos = outerChildNanos + elapsed;
+        }
+    }
+
+    public void reset() {
+        sites.clear();
+        childNanos = 0;
+    }
+
+    // Every node that ran, most self time first
+    public List<Site> hotSpots() {
+        List<Site> result = new ArrayList<>(sites.values());
+        result.sort(Comparator.comparingLong(Site::getSelfNanos).reversed());
+        return result;
+    }
+
+    // While and for loops that ran, most total time first
+    public List<Site> hotLoops() {
+        List<Site> result = new ArrayList<>();
+        for (Site site : sites.values()) {
+            if (site.node.kind() == NodeKind.WHILE || site.node.kind() == NodeKind.FOR) {
+                result.add(site);
+            }
+        }
+        result.sort(Comparator.comparingLong(Site::getTotalNanos).reversed());
+        return result;
+    }
+
+    // Self time and node executions summed per source line, most self time first.
+    // Each entry is {line, count, selfNanos}; line 0 collects nodes synthesized after parsing.
+    public List<long[]> hotLines() {
+        Map<Integer, long[]> lines = new HashMap<>();
+        for (Site site : sites.values()) {
+            long[] line = lines.computeIfAbsent(site.getLine(), l -> new long[] {l, 0, 0});
+            line[1] += site.count;
+            line[2] += site.selfNanos;
+        }
+        List<long[]> result = new ArrayList<>(lines.values());
+        result.sort((a, b) -> Long.compare(b[2], a[2]));
+        return result;
+    }
+
+    // Prints the limit hottest lines and loops
+    public void report(PrintStream out, int limit) {
+        long total = 0;
+        for (Site site : sites.values()) {
+            total += site.selfNanos;
+        }
+        out.printf("%6s %12s %12s %7s%n", "line", "count", "self ms", "self %");
+        List<long[]> lines = hotLines();
+        for (int i = 0; i < Math.min(limit, lines.size()); i++) {
+            long[] line = lines.get(i);
+            out.printf("%6d %12d %12.3f %6.1f%%%n", line[0], line[1], line[2] / 1e6,
+                    total == 0 ? 0.0 : 100.0 * line[2] / total);
+        }
+        List<Site> loops = hotLoops();
+        if (loops.isEmpty()) {
+            return;
+        }
+        out.println();
+        out.printf("%6s %10s %14s %12s %14s%n", "loop", "entries", "iterations", "total ms", "ns/iteration");
+        for (int i = 0; i < Math.min(limit, loops.size()); i++) {
+            Site loop = loops.get(i);
+            out.printf("%6d %10d %14d %12.3f %14.1f%n", loop.getLine(), loop.count, loop.iterations,
+                    loop.totalNanos / 1e6, loop.iterations == 0 ? 0.0 : (double) loop.totalNanos / loop.iterations);
+        }
+    }
+
+    // Commits one HotSpotEvent per node; does nothing unless a recording has the event enabled
+    public void emitEvents() {
+        if (!new HotSpotEvent().isEnabled()) {
+            return;
+        }
+        for (Site site : sites.values()) {
+            HotSpotEvent event = new HotSpotEvent();
+            event.line = site.getLine();
+            event.node = site.describe();
+            event.count = site.count;
+            event.selfTime = site.selfNanos;
+            event.totalTime = site.totalNanos;
+            event.iterations = site.iterations;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package interpreter;
+
+import java.util.*;
+
+
+// A compiled script that keeps no per-run state: variables live in the memory passed to
+// execute(), laid out by getScope(). One Program can run on any number of threads at once,
+// each with its own ExecutionContext, without locking.
+interface Program {
+    Scope getScope();
+
+    // Throws BudgetExceededException if the run goes over budget, leaving memory unspecified
+    void execute(double[] memory, Budget budget);
+
+    default void execute(double[] memory) {
+        execute(memory, Budget.unlimited());
+    }
+
+    default double[] newMemory() {
+        return getScope().newFrame();
+    }
+
+    default ExecutionContext newContext() {
+        return new ExecutionContext(this);
+    }
+
+    // Optimized and closure-compiled, the fastest engine that needs no warm-up
+    static Program compile(String source) {
+        return compile(new Parser(new Lexer(source)).parse());
+    }
+
+    // The scope is laid out before optimizing, so a name only used in code the Optimizer removes
+    // still has a slot and ExecutionContext.set() accepts the same names either way
+    static Program compile(AST tree) {
+        Scope scope = Resolver.resolve(tree);
+        return ClosureCompiler.compile(new Optimizer().optimize(tree), scope);
+    }
+}
+
+// The variables of one run of a Program. Cheap to create, not meant to be shared between
+// threads; reuse one per thread, or create one per request.
+class ExecutionContext {
+    private final Program program;
+    private final Scope scope;
+    private final double[] memory;
+
+    public ExecutionContext(Program program) {
+        this.program = program;
+        this.scope = program.getScope();
+        this.memory = program.newMemory();
+    }
+
+    public Program getProgram() {
+        return program;
+    }
+
+    public ExecutionContext run() {
+        program.execute(memory);
+        return this;
+    }
+
+    public ExecutionContext run(Budget budget) {
+        program.execute(memory, budget);
+        return this;
+    }
+
+    // Sets every variable back to 0.0 so the context can be reused for the next run
+    public ExecutionContext reset() {
+        Arrays.fill(memory, 0.0);
+        return this;
+    }
+
+    public double get(String name) {
+        int slot = scope.slotOf(name);
+        return slot < 0 ? 0.0 : memory[slot];
+    }
+
+    // Inputs can only be given to variables the script mentions; others would never be read
+    public ExecutionContext set(String name, double value) {
+        int slot = scope.slotOf(name);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Unknown variable: " + name);
+        }
+        memory[slot] = value;
+        return this;
+    }
+
+    public double[] getMemory() {
+        return memory;
+    }
+}
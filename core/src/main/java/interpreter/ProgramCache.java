@@ -0,0 +1,141 @@
+package interpreter;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Function;
+
+
+// Compiled programs keyed by the SHA-256 of their source text, so running a script that has been
+// seen before skips lexing, parsing and compiling. Entries are weighed by source length and the
+// least recently used ones are evicted once the total weight exceeds the limit.
+// The compiler must produce programs that are safe to share, such as FlatTree or ClosureProgram,
+// which keep no per-run state and execute against caller-owned memory.
+// Misses count compiles: threads that miss on the same key together each count a miss and each
+// compile, and all of them return the program that was cached first.
+class ProgramCache<P> {
+    private final Function<AST, P> compiler;
+    private final long maxWeight;
+    private final LinkedHashMap<String, Entry<P>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private static class Entry<P> {
+        final P program;
+        final long weight;
+
+        Entry(P program, long weight) {
+            this.program = program;
+            this.weight = weight;
+        }
+    }
+
+    public ProgramCache(long maxWeight, Function<AST, P> compiler) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+        this.compiler = compiler;
+    }
+
+    // Caches FlatTrees of the optimized program, laid out like Program.compile(AST)
+    public static ProgramCache<FlatTree> flat(long maxWeight) {
+        return new ProgramCache<>(maxWeight, tree -> {
+            Scope scope = Resolver.resolve(tree);
+            return FlatTree.of(new Optimizer().optimize(tree), scope);
+        });
+    }
+
+    public static String key(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);  // Every JVM is required to provide SHA-256
+        }
+    }
+
+    public P get(String source) {
+        String key = key(source);
+        synchronized (this) {
+            Entry<P> entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry.program;
+            }
+            misses++;
+        }
+
+        // Compiled outside the lock; if another thread got there first its program is kept. A
+        // program heavier than the whole cache is returned to its caller but not retained.
+        P program = compiler.apply(new Parser(new Lexer(source)).parse());
+        synchronized (this) {
+            Entry<P> entry = entries.get(key);
+            if (entry != null) {
+                return entry.program;
+            }
+            if (source.length() > maxWeight) {
+                return program;
+            }
+            entry = new Entry<>(program, source.length());
+            entries.put(key, entry);
+            weight += entry.weight;
+            evict();
+        }
+        return program;
+    }
+
+    // Iterates in access order, so the least recently used entries go first and the newest last
+    private void evict() {
+        Iterator<Entry<P>> eldest = entries.values().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ProgramCache{" +
+                "size=" + entries.size() +
+                ", weight=" + weight +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+}
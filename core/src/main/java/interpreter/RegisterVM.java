@@ -0,0 +1,591 @@
+package interpreter;
+
+import java.io.*;
+import java.util.*;
+
+
+// Register-based bytecode for the AST.
+// A program is a flat int[] instruction stream plus a double[] constant pool, executed against a
+// register file of primitive doubles. The first registers are the variable slots laid out by
+// Resolver; temporaries follow.
+//
+// Instruction word: op | a << 8 | b << 16 | c << 24. LOADK uses bits 16-31 for the constant index.
+// Jumps are followed by a second word holding the absolute target.
+class RegisterProgram {
+    static final int MOVE = 0, LOADK = 1, ADD = 2, SUB = 3, MUL = 4, DIV = 5, MOD = 6, NEG = 7;
+    static final int EQ = 8, NE = 9, GE = 10, LE = 11, GT = 12, LT = 13;
+    // Conditional jumps are taken when the comparison is false
+    static final int JFEQ = 14, JFNE = 15, JFGE = 16, JFLE = 17, JFGT = 18, JFLT = 19;
+    // TICK starts every loop iteration and charges it to the run's Budget
+    static final int JZ = 20, JMP = 21, HALT = 22, TICK = 23;
+    // Closes a for loop: r[a] += 1, then jumps back to the body while --r[b] > 0.
+    // FORPREP opens one from r[a] to r[b]: it replaces r[b] with the trip count, capped at 2^53
+    // so it stays exact as a double, and jumps past the loop when that is 0.
+    static final int FORLOOP = 24, FORPREP = 25;
+
+    // Registers are 8-bit operands and LOADK takes a 16-bit constant index
+    static final int MAX_REGISTERS = 256, MAX_CONSTANTS = 1 << 16;
+
+    // Bumped whenever an instruction changes meaning, so older images are rejected on read
+    private static final int MAGIC = 0x52564D32; // "RVM2"
+
+    final int[] code;
+    final double[] constants;
+    final int registerCount;
+    final String[] variables;
+
+    RegisterProgram(int[] code, double[] constants, int registerCount, String[] variables) {
+        this.code = code;
+        this.constants = constants;
+        this.registerCount = registerCount;
+        this.variables = variables;
+    }
+
+    public double[] newMemory() {
+        return new double[variables.length];
+    }
+
+    public void execute(double[] memory) {
+        execute(memory, Budget.unlimited());
+    }
+
+    public void execute(double[] memory, Budget budget) {
+        double[] registers = new double[registerCount];
+        System.arraycopy(memory, 0, registers, 0, variables.length);
+        try {
+            RegisterVM.run(code, constants, registers, budget);
+        } finally {
+            System.arraycopy(registers, 0, memory, 0, variables.length);
+        }
+    }
+
+    public double getVariable(double[] memory, String name) {
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i].equals(name)) {
+                return memory[i];
+            }
+        }
+        return 0.0;
+    }
+
+    public double[] run() {
+        double[] memory = newMemory();
+        execute(memory);
+        return memory;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(registerCount);
+        out.writeShort(variables.length);
+        for (String variable : variables) {
+            out.writeUTF(variable);
+        }
+        out.writeInt(constants.length);
+        for (double constant : constants) {
+            out.writeDouble(constant);
+        }
+        out.writeInt(code.length);
+        for (int word : code) {
+            out.writeInt(word);
+        }
+    }
+
+    public static RegisterProgram read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a register program");
+        }
+        int registerCount = in.readUnsignedShort();
+        String[] variables = new String[in.readUnsignedShort()];
+        if (registerCount < variables.length || registerCount > MAX_REGISTERS) {
+            throw new IOException("Bad register count " + registerCount);
+        }
+        for (int i = 0; i < variables.length; i++) {
+            variables[i] = in.readUTF();
+        }
+        int constantCount = in.readInt();
+        if (constantCount < 0 || constantCount > MAX_CONSTANTS) {
+            throw new IOException("Bad constant count " + constantCount);
+        }
+        double[] constants = new double[constantCount];
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = in.readDouble();
+        }
+        int length = in.readInt();
+        if (length <= 0) {
+            throw new IOException("Bad code length " + length);
+        }
+        // The stream's size is unknown, so the code grows as it is read rather than trusting
+        // the length; a truncated image ends in EOFException before a huge one is allocated
+        int[] code = new int[Math.min(length, 1024)];
+        for (int i = 0; i < length; i++) {
+            if (i == code.length) {
+                code = Arrays.copyOf(code, (int) Math.min(2L * code.length, length));
+            }
+            code[i] = in.readInt();
+        }
+        RegisterProgram program = new RegisterProgram(code, constants, registerCount, variables);
+        program.validate();
+        return program;
+    }
+
+    // Every operand must name a register or constant that exists and every jump an instruction
+    // start, and the code must end in HALT or JMP, so a loaded program can neither index out of
+    // bounds nor run off its end. Every backward jump must land on a TICK, so any cycle charges
+    // the Budget and a loaded program cannot loop without limit.
+    private void validate() throws IOException {
+        boolean[] starts = new boolean[code.length];
+        int last = 0;
+        for (int pc = 0; pc < code.length; pc += isJump(code[pc] & 0xFF) ? 2 : 1) {
+            int insn = code[pc];
+            int op = insn & 0xFF;
+            int a = (insn >>> 8) & 0xFF;
+            int b = (insn >>> 16) & 0xFF;
+            int c = insn >>> 24;
+            boolean valid;
+            switch (op) {
+                case MOVE:
+                case NEG:
+                    valid = a < registerCount && b < registerCount;
+                    break;
+                case LOADK:
+                    valid = a < registerCount && insn >>> 16 < constants.length;
+                    break;
+                case ADD: case SUB: case MUL: case DIV: case MOD:
+                case EQ: case NE: case GE: case LE: case GT: case LT:
+                    valid = a < registerCount && b < registerCount && c < registerCount;
+                    break;
+                case JFEQ: case JFNE: case JFGE: case JFLE: case JFGT: case JFLT:
+                    valid = b < registerCount && c < registerCount;
+                    break;
+                case JZ:
+                    valid = a < registerCount;
+                    break;
+                case FORLOOP:
+                case FORPREP:
+                    valid = a < registerCount && b < registerCount;
+                    break;
+                case JMP:
+                case TICK:
+                case HALT:
+                    valid = true;
+                    break;
+                default:
+                    throw new IOException("Bad instruction " + insn + " at " + pc);
+            }
+            if (!valid || (isJump(op) && pc + 1 == code.length)) {
+                throw new IOException("Bad operands for instruction " + insn + " at " + pc);
+            }
+            starts[pc] = true;
+            last = pc;
+        }
+        for (int pc = 0; pc < code.length; pc++) {
+            if (!starts[pc] || !isJump(code[pc] & 0xFF)) {
+                continue;
+            }
+            int target = code[pc + 1];
+            if (target < 0 || target >= code.length || !starts[target]) {
+                throw new IOException("Bad jump target " + target + " at " + pc);
+            }
+            if (target <= pc && code[target] != TICK) {
+                throw new IOException("Backward jump at " + pc + " does not land on a TICK");
+            }
+        }
+        int end = code[last] & 0xFF;
+        if (end != HALT && end != JMP) {
+            throw new IOException("Code runs past its end at " + last);
+        }
+    }
+
+    // Jumps are followed by a second word holding the target
+    private static boolean isJump(int op) {
+        return (op >= JFEQ && op <= JMP) || op == FORLOOP || op == FORPREP;
+    }
+}
+
+class RegisterVM {
+
+    static void run(int[] code, double[] k, double[] r, Budget budget) {
+        int pc = 0;
+        while (true) {
+            int insn = code[pc++];
+            int a = (insn >>> 8) & 0xFF;
+            int b = (insn >>> 16) & 0xFF;
+            int c = insn >>> 24;
+            switch (insn & 0xFF) {
+                case RegisterProgram.MOVE:
+                    r[a] = r[b];
+                    break;
+                case RegisterProgram.LOADK:
+                    r[a] = k[insn >>> 16];
+                    break;
+                case RegisterProgram.ADD:
+                    r[a] = r[b] + r[c];
+                    break;
+                case RegisterProgram.SUB:
+                    r[a] = r[b] - r[c];
+                    break;
+                case RegisterProgram.MUL:
+                    r[a] = r[b] * r[c];
+                    break;
+                case RegisterProgram.DIV:
+                    r[a] = r[b] / r[c];
+                    break;
+                case RegisterProgram.MOD:
+                    r[a] = r[b] % r[c];
+                    break;
+                case RegisterProgram.NEG:
+                    r[a] = -r[b];
+                    break;
+                case RegisterProgram.EQ:
+                    r[a] = r[b] == r[c] ? 1.0 : 0.0;
+                    break;
+                case RegisterProgram.NE:
+                    r[a] = r[b] != r[c] ? 1.0 : 0.0;
+                    break;
+                case RegisterProgram.GE:
+                    r[a] = r[b] >= r[c] ? 1.0 : 0.0;
+                    break;
+                case RegisterProgram.LE:
+                    r[a] = r[b] <= r[c] ? 1.0 : 0.0;
+                    break;
+                case RegisterProgram.GT:
+                    r[a] = r[b] > r[c] ? 1.0 : 0.0;
+                    break;
+                case RegisterProgram.LT:
+                    r[a] = r[b] < r[c] ? 1.0 : 0.0;
+                    break;
+                case RegisterProgram.JFEQ:
+                    pc = r[b] == r[c] ? pc + 1 : code[pc];
+                    break;
+                case RegisterProgram.JFNE:
+                    pc = r[b] != r[c] ? pc + 1 : code[pc];
+                    break;
+                case RegisterProgram.JFGE:
+                    pc = r[b] >= r[c] ? pc + 1 : code[pc];
+                    break;
+                case RegisterProgram.JFLE:
+                    pc = r[b] <= r[c] ? pc + 1 : code[pc];
+                    break;
+                case RegisterProgram.JFGT:
+                    pc = r[b] > r[c] ? pc + 1 : code[pc];
+                    break;
+                case RegisterProgram.JFLT:
+                    pc = r[b] < r[c] ? pc + 1 : code[pc];
+                    break;
+                case RegisterProgram.JZ:
+                    pc = r[a] != 0.0 ? pc + 1 : code[pc];
+                    break;
+                case RegisterProgram.JMP:
+                    pc = code[pc];
+                    break;
+                case RegisterProgram.FORPREP:
+                    r[b] = Math.min(For.tripCount(r[a], r[b]), 1L << 53);
+                    pc = r[b] > 0.0 ? pc + 1 : code[pc];
+                    break;
+                case RegisterProgram.FORLOOP:
+                    r[a] += 1.0;
+                    pc = --r[b] > 0.0 ? code[pc] : pc + 1;
+                    break;
+                case RegisterProgram.TICK:
+                    budget.backEdge();
+                    break;
+                case RegisterProgram.HALT:
+                    return;
+                default:
+                    throw new IllegalStateException("Invalid instruction " + insn + " at " + (pc - 1));
+            }
+        }
+    }
+}
+
+// Compiles the AST hierarchy to a RegisterProgram
+class RegisterCompiler {
+    private int[] code = new int[64];
+    private int length;
+    private final List<Double> constants = new ArrayList<>();
+    private final Map<Long, Integer> constantIndex = new HashMap<>();
+    private final int variableCount;
+    private int nextTemp;
+    private int maxRegister;
+
+    private RegisterCompiler(int variableCount) {
+        this.variableCount = variableCount;
+        this.nextTemp = variableCount;
+        this.maxRegister = variableCount;
+    }
+
+    public static RegisterProgram compile(AST tree) {
+        Scope scope = Resolver.resolve(tree);
+        if (scope.size() > RegisterProgram.MAX_REGISTERS) {
+            throw new RuntimeException("Too many variables for the register file");
+        }
+        RegisterCompiler compiler = new RegisterCompiler(scope.size());
+        compiler.statement(tree);
+        compiler.emit(RegisterProgram.HALT, 0, 0, 0);
+
+        double[] pool = new double[compiler.constants.size()];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = compiler.constants.get(i);
+        }
+        return new RegisterProgram(Arrays.copyOf(compiler.code, compiler.length), pool, compiler.maxRegister,
+                scope.getNames().toArray(new String[0]));
+    }
+
+    private void error(String message) {
+        throw new RuntimeException(message);
+    }
+
+    private void word(int value) {
+        if (length == code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+        }
+        code[length++] = value;
+    }
+
+    private void emit(int op, int a, int b, int c) {
+        word(op | a << 8 | b << 16 | c << 24);
+    }
+
+    // Emits a jump with a placeholder target and returns the position to patch
+    private int emitJump(int op, int a, int b, int c) {
+        emit(op, a, b, c);
+        word(-1);
+        return length - 1;
+    }
+
+    private void patch(int site) {
+        code[site] = length;
+    }
+
+    private int constant(double value) {
+        Integer index = constantIndex.get(Double.doubleToRawLongBits(value));
+        if (index == null) {
+            if (constants.size() == RegisterProgram.MAX_CONSTANTS) {
+                error("Too many constants");
+            }
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(Double.doubleToRawLongBits(value), index);
+        }
+        return index;
+    }
+
+    private int variable(Var node) {
+        if (node.getSlot() < 0) {
+            error("Unresolved variable " + node.getValue());
+        }
+        return node.getSlot();
+    }
+
+    private int allocTemp() {
+        if (nextTemp == RegisterProgram.MAX_REGISTERS) {
+            error("Expression too deep");
+        }
+        int register = nextTemp++;
+        maxRegister = Math.max(maxRegister, nextTemp);
+        return register;
+    }
+
+    private void statement(AST node) {
+        switch (node.kind()) {
+            case COMPOUND:
+                block(((Compound) node).getChildren());
+                break;
+            case ELSE:
+                block(((Else) node).getBody());
+                break;
+            case NO_OP:
+                break;
+            case ASSIGN: {
+                Assign assign = (Assign) node;
+                exprInto(assign.getRight(), variable((Var) assign.getLeft()));
+                break;
+            }
+            case IF: {
+                If ifNode = (If) node;
+                int otherwise = jumpIfFalse(ifNode.getCondition());
+                block(ifNode.getBody());
+                if (ifNode.getRest().isEmpty()) {
+                    patch(otherwise);
+                } else {
+                    int end = emitJump(RegisterProgram.JMP, 0, 0, 0);
+                    patch(otherwise);
+                    block(ifNode.getRest());
+                    patch(end);
+                }
+                break;
+            }
+            case WHILE: {
+                // The condition sits after the body, so the back edge lands on the TICK that
+                // starts every iteration, as read() requires; the loop is entered at the condition
+                While whileNode = (While) node;
+                int test = emitJump(RegisterProgram.JMP, 0, 0, 0);
+                int body = length;
+                emit(RegisterProgram.TICK, 0, 0, 0);
+                block(whileNode.getBody());
+                patch(test);
+                int exit = jumpIfFalse(whileNode.getCondition());
+                emit(RegisterProgram.JMP, 0, 0, 0);
+                word(body);
+                patch(exit);
+                break;
+            }
+            case FOR:
+                forStatement((For) node);
+                break;
+            default: {
+                int mark = nextTemp;
+                expr(node);
+                nextTemp = mark;
+                break;
+            }
+        }
+    }
+
+    // The counter and the trip count get temporaries of their own for the whole loop; FORPREP
+    // turns the bound into the trip count, and FORLOOP counts it down, one instruction per
+    // iteration. Counting trips rather than comparing the counter keeps ranges beyond 2^53 finite.
+    private void forStatement(For node) {
+        int mark = nextTemp;
+        int counter = allocTemp();
+        int trips = allocTemp();
+        exprInto(node.getFrom(), counter);
+        exprInto(node.getTo(), trips);
+        int exit = emitJump(RegisterProgram.FORPREP, counter, trips, 0);
+        int body = length;
+        emit(RegisterProgram.TICK, 0, 0, 0);
+        emit(RegisterProgram.MOVE, variable(node.getVariable()), counter, 0);
+        block(node.getBody());
+        emit(RegisterProgram.FORLOOP, counter, trips, 0);
+        word(body);
+        patch(exit);
+        nextTemp = mark;
+    }
+
+    private void block(List<AST> nodes) {
+        for (AST node : nodes) {
+            statement(node);
+        }
+    }
+
+    private int jumpIfFalse(AST condition) {
+        int mark = nextTemp;
+        int site;
+        if (condition instanceof BinOp && ClosureCompiler.isComparison(((BinOp) condition).getOp().getType())) {
+            BinOp op = (BinOp) condition;
+            int left = expr(op.getLeft());
+            int right = expr(op.getRight());
+            site = emitJump(conditionalJump(op.getOp().getType()), 0, left, right);
+        } else {
+            site = emitJump(RegisterProgram.JZ, expr(condition), 0, 0);
+        }
+        nextTemp = mark;
+        return site;
+    }
+
+    // Returns the register holding the value; variables are read in place
+    private int expr(AST node) {
+        if (node.kind() == NodeKind.VAR) {
+            return variable((Var) node);
+        }
+        int target = allocTemp();
+        exprInto(node, target);
+        return target;
+    }
+
+    private void exprInto(AST node, int target) {
+        int mark = nextTemp;
+        switch (node.kind()) {
+            case NUM:
+                emit(RegisterProgram.LOADK, target, 0, 0);
+                code[length - 1] |= constant(((Number) ((Num) node).getValue()).doubleValue()) << 16;
+                break;
+            case VAR: {
+                int source = variable((Var) node);
+                if (source != target) {
+                    emit(RegisterProgram.MOVE, target, source, 0);
+                }
+                break;
+            }
+            case UNARY_OP: {
+                UnaryOp op = (UnaryOp) node;
+                switch (op.getOp().getType()) {
+                    case PLUS:
+                        exprInto(op.getExpr(), target);
+                        break;
+                    case MINUS:
+                        emit(RegisterProgram.NEG, target, expr(op.getExpr()), 0);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid unary operation type: " + op.getOp().getType());
+                }
+                break;
+            }
+            case BIN_OP: {
+                // Nothing reads a temporary target before this instruction writes it, so the left
+                // operand is built in it and a left-leaning chain needs no temporary per level
+                BinOp op = (BinOp) node;
+                int left;
+                if (target >= variableCount && op.getLeft().kind() != NodeKind.VAR) {
+                    exprInto(op.getLeft(), target);
+                    left = target;
+                } else {
+                    left = expr(op.getLeft());
+                }
+                int right = expr(op.getRight());
+                emit(arithmetic(op.getOp().getType()), target, left, right);
+                break;
+            }
+            default:
+                error("Cannot compile " + node);
+        }
+        nextTemp = mark;
+    }
+
+    private static int arithmetic(TokenType type) {
+        switch (type) {
+            case PLUS:
+                return RegisterProgram.ADD;
+            case MINUS:
+                return RegisterProgram.SUB;
+            case MUL:
+                return RegisterProgram.MUL;
+            case DIV:
+                return RegisterProgram.DIV;
+            case MOD:
+                return RegisterProgram.MOD;
+            case EQUAL:
+                return RegisterProgram.EQ;
+            case NOT:
+                return RegisterProgram.NE;
+            case GRE:
+                return RegisterProgram.GE;
+            case LESE:
+                return RegisterProgram.LE;
+            case GRET:
+                return RegisterProgram.GT;
+            case LEST:
+                return RegisterProgram.LT;
+            default:
+                throw new IllegalArgumentException("Invalid operation type: " + type);
+        }
+    }
+
+    private static int conditionalJump(TokenType type) {
+        switch (type) {
+            case EQUAL:
+                return RegisterProgram.JFEQ;
+            case NOT:
+                return RegisterProgram.JFNE;
+            case GRE:
+                return RegisterProgram.JFGE;
+            case LESE:
+                return RegisterProgram.JFLE;
+            case GRET:
+                return RegisterProgram.JFGT;
+            default:
+                return RegisterProgram.JFLT;
+        }
+    }
+}
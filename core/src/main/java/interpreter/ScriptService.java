@@ -0,0 +1,267 @@
+package interpreter;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+
+// Runs scripts concurrently and hands back futures of their finished ExecutionContexts.
+// At most maxConcurrency scripts execute at once and at most maxQueued more wait for a turn;
+// beyond that submit() blocks, so a producer can never outrun the service, or rejects the
+// script when given a time limit. Scripts run on a fixed pool of maxConcurrency platform
+// threads: the build targets Java 17, which has no virtual threads.
+// Sources go through a ProgramCache, so resubmitting a script skips the front end.
+class ScriptService implements AutoCloseable {
+    public static final long NO_TIMEOUT = 0;
+
+    private final ExecutorService pool;
+    private final ScheduledThreadPoolExecutor timer;
+    private final Semaphore admission;
+    private final int capacity;          // Permits of admission: running plus queued scripts
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final Semaphore running;
+    private final long timeoutMillis;
+    private final long maxIterations;
+    private final ProgramCache<Program> cache;
+    private volatile boolean shutdown;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    public ScriptService(int maxConcurrency, int maxQueued, long timeoutMillis) {
+        this(maxConcurrency, maxQueued, timeoutMillis, Budget.UNLIMITED);
+    }
+
+    public ScriptService(int maxConcurrency, int maxQueued, long timeoutMillis, long maxIterations) {
+        this(maxConcurrency, maxQueued, timeoutMillis, maxIterations,
+                new ProgramCache<>(16 << 20, Program::compile));
+    }
+
+    // Every run gets a Budget of maxIterations loop iterations and a deadline of timeoutMillis
+    public ScriptService(int maxConcurrency, int maxQueued, long timeoutMillis, long maxIterations,
+                         ProgramCache<Program> cache) {
+        if (maxConcurrency <= 0 || maxQueued < 0 || timeoutMillis < 0 || maxIterations < 0) {
+            throw new IllegalArgumentException("Invalid limits: concurrency " + maxConcurrency +
+                    ", queue " + maxQueued + ", timeout " + timeoutMillis + ", iterations " + maxIterations);
+        }
+        this.capacity = maxConcurrency + maxQueued;
+        this.admission = new Semaphore(capacity);
+        this.running = new Semaphore(maxConcurrency);
+        this.timeoutMillis = timeoutMillis;
+        this.maxIterations = maxIterations;
+        this.cache = cache;
+
+        this.pool = Executors.newFixedThreadPool(maxConcurrency, daemon("script-"));
+        if (timeoutMillis == NO_TIMEOUT) {
+            this.timer = null;
+        } else {
+            this.timer = new ScheduledThreadPoolExecutor(1, daemon("script-timer"));
+            timer.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicLong count = new AtomicLong();
+        return task -> {
+            Thread thread = new Thread(task, name + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public CompletableFuture<ExecutionContext> submit(String source) throws InterruptedException {
+        return submit(source, context -> { });
+    }
+
+    public CompletableFuture<ExecutionContext> submit(String source, Consumer<ExecutionContext> inputs)
+            throws InterruptedException {
+        admit();
+        CompletableFuture<ExecutionContext> result = new CompletableFuture<>();
+        start(result, () -> cache.get(source), inputs);
+        return result;
+    }
+
+    public CompletableFuture<ExecutionContext> submit(Program program, Consumer<ExecutionContext> inputs)
+            throws InterruptedException {
+        admit();
+        CompletableFuture<ExecutionContext> result = new CompletableFuture<>();
+        start(result, () -> program, inputs);
+        return result;
+    }
+
+    // Waits at most the given time for a place, then rejects the script; a wait of 0 never
+    // blocks, for producers that would rather shed load than stall
+    public CompletableFuture<ExecutionContext> submit(String source,
+            Consumer<ExecutionContext> inputs, long wait, TimeUnit unit) throws InterruptedException {
+        checkOpen();
+        if (!admission.tryAcquire(wait, unit)) {
+            throw new RejectedExecutionException("ScriptService is full");
+        }
+        admitted();
+        CompletableFuture<ExecutionContext> result = new CompletableFuture<>();
+        start(result, () -> cache.get(source), inputs);
+        return result;
+    }
+
+    // Blocks while the service is saturated: this is the back-pressure on producers
+    private void admit() throws InterruptedException {
+        checkOpen();
+        admission.acquire();
+        admitted();
+    }
+
+    private void checkOpen() {
+        if (shutdown) {
+            throw new RejectedExecutionException("ScriptService is shut down");
+        }
+    }
+
+    // Counted before shutdown is checked again, so shutdown() and release() cannot both miss
+    // the last admitted script and leave the timer running
+    private void admitted() {
+        admitted.incrementAndGet();
+        if (shutdown) {
+            release();
+            throw new RejectedExecutionException("ScriptService is shut down");
+        }
+    }
+
+    private void start(CompletableFuture<ExecutionContext> result, Callable<Program> program,
+                       Consumer<ExecutionContext> inputs) {
+        Runnable task = () -> {
+            // Set while the script runs, so a late timeout cannot interrupt whatever the thread does next
+            AtomicReference<Thread> worker = new AtomicReference<>();
+            boolean started = false;
+            try {
+                running.acquire();
+                started = true;
+                if (result.isDone()) {
+                    return;  // Cancelled while waiting for a turn; the timeout only starts after it
+                }
+                worker.set(Thread.currentThread());
+                ScheduledFuture<?> timeout = scheduleTimeout(result, worker);
+                try {
+                    ExecutionContext context = program.call().newContext();
+                    inputs.accept(context);
+                    long deadline = timeoutMillis == NO_TIMEOUT ? Budget.UNLIMITED : timeoutMillis;
+                    context.run(new Budget(maxIterations, deadline));
+                    if (result.complete(context)) {
+                        completed.incrementAndGet();
+                    }
+                } finally {
+                    if (timeout != null) {
+                        timeout.cancel(false);
+                    }
+                }
+            } catch (Throwable e) {
+                if (result.completeExceptionally(e)) {
+                    failed.incrementAndGet();
+                }
+            } finally {
+                synchronized (worker) {
+                    worker.set(null);
+                }
+                Thread.interrupted();  // Don't leak a timeout interrupt into the next pooled task
+                if (started) {
+                    running.release();
+                }
+                release();
+            }
+        };
+        try {
+            pool.execute(task);
+        } catch (RejectedExecutionException e) {
+            release();
+            result.completeExceptionally(e);
+        }
+    }
+
+    // The last admitted script to finish after shutdown() stops the timer, so every script that was
+    // admitted can still schedule its timeout. The timer is stopped before the permit goes back,
+    // so awaitTermination() never returns ahead of it.
+    private void release() {
+        if (admitted.decrementAndGet() == 0 && shutdown && timer != null) {
+            timer.shutdown();
+        }
+        admission.release();
+    }
+
+    // Fails the future on time even while the script is still in the front end; the run itself
+    // stops at its next Budget check, on the deadline or on the interrupt
+    private ScheduledFuture<?> scheduleTimeout(CompletableFuture<ExecutionContext> result,
+                                               AtomicReference<Thread> worker) {
+        if (timer == null) {
+            return null;
+        }
+        return timer.schedule(() -> {
+            if (result.completeExceptionally(new TimeoutException("Script exceeded " + timeoutMillis + " ms"))) {
+                timedOut.incrementAndGet();
+                synchronized (worker) {
+                    Thread thread = worker.get();
+                    if (thread != null) {
+                        thread.interrupt();
+                    }
+                }
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public ProgramCache<Program> getCache() {
+        return cache;
+    }
+
+    // Each counter is updated just after the script's future completes; the counts are exact
+    // once awaitTermination() returns
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    // Stops accepting submissions; scripts already admitted still run to completion, with their
+    // timeouts, and the timer thread ends after the last of them
+    public void shutdown() {
+        shutdown = true;
+        pool.shutdown();
+        if (admitted.get() == 0 && timer != null) {
+            timer.shutdown();
+        }
+    }
+
+    // Waits until no admitted script is queued or running, and after shutdown() also until the
+    // pool and timer threads have ended
+    public void awaitTermination() throws InterruptedException {
+        admission.acquire(capacity);
+        admission.release(capacity);
+        if (shutdown) {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            if (timer != null) {
+                timer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    public boolean isTerminated() {
+        return pool.isTerminated() && (timer == null || timer.isTerminated());
+    }
+
+    // Shuts down and waits for the admitted scripts; an interrupt ends the wait but stays set
+    @Override
+    public void close() {
+        shutdown();
+        try {
+            awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
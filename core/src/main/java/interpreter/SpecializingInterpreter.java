@@ -0,0 +1,1361 @@
+package interpreter;
+
+import java.util.*;
+
+
+// Self-specializing tree interpreter. The AST is copied into executable nodes that start out
+// uninitialized; the first time one runs it looks at the values it actually sees and replaces
+// itself in its parent with a node specialized for them: long, double or string. A specialized
+// node guards its assumption on every execution, and when the guard fails it rewrites itself one
+// step more general (long, then double, then generic boxed values) and finishes the execution
+// with the value it already computed, so no work is repeated and nothing is ever re-specialized.
+//
+// Integers never overflow: long nodes check every operation like Math.addExact, and a result that
+// does not fit moves that node to the generic path, where Integers continues with BigInteger.
+// Division stays integral only when it divides evenly, so wherever the double engines are exact
+// the results agree, except that -0.0 comes out as 0. Strings support + and comparisons; mixing
+// them with numbers is a type error.
+//
+// Nodes rewrite themselves while running, so an instance must not be shared between threads.
+class SpecializingInterpreter {
+    private final Scope scope;
+    private final Frame frame;
+    private final Block root;
+
+    public SpecializingInterpreter(AST tree) {
+        this.scope = Resolver.resolve(tree);
+        this.frame = new Frame(scope.size());
+        this.root = new Block(statements(Collections.singletonList(tree)));
+    }
+
+    public void setBudget(Budget budget) {
+        frame.budget = budget;
+    }
+
+    public void interpret() {
+        root.execute(frame);
+    }
+
+    // Long, BigInteger, Double or String; variables never assigned read as 0
+    public Object getValue(String name) {
+        int slot = scope.slotOf(name);
+        return slot < 0 ? (Object) 0L : frame.getValue(slot);
+    }
+
+    public double getVariable(String name) {
+        Object value = getValue(name);
+        if (!(value instanceof Number)) {
+            throw new IllegalStateException(name + " is not a number: " + value);
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    // The current shape of the node tree, showing which specializations are in place
+    @Override
+    public String toString() {
+        return root.toString();
+    }
+
+    // Building the executable tree
+
+    private static Stmt[] statements(List<AST> nodes) {
+        List<Stmt> result = new ArrayList<>();
+        for (AST node : nodes) {
+            switch (node.kind()) {
+                case COMPOUND:
+                    result.addAll(Arrays.asList(statements(((Compound) node).getChildren())));
+                    break;
+                case ELSE:
+                    result.addAll(Arrays.asList(statements(((Else) node).getBody())));
+                    break;
+                case NO_OP:
+                    break;
+                default:
+                    result.add(statement(node));
+                    break;
+            }
+        }
+        return result.toArray(new Stmt[0]);
+    }
+
+    private static Stmt statement(AST node) {
+        switch (node.kind()) {
+            case ASSIGN:
+                return new UninitializedAssign(((Var) ((Assign) node).getLeft()).getSlot(),
+                        expression(((Assign) node).getRight()));
+            case IF: {
+                If statement = (If) node;
+                return new IfNode(expression(statement.getCondition()),
+                        new Block(statements(statement.getBody())), new Block(statements(statement.getRest())));
+            }
+            case WHILE: {
+                While statement = (While) node;
+                return new WhileNode(expression(statement.getCondition()), new Block(statements(statement.getBody())));
+            }
+            case FOR: {
+                For statement = (For) node;
+                return new ForNode(statement.getVariable().getSlot(), expression(statement.getFrom()),
+                        expression(statement.getTo()), new Block(statements(statement.getBody())));
+            }
+            default:
+                return new ExpressionStatement(expression(node));
+        }
+    }
+
+    private static Expr expression(AST node) {
+        switch (node.kind()) {
+            case NUM: {
+                Object value = ((Num) node).getValue();
+                if (value instanceof Integer || value instanceof Long) {
+                    return new LongLiteral(((Number) value).longValue());
+                }
+                if (value instanceof Double) {
+                    return new DoubleLiteral((Double) value);
+                }
+                return new ObjectLiteral(value);
+            }
+            case VAR:
+                return new UninitializedVar(((Var) node).getSlot());
+            case UNARY_OP: {
+                UnaryOp op = (UnaryOp) node;
+                Expr operand = expression(op.getExpr());
+                switch (op.getOp().getType()) {
+                    case PLUS:
+                        return operand;
+                    case MINUS:
+                        return new UninitializedNegate(operand);
+                    default:
+                        throw new IllegalArgumentException("Invalid unary operation type: " + op.getOp().getType());
+                }
+            }
+            case BIN_OP: {
+                BinOp op = (BinOp) node;
+                TokenType type = op.getOp().getType();
+                Expr left = expression(op.getLeft());
+                Expr right = expression(op.getRight());
+                if (ClosureCompiler.isComparison(type)) {
+                    return new UninitializedCompare(type, left, right);
+                }
+                return new UninitializedArith(type, left, right);
+            }
+            default:
+                throw new RuntimeException("Cannot compile " + node);
+        }
+    }
+
+    // Variables of one run. Longs and doubles are stored unboxed in primitives, doubles as their
+    // raw bits; a slot's tag says which of primitives or objects holds its current value.
+    static final class Frame {
+        static final byte LONG = 0;  // Also the tag of unset slots, which read as 0
+        static final byte DOUBLE = 1;
+        static final byte OBJECT = 2;
+
+        final byte[] tags;
+        final long[] primitives;
+        final Object[] objects;
+        Budget budget = Budget.unlimited();
+
+        Frame(int size) {
+            tags = new byte[size];
+            primitives = new long[size];
+            objects = new Object[size];
+        }
+
+        void setLong(int slot, long value) {
+            tags[slot] = LONG;
+            primitives[slot] = value;
+        }
+
+        void setDouble(int slot, double value) {
+            tags[slot] = DOUBLE;
+            primitives[slot] = Double.doubleToRawLongBits(value);
+        }
+
+        void setValue(int slot, Object value) {
+            if (value instanceof Long) {
+                setLong(slot, (Long) value);
+            } else if (value instanceof Double) {
+                setDouble(slot, (Double) value);
+            } else {
+                tags[slot] = OBJECT;
+                objects[slot] = value;
+            }
+        }
+
+        Object getValue(int slot) {
+            switch (tags[slot]) {
+                case LONG:
+                    return primitives[slot];
+                case DOUBLE:
+                    return Double.longBitsToDouble(primitives[slot]);
+                default:
+                    return objects[slot];
+            }
+        }
+    }
+
+    // Thrown by executeLong / executeDouble when the value is not of the requested type; the
+    // caller gets the value anyway and generalizes itself. Carries no stack trace.
+    static final class UnexpectedResultException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final Object result;
+
+        UnexpectedResultException(Object result) {
+            super(null, null, false, false);
+            this.result = result;
+        }
+    }
+
+    abstract static class Node {
+        Node parent;
+
+        <T extends Node> T adopt(T child) {
+            child.parent = this;
+            return child;
+        }
+
+        // Swaps this node for replacement in the parent, so later executions take the new node
+        <T extends Node> T replace(T replacement) {
+            parent.replaceChild(this, replacement);
+            replacement.parent = parent;
+            return replacement;
+        }
+
+        void replaceChild(Node child, Node replacement) {
+            throw new IllegalStateException(getClass().getSimpleName() + " has no child " + child);
+        }
+
+        String name() {
+            return getClass().getSimpleName();
+        }
+    }
+
+    // Generic arithmetic on boxed values, shared by the generic nodes and by every node's
+    // slow path after a guard failed
+
+    static Object arith(TokenType op, Object a, Object b) {
+        if (Integers.isInteger(a) && Integers.isInteger(b)) {
+            switch (op) {
+                case PLUS:
+                    return Integers.add(a, b);
+                case MINUS:
+                    return Integers.subtract(a, b);
+                case MUL:
+                    return Integers.multiply(a, b);
+                case DIV: {
+                    Object quotient = Integers.divideExact(a, b);
+                    if (quotient != null) {
+                        return quotient;
+                    }
+                    break;
+                }
+                case MOD: {
+                    Object remainder = Integers.remainder(a, b);
+                    if (remainder != null) {
+                        return remainder;
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return arith(op, ((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (op == TokenType.PLUS && a instanceof String && b instanceof String) {
+            return (String) a + b;
+        }
+        throw typeError(op, a, b);
+    }
+
+    static double arith(TokenType op, double a, double b) {
+        switch (op) {
+            case PLUS:
+                return a + b;
+            case MINUS:
+                return a - b;
+            case MUL:
+                return a * b;
+            case DIV:
+                return a / b;
+            case MOD:
+                return a % b;
+            default:
+                throw new IllegalArgumentException("Invalid operation type: " + op);
+        }
+    }
+
+    static boolean compare(TokenType op, Object a, Object b) {
+        if (Integers.isInteger(a) && Integers.isInteger(b)) {
+            return compare(op, Integers.compare(a, b));
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return compare(op, ((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (a instanceof String && b instanceof String) {
+            return compare(op, ((String) a).compareTo((String) b));
+        }
+        if (op == TokenType.EQUAL || op == TokenType.NOT) {
+            // A string never equals a number
+            return op == TokenType.NOT;
+        }
+        throw typeError(op, a, b);
+    }
+
+    static boolean compare(TokenType op, int order) {
+        switch (op) {
+            case EQUAL:
+                return order == 0;
+            case NOT:
+                return order != 0;
+            case GRE:
+                return order >= 0;
+            case LESE:
+                return order <= 0;
+            case GRET:
+                return order > 0;
+            default:
+                return order < 0;
+        }
+    }
+
+    // Not via Double.compare, which orders NaN and -0.0 differently from the double engines
+    static boolean compare(TokenType op, double a, double b) {
+        switch (op) {
+            case EQUAL:
+                return a == b;
+            case NOT:
+                return a != b;
+            case GRE:
+                return a >= b;
+            case LESE:
+                return a <= b;
+            case GRET:
+                return a > b;
+            default:
+                return a < b;
+        }
+    }
+
+    static Object negate(Object value) {
+        if (Integers.isInteger(value)) {
+            return Integers.negate(value);
+        }
+        if (value instanceof Double) {
+            return -(Double) value;
+        }
+        throw new RuntimeException("Type error: cannot negate " + typeName(value));
+    }
+
+    static boolean isTrue(Object value) {
+        if (value instanceof Long) {
+            return (Long) value != 0;
+        }
+        if (value instanceof Double) {
+            return (Double) value != 0.0;
+        }
+        return true;
+    }
+
+    // Operands a double node can take: doubles, and longs it widens
+    static boolean isPrimitive(Object value) {
+        return value instanceof Long || value instanceof Double;
+    }
+
+    private static RuntimeException typeError(TokenType op, Object a, Object b) {
+        return new RuntimeException("Type error: cannot apply " + op + " to " + typeName(a) + " and " + typeName(b));
+    }
+
+    private static String typeName(Object value) {
+        return value instanceof String ? "string" : value instanceof Double ? "float" : "integer";
+    }
+
+    // Expressions
+
+    abstract static class Expr extends Node {
+        // Long, Double or String
+        abstract Object execute(Frame frame);
+
+        long executeLong(Frame frame) throws UnexpectedResultException {
+            Object value = execute(frame);
+            if (value instanceof Long) {
+                return (Long) value;
+            }
+            throw new UnexpectedResultException(value);
+        }
+
+        // Longs are not widened, so an integer never silently turns into a double
+        double executeDouble(Frame frame) throws UnexpectedResultException {
+            Object value = execute(frame);
+            if (value instanceof Double) {
+                return (Double) value;
+            }
+            throw new UnexpectedResultException(value);
+        }
+
+        boolean executeCondition(Frame frame) {
+            return isTrue(execute(frame));
+        }
+    }
+
+    static final class LongLiteral extends Expr {
+        private final long value;
+        private final Long boxed;
+
+        LongLiteral(long value) {
+            this.value = value;
+            this.boxed = value;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return boxed;
+        }
+
+        @Override
+        long executeLong(Frame frame) {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return Long.toString(value);
+        }
+    }
+
+    static final class DoubleLiteral extends Expr {
+        private final double value;
+        private final Double boxed;
+
+        DoubleLiteral(double value) {
+            this.value = value;
+            this.boxed = value;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return boxed;
+        }
+
+        @Override
+        double executeDouble(Frame frame) {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return Double.toString(value);
+        }
+    }
+
+    // Strings and integer literals too big for a long
+    static final class ObjectLiteral extends Expr {
+        private final Object value;
+
+        ObjectLiteral(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return value instanceof String ? '"' + (String) value + '"' : value.toString();
+        }
+    }
+
+    // Variable reads specialize on the tag the slot has when they first run
+
+    abstract static class VarNode extends Expr {
+        final int slot;
+
+        VarNode(int slot) {
+            this.slot = slot;
+        }
+
+        // Guard failed: the slot now holds another type
+        Expr respecialize(Frame frame) {
+            return replace(frame.tags[slot] == Frame.DOUBLE && !(this instanceof DoubleVar)
+                    ? new DoubleVar(slot) : new GenericVar(slot));
+        }
+
+        @Override
+        public String toString() {
+            return name() + "[" + slot + "]";
+        }
+    }
+
+    static final class UninitializedVar extends VarNode {
+        UninitializedVar(int slot) {
+            super(slot);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return specialize(frame).execute(frame);
+        }
+
+        @Override
+        long executeLong(Frame frame) throws UnexpectedResultException {
+            return specialize(frame).executeLong(frame);
+        }
+
+        @Override
+        double executeDouble(Frame frame) throws UnexpectedResultException {
+            return specialize(frame).executeDouble(frame);
+        }
+
+        private Expr specialize(Frame frame) {
+            switch (frame.tags[slot]) {
+                case Frame.LONG:
+                    return replace(new LongVar(slot));
+                case Frame.DOUBLE:
+                    return replace(new DoubleVar(slot));
+                default:
+                    return replace(new GenericVar(slot));
+            }
+        }
+    }
+
+    static final class LongVar extends VarNode {
+        LongVar(int slot) {
+            super(slot);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            if (frame.tags[slot] == Frame.LONG) {
+                return frame.primitives[slot];
+            }
+            return respecialize(frame).execute(frame);
+        }
+
+        @Override
+        long executeLong(Frame frame) throws UnexpectedResultException {
+            if (frame.tags[slot] == Frame.LONG) {
+                return frame.primitives[slot];
+            }
+            return respecialize(frame).executeLong(frame);
+        }
+    }
+
+    static final class DoubleVar extends VarNode {
+        DoubleVar(int slot) {
+            super(slot);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            if (frame.tags[slot] == Frame.DOUBLE) {
+                return Double.longBitsToDouble(frame.primitives[slot]);
+            }
+            return respecialize(frame).execute(frame);
+        }
+
+        @Override
+        double executeDouble(Frame frame) throws UnexpectedResultException {
+            if (frame.tags[slot] == Frame.DOUBLE) {
+                return Double.longBitsToDouble(frame.primitives[slot]);
+            }
+            return respecialize(frame).executeDouble(frame);
+        }
+    }
+
+    static final class GenericVar extends VarNode {
+        GenericVar(int slot) {
+            super(slot);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return frame.getValue(slot);
+        }
+    }
+
+    // Binary nodes: Uninitialized, then Long, Double or String, then Generic
+
+    abstract static class BinaryNode extends Expr {
+        final TokenType op;
+        Expr left;
+        Expr right;
+
+        BinaryNode(TokenType op, Expr left, Expr right) {
+            this.op = op;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (left == child) {
+                left = (Expr) replacement;
+            } else if (right == child) {
+                right = (Expr) replacement;
+            } else {
+                super.replaceChild(child, replacement);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name() + "(" + op + ", " + left + ", " + right + ")";
+        }
+    }
+
+    // The right operand of a double node: widened from long if that is what the node was
+    // specialized for, otherwise it must be a double
+    static double operand(Expr child, boolean isLong, Frame frame) throws UnexpectedResultException {
+        return isLong ? child.executeLong(frame) : child.executeDouble(frame);
+    }
+
+    abstract static class ArithNode extends BinaryNode {
+        ArithNode(TokenType op, Expr left, Expr right) {
+            super(op, left, right);
+        }
+
+        // Picks the node for operands of these types
+        ArithNode specialize(Object a, Object b) {
+            if (a instanceof Long && b instanceof Long) {
+                return new LongArith(op, left, right);
+            }
+            if (isPrimitive(a) && isPrimitive(b)) {
+                return new DoubleArith(op, left, right, a instanceof Long, b instanceof Long);
+            }
+            if (op == TokenType.PLUS && a instanceof String && b instanceof String) {
+                return new StringConcat(op, left, right);
+            }
+            return new GenericArith(op, left, right);
+        }
+
+        // Guard failed: computes this execution's result generically and generalizes the node.
+        // Long arithmetic that overflowed or did not divide evenly goes generic; long arithmetic
+        // that met a double operand becomes a double node.
+        Object respecialize(Object a, Object b) {
+            Object result = arith(op, a, b);
+            replace(this instanceof LongArith && !(a instanceof Long && b instanceof Long)
+                    ? specialize(a, b) : new GenericArith(op, left, right));
+            return result;
+        }
+    }
+
+    static final class UninitializedArith extends ArithNode {
+        UninitializedArith(TokenType op, Expr left, Expr right) {
+            super(op, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            Object result = arith(op, a, b);
+            replace(specialize(a, b));
+            return result;
+        }
+    }
+
+    // Allocation-free while no operation overflows
+    static final class LongArith extends ArithNode {
+        LongArith(TokenType op, Expr left, Expr right) {
+            super(op, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            try {
+                return executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        long executeLong(Frame frame) throws UnexpectedResultException {
+            long a;
+            long b;
+            try {
+                a = left.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                throw new UnexpectedResultException(respecialize(e.result, right.execute(frame)));
+            }
+            try {
+                b = right.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                throw new UnexpectedResultException(respecialize(a, e.result));
+            }
+            try {
+                switch (op) {
+                    case PLUS:
+                        return Math.addExact(a, b);
+                    case MINUS:
+                        return Math.subtractExact(a, b);
+                    case MUL:
+                        return Math.multiplyExact(a, b);
+                    case DIV:
+                        // Long.MIN_VALUE / -1 is the one exact quotient that overflows
+                        if (b != 0 && a % b == 0 && (a != Long.MIN_VALUE || b != -1)) {
+                            return a / b;
+                        }
+                        break;
+                    default:
+                        if (b != 0) {
+                            return a % b;
+                        }
+                        break;
+                }
+            } catch (ArithmeticException e) {
+                // Overflow; the generic path continues in BigInteger
+            }
+            throw new UnexpectedResultException(respecialize(a, b));
+        }
+    }
+
+    static final class DoubleArith extends ArithNode {
+        private final boolean leftLong;
+        private final boolean rightLong;
+
+        DoubleArith(TokenType op, Expr left, Expr right, boolean leftLong, boolean rightLong) {
+            super(op, left, right);
+            this.leftLong = leftLong;
+            this.rightLong = rightLong;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            try {
+                return executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        long executeLong(Frame frame) throws UnexpectedResultException {
+            throw new UnexpectedResultException(execute(frame));
+        }
+
+        @Override
+        double executeDouble(Frame frame) throws UnexpectedResultException {
+            long leftValue = 0;  // Kept as a long, since widening rounds values beyond 2^53
+            double a;
+            double b;
+            try {
+                if (leftLong) {
+                    leftValue = left.executeLong(frame);
+                    a = leftValue;
+                } else {
+                    a = left.executeDouble(frame);
+                }
+            } catch (UnexpectedResultException e) {
+                throw new UnexpectedResultException(respecialize(e.result, right.execute(frame)));
+            }
+            try {
+                b = operand(right, rightLong, frame);
+            } catch (UnexpectedResultException e) {
+                Object first = leftLong ? (Object) leftValue : (Object) a;
+                throw new UnexpectedResultException(respecialize(first, e.result));
+            }
+            return arith(op, a, b);
+        }
+
+        @Override
+        String name() {
+            return "DoubleArith" + (leftLong ? "<long," : "<double,") + (rightLong ? "long>" : "double>");
+        }
+    }
+
+    static final class StringConcat extends ArithNode {
+        StringConcat(TokenType op, Expr left, Expr right) {
+            super(op, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            if (a instanceof String && b instanceof String) {
+                return (String) a + b;
+            }
+            return respecialize(a, b);
+        }
+    }
+
+    // Boxed values of any type, with integers through Integers
+    static final class GenericArith extends ArithNode {
+        GenericArith(TokenType op, Expr left, Expr right) {
+            super(op, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return arith(op, left.execute(frame), right.execute(frame));
+        }
+    }
+
+    // Comparisons produce 1 / 0 as longs, and conditions test them without producing a value
+
+    abstract static class CompareNode extends BinaryNode {
+        CompareNode(TokenType op, Expr left, Expr right) {
+            super(op, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return executeCondition(frame) ? 1L : 0L;
+        }
+
+        @Override
+        long executeLong(Frame frame) {
+            return executeCondition(frame) ? 1 : 0;
+        }
+
+        CompareNode specialize(Object a, Object b) {
+            if (a instanceof Long && b instanceof Long) {
+                return new LongCompare(op, left, right);
+            }
+            if (isPrimitive(a) && isPrimitive(b)) {
+                return new DoubleCompare(op, left, right, a instanceof Long, b instanceof Long);
+            }
+            return new GenericCompare(op, left, right);
+        }
+
+        // Long compares that met a double operand become double compares, anything else goes generic
+        boolean respecialize(Object a, Object b) {
+            boolean result = compare(op, a, b);
+            replace(this instanceof LongCompare && !(a instanceof Long && b instanceof Long)
+                    ? specialize(a, b) : new GenericCompare(op, left, right));
+            return result;
+        }
+    }
+
+    static final class UninitializedCompare extends CompareNode {
+        UninitializedCompare(TokenType op, Expr left, Expr right) {
+            super(op, left, right);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            replace(specialize(a, b));
+            return compare(op, a, b);
+        }
+    }
+
+    static final class LongCompare extends CompareNode {
+        LongCompare(TokenType op, Expr left, Expr right) {
+            super(op, left, right);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) {
+            long a;
+            long b;
+            try {
+                a = left.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                return respecialize(e.result, right.execute(frame));
+            }
+            try {
+                b = right.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                return respecialize(a, e.result);
+            }
+            switch (op) {
+                case EQUAL:
+                    return a == b;
+                case NOT:
+                    return a != b;
+                case GRE:
+                    return a >= b;
+                case LESE:
+                    return a <= b;
+                case GRET:
+                    return a > b;
+                default:
+                    return a < b;
+            }
+        }
+    }
+
+    static final class DoubleCompare extends CompareNode {
+        private final boolean leftLong;
+        private final boolean rightLong;
+
+        DoubleCompare(TokenType op, Expr left, Expr right, boolean leftLong, boolean rightLong) {
+            super(op, left, right);
+            this.leftLong = leftLong;
+            this.rightLong = rightLong;
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) {
+            long leftValue = 0;  // Kept as a long, since widening rounds values beyond 2^53
+            double a;
+            double b;
+            try {
+                if (leftLong) {
+                    leftValue = left.executeLong(frame);
+                    a = leftValue;
+                } else {
+                    a = left.executeDouble(frame);
+                }
+            } catch (UnexpectedResultException e) {
+                return respecialize(e.result, right.execute(frame));
+            }
+            try {
+                b = operand(right, rightLong, frame);
+            } catch (UnexpectedResultException e) {
+                return respecialize(leftLong ? (Object) leftValue : (Object) a, e.result);
+            }
+            return compare(op, a, b);
+        }
+
+        @Override
+        String name() {
+            return "DoubleCompare" + (leftLong ? "<long," : "<double,") + (rightLong ? "long>" : "double>");
+        }
+    }
+
+    static final class GenericCompare extends CompareNode {
+        GenericCompare(TokenType op, Expr left, Expr right) {
+            super(op, left, right);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) {
+            return compare(op, left.execute(frame), right.execute(frame));
+        }
+    }
+
+    // Unary minus
+
+    abstract static class NegateNode extends Expr {
+        Expr operand;
+
+        NegateNode(Expr operand) {
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (operand != child) {
+                super.replaceChild(child, replacement);
+            }
+            operand = (Expr) replacement;
+        }
+
+        Object respecialize(Object value) {
+            Object result = negate(value);
+            replace(value instanceof Double && this instanceof LongNegate
+                    ? new DoubleNegate(operand) : new GenericNegate(operand));
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return name() + "(" + operand + ")";
+        }
+    }
+
+    static final class UninitializedNegate extends NegateNode {
+        UninitializedNegate(Expr operand) {
+            super(operand);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object value = operand.execute(frame);
+            if (value instanceof Long) {
+                replace(new LongNegate(operand));
+            } else if (value instanceof Double) {
+                replace(new DoubleNegate(operand));
+            } else {
+                replace(new GenericNegate(operand));
+            }
+            return negate(value);
+        }
+    }
+
+    static final class LongNegate extends NegateNode {
+        LongNegate(Expr operand) {
+            super(operand);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            try {
+                return executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        long executeLong(Frame frame) throws UnexpectedResultException {
+            long value;
+            try {
+                value = operand.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                throw new UnexpectedResultException(respecialize(e.result));
+            }
+            if (value == Long.MIN_VALUE) {
+                throw new UnexpectedResultException(respecialize(value));
+            }
+            return -value;
+        }
+    }
+
+    static final class DoubleNegate extends NegateNode {
+        DoubleNegate(Expr operand) {
+            super(operand);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            try {
+                return executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        long executeLong(Frame frame) throws UnexpectedResultException {
+            throw new UnexpectedResultException(execute(frame));
+        }
+
+        @Override
+        double executeDouble(Frame frame) throws UnexpectedResultException {
+            try {
+                return -operand.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                throw new UnexpectedResultException(respecialize(e.result));
+            }
+        }
+    }
+
+    static final class GenericNegate extends NegateNode {
+        GenericNegate(Expr operand) {
+            super(operand);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return negate(operand.execute(frame));
+        }
+    }
+
+    // Statements
+
+    abstract static class Stmt extends Node {
+        abstract void execute(Frame frame);
+    }
+
+    static final class Block extends Stmt {
+        private final Stmt[] statements;
+
+        Block(Stmt[] statements) {
+            this.statements = statements;
+            for (Stmt statement : statements) {
+                adopt(statement);
+            }
+        }
+
+        @Override
+        void execute(Frame frame) {
+            for (Stmt statement : statements) {
+                statement.execute(frame);
+            }
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            for (int i = 0; i < statements.length; i++) {
+                if (statements[i] == child) {
+                    statements[i] = (Stmt) replacement;
+                    return;
+                }
+            }
+            super.replaceChild(child, replacement);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(statements);
+        }
+    }
+
+    // Assignments store unboxed as long for as long as the value stays one, then as double
+    abstract static class AssignNode extends Stmt {
+        final int slot;
+        Expr value;
+
+        AssignNode(int slot, Expr value) {
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (value != child) {
+                super.replaceChild(child, replacement);
+            }
+            value = (Expr) replacement;
+        }
+
+        void respecialize(Frame frame, Object result) {
+            replace(result instanceof Double && this instanceof LongAssign
+                    ? new DoubleAssign(slot, value) : new GenericAssign(slot, value));
+            frame.setValue(slot, result);
+        }
+
+        @Override
+        public String toString() {
+            return name() + "[" + slot + "](" + value + ")";
+        }
+    }
+
+    static final class UninitializedAssign extends AssignNode {
+        UninitializedAssign(int slot, Expr value) {
+            super(slot, value);
+        }
+
+        @Override
+        void execute(Frame frame) {
+            Object result = value.execute(frame);
+            if (result instanceof Long) {
+                replace(new LongAssign(slot, value));
+            } else if (result instanceof Double) {
+                replace(new DoubleAssign(slot, value));
+            } else {
+                replace(new GenericAssign(slot, value));
+            }
+            frame.setValue(slot, result);
+        }
+    }
+
+    static final class LongAssign extends AssignNode {
+        LongAssign(int slot, Expr value) {
+            super(slot, value);
+        }
+
+        @Override
+        void execute(Frame frame) {
+            try {
+                frame.setLong(slot, value.executeLong(frame));
+            } catch (UnexpectedResultException e) {
+                respecialize(frame, e.result);
+            }
+        }
+    }
+
+    static final class DoubleAssign extends AssignNode {
+        DoubleAssign(int slot, Expr value) {
+            super(slot, value);
+        }
+
+        @Override
+        void execute(Frame frame) {
+            try {
+                frame.setDouble(slot, value.executeDouble(frame));
+            } catch (UnexpectedResultException e) {
+                respecialize(frame, e.result);
+            }
+        }
+    }
+
+    static final class GenericAssign extends AssignNode {
+        GenericAssign(int slot, Expr value) {
+            super(slot, value);
+        }
+
+        @Override
+        void execute(Frame frame) {
+            frame.setValue(slot, value.execute(frame));
+        }
+    }
+
+    static final class ExpressionStatement extends Stmt {
+        Expr expression;
+
+        ExpressionStatement(Expr expression) {
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        void execute(Frame frame) {
+            expression.execute(frame);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (expression != child) {
+                super.replaceChild(child, replacement);
+            }
+            expression = (Expr) replacement;
+        }
+
+        @Override
+        public String toString() {
+            return expression.toString();
+        }
+    }
+
+    static final class IfNode extends Stmt {
+        Expr condition;
+        final Block body;
+        final Block rest;
+
+        IfNode(Expr condition, Block body, Block rest) {
+            this.condition = adopt(condition);
+            this.body = adopt(body);
+            this.rest = adopt(rest);
+        }
+
+        @Override
+        void execute(Frame frame) {
+            if (condition.executeCondition(frame)) {
+                body.execute(frame);
+            } else {
+                rest.execute(frame);
+            }
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (condition != child) {
+                super.replaceChild(child, replacement);
+            }
+            condition = (Expr) replacement;
+        }
+
+        @Override
+        public String toString() {
+            return "If(" + condition + ", " + body + ", " + rest + ")";
+        }
+    }
+
+    static final class WhileNode extends Stmt {
+        Expr condition;
+        final Block body;
+
+        WhileNode(Expr condition, Block body) {
+            this.condition = adopt(condition);
+            this.body = adopt(body);
+        }
+
+        @Override
+        void execute(Frame frame) {
+            while (condition.executeCondition(frame)) {
+                frame.budget.backEdge();
+                body.execute(frame);
+            }
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (condition != child) {
+                super.replaceChild(child, replacement);
+            }
+            condition = (Expr) replacement;
+        }
+
+        @Override
+        public String toString() {
+            return "While(" + condition + ", " + body + ")";
+        }
+    }
+
+    // Bounds that are both longs count in a primitive long, with nothing boxed per iteration;
+    // other integer bounds count through Integers, and any double bound counts in a double
+    static final class ForNode extends Stmt {
+        final int slot;
+        Expr from;
+        Expr to;
+        final Block body;
+
+        ForNode(int slot, Expr from, Expr to, Block body) {
+            this.slot = slot;
+            this.from = adopt(from);
+            this.to = adopt(to);
+            this.body = adopt(body);
+        }
+
+        @Override
+        void execute(Frame frame) {
+            long first;
+            try {
+                first = from.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                count(frame, e.result, to.execute(frame));
+                return;
+            }
+            long last;
+            try {
+                last = to.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                count(frame, first, e.result);
+                return;
+            }
+            countLong(frame, first, last);
+        }
+
+        private void countLong(Frame frame, long first, long last) {
+            if (first > last) {
+                return;
+            }
+            // Stops on i == last rather than i > last, so a range ending at Long.MAX_VALUE ends too
+            for (long i = first; ; i++) {
+                frame.budget.backEdge();
+                frame.setLong(slot, i);
+                body.execute(frame);
+                if (i == last) {
+                    return;
+                }
+            }
+        }
+
+        private void count(Frame frame, Object first, Object last) {
+            if (first instanceof Long && last instanceof Long) {
+                countLong(frame, (Long) first, (Long) last);
+            } else if (Integers.isInteger(first) && Integers.isInteger(last)) {
+                for (Object i = first; Integers.compare(i, last) <= 0; i = Integers.add(i, 1L)) {
+                    frame.budget.backEdge();
+                    frame.setValue(slot, i);
+                    body.execute(frame);
+                }
+            } else if (first instanceof Number && last instanceof Number) {
+                double i = ((Number) first).doubleValue();
+                long trips = For.tripCount(i, ((Number) last).doubleValue());
+                for (long remaining = trips; remaining > 0; remaining--, i++) {
+                    frame.budget.backEdge();
+                    frame.setDouble(slot, i);
+                    body.execute(frame);
+                }
+            } else {
+                throw new RuntimeException("Type error: cannot count from " + typeName(first) + " to " + typeName(last));
+            }
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (from == child) {
+                from = (Expr) replacement;
+            } else if (to == child) {
+                to = (Expr) replacement;
+            } else {
+                super.replaceChild(child, replacement);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "For[" + slot + "](" + from + ", " + to + ", " + body + ")";
+        }
+    }
+}
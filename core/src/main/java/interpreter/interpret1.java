@@ -0,0 +1,1828 @@
+package interpreter;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.util.*;
+
+
+enum TokenType {
+    PLUS, MINUS, MUL, DIV, MOD,
+    LPAREN, RPAREN, APOS, INTEGER, REAL, EOF, STR, TRUE, FALSE,
+    EQUAL, NOT, GRET, LEST, GRE, LESE, ASSIGN, SEMI, ID, COMMA, DOT, RANGE,
+    FOR, IN, WHILE, IF, ELSE, ELSIF, END
+}
+
+// Anything the Parser can pull tokens from: a Lexer, or a cursor over packed tokens
+interface TokenSource {
+    Token getNextToken();
+
+    // Source line of the token last returned by getNextToken()
+    int getLine();
+}
+
+class Token {
+    TokenType type;
+    Object value;
+
+    public Token(TokenType type, Object value) {
+        this.type = type;
+        this.value = value;
+    }
+    
+    
+    public TokenType getType() {
+        return type;
+    }
+
+    @Override
+    public String toString() {
+        return "Token(" + type + ", " + value + ")";
+    }
+}
+
+// Reads its input through a fixed-size window that is refilled on demand, so memory use does not
+// depend on the size of the script and the first token is available before the input is read.
+class Lexer implements TokenSource {
+    private static final int BUFFER_SIZE = 8192;
+
+    // Operator, punctuation and keyword tokens carry nothing per occurrence, so all lexers share them
+    private static final Token PLUS = new Token(TokenType.PLUS, '+');
+    private static final Token MINUS = new Token(TokenType.MINUS, '-');
+    private static final Token MUL = new Token(TokenType.MUL, '*');
+    private static final Token DIV = new Token(TokenType.DIV, '/');
+    private static final Token MOD = new Token(TokenType.MOD, '%');
+    private static final Token LPAREN = new Token(TokenType.LPAREN, '(');
+    private static final Token RPAREN = new Token(TokenType.RPAREN, ')');
+    private static final Token APOS = new Token(TokenType.APOS, '"');
+    private static final Token ASSIGN = new Token(TokenType.ASSIGN, '=');
+    private static final Token EQUAL = new Token(TokenType.EQUAL, "==");
+    private static final Token NOT = new Token(TokenType.NOT, "!=");
+    private static final Token GRET = new Token(TokenType.GRET, '>');
+    private static final Token GRE = new Token(TokenType.GRE, ">=");
+    private static final Token LEST = new Token(TokenType.LEST, '<');
+    private static final Token LESE = new Token(TokenType.LESE, "<=");
+    private static final Token SEMI = new Token(TokenType.SEMI, ';');
+    private static final Token COMMA = new Token(TokenType.COMMA, ',');
+    private static final Token DOT = new Token(TokenType.DOT, '.');
+    private static final Token RANGE = new Token(TokenType.RANGE, "..");
+    private static final Token IF = new Token(TokenType.IF, "if");
+    private static final Token ELSIF = new Token(TokenType.ELSIF, "elsif");
+    private static final Token ELSE = new Token(TokenType.ELSE, "else");
+    private static final Token WHILE = new Token(TokenType.WHILE, "while");
+    private static final Token FOR = new Token(TokenType.FOR, "for");
+    private static final Token IN = new Token(TokenType.IN, "in");
+    private static final Token END = new Token(TokenType.END, "end");
+    private static final Token TRUE = new Token(TokenType.TRUE, true);
+    private static final Token FALSE = new Token(TokenType.FALSE, false);
+    private static final Token EOF = new Token(TokenType.EOF, null);
+
+    // Returned by scanToken() for literals, whose value is left in integerValue / bigValue / realValue
+    private static final Token INTEGER_LITERAL = new Token(TokenType.INTEGER, null);
+    private static final Token REAL_LITERAL = new Token(TokenType.REAL, null);
+    private static final Token[] SHARED_TOKENS = new Token[TokenType.values().length];
+
+    static {
+        for (Token token : new Token[] {PLUS, MINUS, MUL, DIV, MOD, LPAREN, RPAREN, APOS, ASSIGN, EQUAL, NOT,
+                GRET, GRE, LEST, LESE, SEMI, COMMA, DOT, RANGE, IF, ELSIF, ELSE, WHILE, FOR, IN, END, TRUE, FALSE,
+                EOF}) {
+            SHARED_TOKENS[token.type.ordinal()] = token;
+        }
+    }
+
+    // Decimal literals with at most this many significant bits and 22 fraction digits convert
+    // exactly as mantissa / 10^n, the same result Double.parseDouble gives
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final SymbolTable symbols = new SymbolTable();
+    private char[] scratch = new char[64];  // Spelling of the current identifier or number
+    private long consumed;                   // Chars dropped from the front of the window so far
+    private long tokenStart;
+    private long integerValue;
+    private BigInteger bigValue;  // Integer literals beyond a long, otherwise null
+    private double realValue;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos;    // Index of currentChar in buffer
+    private int limit;  // Number of valid chars in buffer
+    private boolean endOfInput;
+    private int line;
+    private char currentChar;
+
+    public Lexer(String text) {
+        this(new StringReader(text));
+    }
+
+    public Lexer(CharBuffer chars) {
+        this(new CharBufferReader(chars));
+    }
+
+    // Decodes the channel as UTF-8 through memory-mapped windows; the caller closes the channel
+    public Lexer(FileChannel channel) throws IOException {
+        this(new MappedFileReader(channel, StandardCharsets.UTF_8));
+    }
+
+    public Lexer(Reader reader) {
+        this.reader = reader;
+        this.pos = 0;
+        this.line = 1;
+        this.currentChar = fill(0) ? buffer[pos] : '\0';
+    }
+
+    private void error() {
+        throw new RuntimeException("Invalid syntax");
+    }
+
+    // Makes buffer[pos + n] valid if the input is that long, compacting and refilling the window
+    private boolean fill(int n) {
+        if (pos + n < limit) {
+            return true;
+        }
+        int remaining = Math.max(0, limit - pos);
+        System.arraycopy(buffer, pos, buffer, 0, remaining);
+        consumed += limit - remaining;
+        pos = 0;
+        limit = remaining;
+        try {
+            while (limit <= n && !endOfInput) {
+                int read = reader.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    limit += read;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return n < limit;
+    }
+
+    private void advance() {
+        pos++;
+        if (pos < limit || fill(0)) {
+            currentChar = buffer[pos];
+        } else {
+            currentChar = '\0'; //EOF
+        }
+    }
+
+    private char peek(int n) {
+        return fill(n) ? buffer[pos + n] : '\0';
+    }
+
+    private void skipWhiteSpace() {
+        while (currentChar != '\0' && isWhitespace(currentChar)) {
+            if (currentChar == '\n') {
+                line++;
+            }
+            advance();
+        }
+    }
+
+    private void skipComment() {
+        while (currentChar != '\n' && currentChar != '\0') {
+            advance();
+        }
+    }
+
+    private void appendScratch(int length, char c) {
+        if (length == scratch.length) {
+            scratch = Arrays.copyOf(scratch, length * 2);
+        }
+        scratch[length] = c;
+    }
+
+    // ASCII is answered inline; anything else keeps the Unicode classification of Character
+    private static boolean isIdentifierPart(char c) {
+        if (c < 0x80) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+        }
+        return Character.isLetterOrDigit(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c < 0x80 ? c >= '0' && c <= '9' : Character.isDigit(c);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c < 0x80 ? c == ' ' || (c >= '\t' && c <= '\r') || (c >= 0x1C && c <= 0x1F) : Character.isWhitespace(c);
+    }
+
+    private static int digit(char c) {
+        return c >= '0' && c <= '9' ? c - '0' : Character.digit(c, 10);
+    }
+
+    // Accumulates the value while scanning; the spelling is only parsed when the fast path is inexact
+    private Token number() {
+        int length = 0;
+        long mantissa = 0;
+        boolean exact = true;
+        while (currentChar != '\0' && isDigit(currentChar)) {
+            int d = digit(currentChar);
+            if (mantissa <= (Long.MAX_VALUE - d) / 10) {
+                mantissa = mantissa * 10 + d;
+            } else {
+                exact = false;
+            }
+            appendScratch(length++, currentChar);
+            advance();
+        }
+
+        // 1..5 is a range, not the real 1. followed by .5
+        if (currentChar == '.' && peek(1) != '.') {
+            appendScratch(length++, currentChar);
+            advance();
+
+            int fractionDigits = 0;
+            while (currentChar != '\0' && isDigit(currentChar)) {
+                int d = digit(currentChar);
+                if (mantissa <= (Long.MAX_VALUE - d) / 10) {
+                    mantissa = mantissa * 10 + d;
+                    fractionDigits++;
+                } else {
+                    exact = false;
+                }
+                appendScratch(length++, currentChar);
+                advance();
+            }
+
+            if (exact && mantissa <= MAX_EXACT_MANTISSA && fractionDigits < POWERS_OF_TEN.length) {
+                realValue = mantissa / POWERS_OF_TEN[fractionDigits];
+            } else {
+                realValue = Double.parseDouble(new String(scratch, 0, length));
+            }
+            return REAL_LITERAL;
+        } else {
+            integerValue = mantissa;
+            bigValue = exact ? null : new BigInteger(new String(scratch, 0, length));
+            return INTEGER_LITERAL;
+        }
+    }
+
+    private Token string() {
+        StringBuilder result = new StringBuilder();
+        advance(); // Skip opening double quote
+        while (currentChar != '\0' && currentChar != '"') {
+            result.append(currentChar);
+            advance();
+        }
+        advance(); // Skip closing double quote
+
+        return new Token(TokenType.STR, result.toString());
+    }
+
+    private Token id() {
+        int length = 0;
+        int hash = 0;
+        while (currentChar != '\0' && isIdentifierPart(currentChar)) {
+            appendScratch(length++, currentChar);
+            hash = 31 * hash + currentChar;
+            advance();
+        }
+
+        Token keyword = keyword(scratch, length);
+        return keyword != null ? keyword : symbols.intern(scratch, length, hash);
+    }
+
+    // Keywords are recognized by length and first character before any String is built
+    private static Token keyword(char[] chars, int length) {
+        switch (length) {
+            case 2:
+                if (chars[1] == 'f') {
+                    return matches(chars, "if") ? IF : null;
+                }
+                return matches(chars, "in") ? IN : null;
+            case 3:
+                if (chars[0] == 'e') {
+                    return matches(chars, "end") ? END : null;
+                }
+                return matches(chars, "for") ? FOR : null;
+            case 4:
+                if (chars[0] == 'e') {
+                    return matches(chars, "else") ? ELSE : null;
+                }
+                return matches(chars, "true") ? TRUE : null;
+            case 5:
+                switch (chars[0]) {
+                    case 'e':
+                        return matches(chars, "elsif") ? ELSIF : null;
+                    case 'w':
+                        return matches(chars, "while") ? WHILE : null;
+                    case 'f':
+                        return matches(chars, "false") ? FALSE : null;
+                    default:
+                        return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    private static boolean matches(char[] chars, String keyword) {
+        for (int i = 0; i < keyword.length(); i++) {
+            if (chars[i] != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Token getNextToken() {
+        Token token = scanToken();
+        if (token == INTEGER_LITERAL) {
+            return new Token(TokenType.INTEGER, bigValue != null ? bigValue : integerLiteral(integerValue));
+        }
+        if (token == REAL_LITERAL) {
+            return new Token(TokenType.REAL, realValue);
+        }
+        return token;
+    }
+
+    // INTEGER tokens hold an Integer where the value fits one, else a Long or a BigInteger
+    static Object integerLiteral(long value) {
+        return value == (int) value ? (Object) (int) value : (Object) value;
+    }
+
+    static Token sharedToken(TokenType type) {
+        return SHARED_TOKENS[type.ordinal()];
+    }
+
+    // Whitespace is skipped before a token is scanned, so this is the line the last token is on
+    @Override
+    public int getLine() {
+        return line;
+    }
+
+    // Source position of the token last returned, counted in chars from the start of the input
+    long getTokenOffset() {
+        return tokenStart;
+    }
+
+    int getTokenLength() {
+        return (int) (consumed + pos - tokenStart);
+    }
+
+    long getIntegerValue() {
+        return integerValue;
+    }
+
+    // The value of an integer literal too large for a long, or null
+    BigInteger getBigIntegerValue() {
+        return bigValue;
+    }
+
+    double getRealValue() {
+        return realValue;
+    }
+
+    // Like getNextToken(), but literals come back as shared markers and never allocate a Token
+    Token scanToken() {
+        while (currentChar != '\0') {
+            if (isWhitespace(currentChar)) {
+                skipWhiteSpace();
+                continue;
+            }
+
+            if (currentChar == '#') {
+                advance();
+                skipComment();
+                continue;
+            }
+
+            tokenStart = consumed + pos;
+
+            if (Character.isAlphabetic(currentChar)) {
+                return id();
+            }
+
+            if (isDigit(currentChar)) {
+                return number();
+            }
+
+            switch (currentChar) {
+                case '=':
+                    if (peek(1) != '=') {
+                        advance();
+                        return ASSIGN;
+                    } else {
+                        advance();
+                        advance();
+                        return EQUAL;
+                    }
+
+                case '!':
+                    if (peek(1) == '=') {
+                        advance();
+                        advance();
+                        return NOT;
+                    } else {
+                        error();
+                    }
+
+                case '>':
+                    if (peek(1) != '=') {
+                        advance();
+                        return GRET;
+                    } else {
+                        advance();
+                        advance();
+                        return GRE;
+                    }
+
+                case '<':
+                    if (peek(1) == '=') {
+                        advance();
+                        advance();
+                        return LESE;
+                    } else {
+                        advance();
+                        return LEST;
+                    }
+
+                case '+':
+                    advance();
+                    return PLUS;
+
+                case '-':
+                    advance();
+                    return MINUS;
+
+                case '*':
+                    advance();
+                    return MUL;
+
+                case '/':
+                    advance();
+                    return DIV;
+
+                case '%':
+                    advance();
+                    return MOD;
+
+                case ';':
+                    advance();
+                    return SEMI;
+
+                case ',':
+                    advance();
+                    return COMMA;
+
+                case '(':
+                    advance();
+                    return LPAREN;
+
+                case ')':
+                    advance();
+                    return RPAREN;
+
+                case '.':
+                    if (peek(1) == '.') {
+                        advance();
+                        advance();
+                        return RANGE;
+                    }
+                    advance();
+                    return DOT;
+
+                case '"':
+                    return string();
+
+                default:
+                    error();
+            }
+        }
+
+        tokenStart = consumed + pos;
+        return EOF;
+    }
+}
+
+// Interns identifier spellings per lexer; every occurrence of a name shares one String and one ID token
+class SymbolTable {
+    private Token[] tokens = new Token[64];
+    private int[] hashes = new int[64];
+    private int size;
+
+    // hash must be the String.hashCode of the spelling
+    public Token intern(char[] chars, int length, int hash) {
+        int mask = tokens.length - 1;
+        int index = (hash ^ (hash >>> 16)) & mask;
+        while (tokens[index] != null) {
+            if (hashes[index] == hash && matches((String) tokens[index].value, chars, length)) {
+                return tokens[index];
+            }
+            index = (index + 1) & mask;
+        }
+        Token token = new Token(TokenType.ID, new String(chars, 0, length).intern());
+        tokens[index] = token;
+        hashes[index] = hash;
+        if (++size * 2 > tokens.length) {
+            grow();
+        }
+        return token;
+    }
+
+    private static boolean matches(String name, char[] chars, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void grow() {
+        Token[] oldTokens = tokens;
+        int[] oldHashes = hashes;
+        tokens = new Token[oldTokens.length * 2];
+        hashes = new int[oldTokens.length * 2];
+        int mask = tokens.length - 1;
+        for (int i = 0; i < oldTokens.length; i++) {
+            if (oldTokens[i] != null) {
+                int index = (oldHashes[i] ^ (oldHashes[i] >>> 16)) & mask;
+                while (tokens[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                tokens[index] = oldTokens[i];
+                hashes[index] = oldHashes[i];
+            }
+        }
+    }
+}
+
+class CharBufferReader extends Reader {
+    private final CharBuffer chars;
+
+    public CharBufferReader(CharBuffer chars) {
+        this.chars = chars;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+        if (!chars.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(len, chars.remaining());
+        chars.get(cbuf, off, count);
+        return count;
+    }
+
+    @Override
+    public void close() {
+    }
+}
+
+// Decodes a file channel through read-only memory-mapped windows, so only the window being
+// decoded has to be resident no matter how large the file is
+class MappedFileReader extends Reader {
+    private static final long WINDOW_SIZE = 64L << 20;
+    // Room for any character's bytes, which are remapped together when a window splits them
+    static final long MIN_WINDOW_SIZE = 16;
+
+    private final FileChannel channel;
+    private final CharsetDecoder decoder;
+    private final long size;
+    private final long windowSize;
+    private long position;           // File offset of the first byte not yet decoded
+    private MappedByteBuffer window;
+    private char pendingLowSurrogate;
+
+    public MappedFileReader(FileChannel channel, Charset charset) throws IOException {
+        this(channel, charset, WINDOW_SIZE);
+    }
+
+    MappedFileReader(FileChannel channel, Charset charset, long windowSize) throws IOException {
+        if (windowSize < MIN_WINDOW_SIZE) {
+            throw new IllegalArgumentException("Window too small: " + windowSize);
+        }
+        this.channel = channel;
+        this.windowSize = windowSize;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        this.size = channel.size();
+        this.position = channel.position();
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (pendingLowSurrogate != 0) {
+            cbuf[off] = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+            return 1;
+        }
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while (out.position() == off) {
+            if (window == null || !window.hasRemaining()) {
+                if (position >= size) {
+                    return -1;
+                }
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+            }
+            boolean last = position + window.remaining() >= size;
+            int start = window.position();
+            CoderResult result = decoder.decode(window, out, last);
+            position += window.position() - start;
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (out.position() == off && result.isOverflow()) {
+                // A surrogate pair does not fit in a one-char read; hand it out one half at a time
+                CharBuffer pair = CharBuffer.allocate(2);
+                start = window.position();
+                decoder.decode(window, pair, last);
+                position += window.position() - start;
+                cbuf[off] = pair.get(0);
+                pendingLowSurrogate = pair.get(1);
+                return 1;
+            }
+            if (out.position() == off && window.hasRemaining()) {
+                // A character is split across the window boundary; remap starting at it
+                window = null;
+            }
+        }
+        return out.position() - off;
+    }
+
+    @Override
+    public void close() {
+        window = null;
+    }
+}
+
+
+
+// Tag used by NodeVisitor to index its dispatch table without reflection.
+// FlatTree files store the ordinals, so new kinds go at the end.
+enum NodeKind {
+    BIN_OP, NUM, UNARY_OP, COMPOUND, ASSIGN, VAR, IF, ELSE, WHILE, NO_OP, FOR
+}
+
+abstract class AST {
+    int line;  // Source line the node starts on; 0 for nodes synthesized after parsing
+
+    public abstract NodeKind kind();
+
+    public int getLine() {
+        return line;
+    }
+
+    @Override
+    public String toString() {
+        return "AST{}";
+    }
+}
+
+
+// AST Node classes
+class BinOp extends AST {
+    AST left;
+    Token token;
+    AST right;
+
+    public BinOp(AST left, Token op, AST right) {
+        this.left = left;
+        this.token = op;
+        this.right = right;
+    }
+    
+   
+    
+    public AST getLeft() {
+        return left;
+    }
+
+    public AST getRight() {
+        return right;
+    }
+    
+    public Token getOp() {
+        return token;
+    }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.BIN_OP;
+    }
+    
+    @Override
+    public String toString() {
+        return "BinOp{" +
+                "left=" + left +
+                ", op=" + token +
+                ", right=" + right +
+                '}';
+    }
+}
+
+class Num extends AST {
+    Token token;
+    Object value;
+
+    public Num(Token token) {
+        this.token = token;
+        this.value = token.value;
+    }
+    
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.NUM;
+    }
+    
+    @Override
+    public String toString() {
+        return "Num{" +
+                "value=" + value +
+                '}';
+    }
+}
+
+class UnaryOp extends AST {
+    Token op;
+    AST expr;
+
+    public UnaryOp(Token op, AST expr) {
+        this.op = op;
+        this.expr = expr;
+    }
+    
+    public Token getOp() {
+        return op;
+    }
+
+    public AST getExpr() {
+        return expr;
+    }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.UNARY_OP;
+    }
+    
+    @Override
+    public String toString() {
+        return "UnaryOp{" +
+                "op=" + op +
+                ", expr=" + expr +
+                '}';
+    }
+}
+
+class Compound extends AST {
+    List<AST> children = new ArrayList<>();
+    
+    public List<AST> getChildren() {
+        return children;
+    }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.COMPOUND;
+    }
+    
+     @Override
+    public String toString() {
+        return "Compound{" +
+                "children=" + children +
+                '}';
+    }
+}
+
+class Assign extends AST {
+    AST left;
+    Token op;
+    AST right;
+
+    public Assign(AST left, Token op, AST right) {
+        this.left = left;
+        this.op = op;
+        this.right = right;
+    }
+    
+    public AST getLeft() {
+        return left;
+    }
+
+    public AST getRight() {
+        return right;
+    }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.ASSIGN;
+    }
+    
+    @Override
+    public String toString() {
+        return "Assign{" +
+                "left=" + left +
+                ", op=" + op +
+                ", right=" + right +
+                '}';
+    }
+}
+
+class Var extends AST {
+    Token token;
+    Object value;
+    int slot = -1;  // Frame slot assigned by Resolver
+
+    public Var(Token token) {
+        this.token = token;
+        this.value = token.value;
+    }
+    
+    public String getValue() {
+        return (String) value;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.VAR;
+    }
+    
+    @Override
+    public String toString() {
+        return "Var{" +
+                "value='" + value + '\'' +
+                '}';
+    }
+}
+
+class If extends AST {
+    AST condition;
+    List<AST> body;
+    List<AST> rest;
+
+    public If(AST condition, List<AST> body, List<AST> rest) {
+        this.condition = condition;
+        this.body = body;
+        this.rest = rest;
+    }
+
+    public AST getCondition() {
+        return condition;
+    }
+
+    public List<AST> getBody() {
+        return body;
+    }
+
+    public List<AST> getRest() {
+        return rest;
+    }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.IF;
+    }
+    
+    @Override
+    public String toString() {
+        return "If{" +
+                "condition=" + condition +
+                ", body=" + body +
+                ", rest=" + rest +
+                '}';
+    }
+}
+
+class Else extends AST {
+    List<AST> body;
+
+    public Else(List<AST> body) {
+        this.body = body;
+    }
+
+    public List<AST> getBody() {
+        return body;
+    }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.ELSE;
+    }
+    
+    @Override
+    public String toString() {
+        return "Else{" +
+                "body=" + body +
+                '}';
+    }
+}
+
+class While extends AST {
+    AST condition;
+    List<AST> body;
+
+    public While(AST condition, List<AST> body) {
+        this.condition = condition;
+        this.body = body;
+    }
+
+    public AST getCondition() {
+        return condition;
+    }
+
+    public List<AST> getBody() {
+        return body;
+    }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.WHILE;
+    }
+    
+    @Override
+    public String toString() {
+        return "While{" +
+                "condition=" + condition +
+                ", body=" + body +
+                '}';
+    }
+}
+
+// for i in from..to: both bounds are evaluated once, before the first iteration, and i then
+// takes from, from + 1, ... for as long as it is <= to. The count does not depend on what the
+// body assigns to i, and after the loop i keeps the last value it took (or its old value if the
+// range was empty). Engines count the iterations down from tripCount() rather than testing
+// i <= to, since beyond 2^53 i + 1 == i and the test would never fail.
+class For extends AST {
+    Var variable;
+    AST from;
+    AST to;
+    List<AST> body;
+
+    public For(Var variable, AST from, AST to, List<AST> body) {
+        this.variable = variable;
+        this.from = from;
+        this.to = to;
+        this.body = body;
+    }
+
+    public Var getVariable() {
+        return variable;
+    }
+
+    public AST getFrom() {
+        return from;
+    }
+
+    public AST getTo() {
+        return to;
+    }
+
+    public List<AST> getBody() {
+        return body;
+    }
+
+    // How many of from, from + 1, ... are <= to
+    static long tripCount(double from, double to) {
+        if (!(from <= to)) {
+            return 0;
+        }
+        double span = Math.floor(to - from);
+        return span >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) span + 1;
+    }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.FOR;
+    }
+
+    @Override
+    public String toString() {
+        return "For{" +
+                "variable=" + variable +
+                ", from=" + from +
+                ", to=" + to +
+                ", body=" + body +
+                '}';
+    }
+}
+
+class NoOp extends AST {
+    @Override
+    public NodeKind kind() {
+        return NodeKind.NO_OP;
+    }
+
+    @Override
+    public String toString() {
+        return "NoOp{}";
+    }
+}
+
+
+// Parser class
+class Parser {
+    TokenSource lexer;
+    Token currentToken;
+    int line;  // Line of currentToken
+
+    public Parser(TokenSource lexer) {
+        this.lexer = lexer;
+        advance();
+    }
+
+    private void advance() {
+        currentToken = lexer.getNextToken();
+        line = lexer.getLine();
+    }
+
+    private static <T extends AST> T at(int line, T node) {
+        node.line = line;
+        return node;
+    }
+
+    private void error() {
+        throw new RuntimeException("Invalid syntax");
+    }
+
+    private void eat(TokenType tokenType) {
+        if (currentToken.type == tokenType) {
+            advance();
+        } else {
+            error();
+        }
+    }
+
+    public AST parse() {
+        AST node = program();
+        while (currentToken.type != TokenType.EOF) {
+            error();
+        }
+        return node;
+    }
+
+    private AST program() {
+        return compoundStatement();
+    }
+
+    private AST compoundStatement() {
+        Compound root = at(line, new Compound());
+        List<AST> nodes = statementList();
+        root.children.addAll(nodes);
+        return root;
+    }
+
+    private List<AST> statementList() {
+        List<AST> results = new ArrayList<>();
+        results.add(statement());
+
+        while (currentToken.type != TokenType.EOF) {
+            results.add(statement());
+        }
+
+        return results;
+    }
+
+    private AST statement() {
+        int line = this.line;
+        return at(line, statementBody());
+    }
+
+    private AST statementBody() {
+    if (currentToken.type == TokenType.ID) {
+        return assignmentStatement();
+    } 
+    else if (currentToken.type == TokenType.IF) {
+        return ifStatement();
+    } 
+    else if (currentToken.type == TokenType.ELSIF) {
+        List<AST> elsifResult = elsifStatement();
+        return elsifResult.get(0); 
+    }
+    else if (currentToken.type == TokenType.ELSE) {
+        List<AST> elseResult = elseStatement();
+        return elseResult.get(0); 
+    } 
+    else if (currentToken.type == TokenType.WHILE) {
+        return whileStatement();
+    } 
+    else if (currentToken.type == TokenType.FOR) {
+        return forStatement();
+    } 
+    else {
+        return conditionalStatement();
+    }
+}
+
+    private AST assignmentStatement() {
+        AST left = variable();
+        Token token = currentToken;
+        eat(TokenType.ASSIGN);
+        AST right = expr();
+        return new Assign(left, token, right);
+    }
+
+    private AST ifStatement() {
+        eat(TokenType.IF);
+        AST condition = conditionalStatement();
+        List<AST> body = new ArrayList<>();
+        List<AST> rest = new ArrayList<>();
+
+        while (currentToken.type != TokenType.ELSIF && currentToken.type != TokenType.ELSE && currentToken.type != TokenType.END) {
+            body.add(statement());
+        }
+
+        if (currentToken.type == TokenType.ELSIF) {
+            rest = elsifStatement();
+        }
+
+        if (currentToken.type == TokenType.ELSE) {
+            rest = elseStatement();
+        }
+
+        return new If(condition, body, rest);
+    }
+
+    private AST whileStatement() {
+        eat(TokenType.WHILE);
+        AST condition = conditionalStatement();
+        List<AST> body = new ArrayList<>();
+
+        while (currentToken.type != TokenType.END) {
+            body.add(statement());
+        }
+
+        eat(TokenType.END);
+        return new While(condition, body);
+    }
+
+    private AST forStatement() {
+        eat(TokenType.FOR);
+        Var variable = (Var) variable();
+        eat(TokenType.IN);
+        AST from = expr();
+        eat(TokenType.RANGE);
+        AST to = expr();
+        List<AST> body = new ArrayList<>();
+
+        while (currentToken.type != TokenType.END) {
+            body.add(statement());
+        }
+
+        eat(TokenType.END);
+        return new For(variable, from, to, body);
+    }
+
+    private AST variable() {
+        Token token = currentToken;
+        int line = this.line;
+        eat(TokenType.ID);
+        return at(line, new Var(token));
+    }
+
+    private List<AST> elsifStatement() {
+    int line = this.line;
+    eat(TokenType.ELSIF);
+    AST elsifCondition = conditionalStatement();
+    List<AST> elsifBody = new ArrayList<>();
+    List<AST> rest = new ArrayList<>();
+
+    while (currentToken.type != TokenType.ELSE) {
+        elsifBody.add(statement());
+    }
+
+    if (currentToken.type == TokenType.ELSE) {
+        rest.addAll(elseStatement());
+    }
+
+    List<AST> result = new ArrayList<>();
+    result.add(at(line, new If(elsifCondition, elsifBody, rest)));
+    return result;
+}
+
+private List<AST> elseStatement() {
+    eat(TokenType.ELSE);
+    List<AST> elseBody = new ArrayList<>();
+
+    while (currentToken.type != TokenType.END) {
+        elseBody.add(statement());
+    }
+
+    eat(TokenType.END);
+    return elseBody;
+}
+
+    // Binding power of each binary operator, indexed by TokenType ordinal; 0 means not an operator.
+    // Comparisons bind as tightly as * / %, which is how scripts have always been parsed.
+    private static final int ADDITIVE = 1;
+    private static final int MULTIPLICATIVE = 2;
+    private static final int PREFIX = 3;
+    private static final int[] PRECEDENCE = new int[TokenType.values().length];
+
+    static {
+        PRECEDENCE[TokenType.PLUS.ordinal()] = ADDITIVE;
+        PRECEDENCE[TokenType.MINUS.ordinal()] = ADDITIVE;
+        for (TokenType type : new TokenType[] {TokenType.MUL, TokenType.DIV, TokenType.MOD,
+                TokenType.EQUAL, TokenType.NOT, TokenType.GRET, TokenType.GRE, TokenType.LEST, TokenType.LESE}) {
+            PRECEDENCE[type.ordinal()] = MULTIPLICATIVE;
+        }
+    }
+
+    private AST conditionalStatement() {
+        return expression(0);
+    }
+
+    private AST expr() {
+        return expression(0);
+    }
+
+    // Precedence climbing: operators that bind tighter than minPrecedence are folded into the
+    // left operand, so every token is looked at once and all operators are left-associative
+    private AST expression(int minPrecedence) {
+        int line = this.line;
+        AST node = prefix();
+        int precedence = PRECEDENCE[currentToken.type.ordinal()];
+        while (precedence > minPrecedence) {
+            Token token = currentToken;
+            advance();
+            node = at(line, new BinOp(node, token, expression(precedence)));
+            precedence = PRECEDENCE[currentToken.type.ordinal()];
+        }
+        return node;
+    }
+
+    private AST prefix() {
+        Token token = currentToken;
+        int line = this.line;
+        switch (token.type) {
+            case INTEGER:
+            case REAL:
+            case STR:
+                advance();
+                return at(line, new Num(token));
+            case ID:
+                advance();
+                return at(line, new Var(token));
+            case PLUS:
+            case MINUS:
+                advance();
+                return at(line, new UnaryOp(token, expression(PREFIX)));
+            case LPAREN: {
+                advance();
+                AST result = expression(0);
+                eat(TokenType.RPAREN);
+                return result;
+            }
+            default:
+                error();
+                return null;
+        }
+    }
+}
+
+
+// Variable names of one program and the frame slot each one was given
+class Scope {
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    public int slotOf(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    int define(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            slot = names.size();
+            slots.put(name, slot);
+            names.add(name);
+        }
+        return slot;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public String nameOf(int slot) {
+        return names.get(slot);
+    }
+
+    public List<String> getNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    public double[] newFrame() {
+        return new double[size()];
+    }
+
+    // Frames only grow; a scope reused for later programs can add names after a frame was created
+    public double[] ensureFrame(double[] frame) {
+        return frame.length >= size() ? frame : Arrays.copyOf(frame, size());
+    }
+}
+
+
+// Resolver pass: runs between Parser and execution and gives every distinct Var name its own
+// dense slot, so engines read variables with a plain array load and no hashing at run time
+class Resolver {
+    private final Scope scope;
+
+    private Resolver(Scope scope) {
+        this.scope = scope;
+    }
+
+    public static Scope resolve(AST tree) {
+        return resolve(tree, new Scope());
+    }
+
+    public static Scope resolve(AST tree, Scope scope) {
+        new Resolver(scope).resolveNode(tree);
+        return scope;
+    }
+
+    private void resolveNode(AST node) {
+        switch (node.kind()) {
+            case VAR: {
+                Var var = (Var) node;
+                var.slot = scope.define(var.getValue());
+                break;
+            }
+            case BIN_OP:
+                resolveNode(((BinOp) node).getLeft());
+                resolveNode(((BinOp) node).getRight());
+                break;
+            case UNARY_OP:
+                resolveNode(((UnaryOp) node).getExpr());
+                break;
+            case ASSIGN:
+                resolveNode(((Assign) node).getLeft());
+                resolveNode(((Assign) node).getRight());
+                break;
+            case COMPOUND:
+                resolveList(((Compound) node).getChildren());
+                break;
+            case IF:
+                resolveNode(((If) node).getCondition());
+                resolveList(((If) node).getBody());
+                resolveList(((If) node).getRest());
+                break;
+            case ELSE:
+                resolveList(((Else) node).getBody());
+                break;
+            case WHILE:
+                resolveNode(((While) node).getCondition());
+                resolveList(((While) node).getBody());
+                break;
+            case FOR:
+                resolveNode(((For) node).getVariable());
+                resolveNode(((For) node).getFrom());
+                resolveNode(((For) node).getTo());
+                resolveList(((For) node).getBody());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void resolveList(List<AST> nodes) {
+        for (AST node : nodes) {
+            resolveNode(node);
+        }
+    }
+}
+
+
+// NodeVisitor class
+class NodeVisitor {
+    // Handler for one node kind; resolved once, so visit() does no string building or reflection
+    interface Handler {
+        Object visit(NodeVisitor visitor, AST node);
+    }
+
+    private final Handler[] dispatchTable;
+
+    // Reflective dispatch through visit_<ClassName> methods
+    public NodeVisitor() {
+        this(null);
+    }
+
+    // Table dispatch indexed by NodeKind ordinal; a null table falls back to reflection
+    protected NodeVisitor(Handler[] dispatchTable) {
+        this.dispatchTable = dispatchTable;
+    }
+
+    protected static Handler[] newDispatchTable() {
+        return new Handler[NodeKind.values().length];
+    }
+
+    public Object visit(AST node) {
+        if (dispatchTable != null) {
+            Handler handler = dispatchTable[node.kind().ordinal()];
+            if (handler == null) {
+                return genericVisit(node);
+            }
+            return handler.visit(this, node);
+        }
+        return reflectiveVisit(node);
+    }
+
+    private Object reflectiveVisit(AST node) {
+        String methodName = "visit_" + node.getClass().getSimpleName();
+        java.lang.reflect.Method method;
+        try {
+            method = this.getClass().getMethod(methodName, node.getClass());
+        } catch (NoSuchMethodException e) {
+            return genericVisit(node);
+        }
+        try {
+            return method.invoke(this, node);
+        } catch (java.lang.reflect.InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Cannot access " + methodName, e);
+        }
+    }
+
+    public Object genericVisit(AST node) {
+        throw new RuntimeException("No visit_" + node.getClass().getSimpleName() + " method");
+    }
+}
+
+class Interpreter extends NodeVisitor {
+
+    // PRIMITIVE uses table dispatch for statements and evaluates expressions as unboxed doubles
+    enum Dispatch {
+        REFLECTIVE, TABLE, PRIMITIVE
+    }
+
+    private static final Handler[] DISPATCH_TABLE = newDispatchTable();
+
+    static {
+        DISPATCH_TABLE[NodeKind.BIN_OP.ordinal()] = (v, n) -> ((Interpreter) v).visit_BinOp((BinOp) n);
+        DISPATCH_TABLE[NodeKind.NUM.ordinal()] = (v, n) -> ((Interpreter) v).visit_Num((Num) n);
+        DISPATCH_TABLE[NodeKind.UNARY_OP.ordinal()] = (v, n) -> ((Interpreter) v).visit_UnaryOp((UnaryOp) n);
+        DISPATCH_TABLE[NodeKind.VAR.ordinal()] = (v, n) -> ((Interpreter) v).visit_Var((Var) n);
+        DISPATCH_TABLE[NodeKind.COMPOUND.ordinal()] = (v, n) -> {
+            ((Interpreter) v).visit_Compound((Compound) n);
+            return null;
+        };
+        DISPATCH_TABLE[NodeKind.ASSIGN.ordinal()] = (v, n) -> {
+            ((Interpreter) v).visit_Assign((Assign) n);
+            return null;
+        };
+        DISPATCH_TABLE[NodeKind.IF.ordinal()] = (v, n) -> {
+            ((Interpreter) v).visit_If((If) n);
+            return null;
+        };
+        DISPATCH_TABLE[NodeKind.ELSE.ordinal()] = (v, n) -> {
+            ((Interpreter) v).visit_Else((Else) n);
+            return null;
+        };
+        DISPATCH_TABLE[NodeKind.WHILE.ordinal()] = (v, n) -> {
+            ((Interpreter) v).visit_While((While) n);
+            return null;
+        };
+        DISPATCH_TABLE[NodeKind.FOR.ordinal()] = (v, n) -> {
+            ((Interpreter) v).visit_For((For) n);
+            return null;
+        };
+        DISPATCH_TABLE[NodeKind.NO_OP.ordinal()] = (v, n) -> {
+            ((Interpreter) v).visit_NoOp((NoOp) n);
+            return null;
+        };
+    }
+
+    // One slot per distinct variable name, laid out by Resolver
+    private double[] GLOBAL_MEMORY;
+    private AST tree;
+    private final Scope scope;
+    private final boolean primitive;
+    private Budget budget = Budget.unlimited();
+    // Iterations started by the loop that last finished or threw; only Profiler reads it
+    long loopIterations;
+
+    public Interpreter(AST tree) {
+        this(tree, Dispatch.PRIMITIVE);
+    }
+
+    public Interpreter(AST tree, Dispatch dispatch) {
+        this(tree, dispatch == Dispatch.REFLECTIVE ? null : DISPATCH_TABLE, dispatch == Dispatch.PRIMITIVE);
+    }
+
+    // Runs through the profiler's instrumented copy of the dispatch table
+    public Interpreter(AST tree, Dispatch dispatch, Profiler profiler) {
+        this(tree, profiler.instrument(dispatch == Dispatch.REFLECTIVE ? null : DISPATCH_TABLE),
+                dispatch == Dispatch.PRIMITIVE);
+    }
+
+    private Interpreter(AST tree, Handler[] dispatchTable, boolean primitive) {
+        super(dispatchTable);
+        this.tree = tree;
+        this.scope = Resolver.resolve(tree);
+        this.GLOBAL_MEMORY = scope.newFrame();
+        this.primitive = primitive;
+    }
+
+    // Runs against memory owned by the caller, e.g. when a compiled program falls back to the tree.
+    // The tree must already be resolved against the scope that laid out the memory.
+    public Interpreter(AST tree, double[] memory) {
+        super(DISPATCH_TABLE);
+        this.tree = tree;
+        this.scope = null;
+        this.GLOBAL_MEMORY = memory;
+        this.primitive = true;
+    }
+
+    public Interpreter(AST tree, double[] memory, Budget budget) {
+        this(tree, memory);
+        this.budget = budget;
+    }
+
+    public void setBudget(Budget budget) {
+        this.budget = budget;
+    }
+
+    public Double interpret() {
+        if (tree == null) {
+            return null;
+        }
+        return (Double) visit(tree);
+    }
+
+    public double getVariable(String name) {
+        if (scope == null) {
+            throw new IllegalStateException("Memory is owned by the caller");
+        }
+        int slot = scope.slotOf(name);
+        return slot < 0 ? 0.0 : GLOBAL_MEMORY[slot];
+    }
+
+    
+    public Double visit_BinOp(BinOp node) {
+        double leftValue = (Double) visit(node.getLeft());
+        double rightValue = (Double) visit(node.getRight());
+
+        switch (node.getOp().getType()) {
+            case PLUS:
+                return leftValue + rightValue;
+            case MINUS:
+                return leftValue - rightValue;
+            case MUL:
+                return leftValue * rightValue;
+            case DIV:
+                return leftValue / rightValue;
+            case MOD:
+                return leftValue % rightValue;
+            case EQUAL:
+                return leftValue == rightValue ? 1.0 : 0.0;
+            case NOT:
+                return leftValue != rightValue ? 1.0 : 0.0;
+            case GRE:
+                return leftValue >= rightValue ? 1.0 : 0.0;
+            case LESE:
+                return leftValue <= rightValue ? 1.0 : 0.0;
+            case GRET:
+                return leftValue > rightValue ? 1.0 : 0.0;
+            case LEST:
+                return leftValue < rightValue ? 1.0 : 0.0;
+            default:
+                throw new IllegalArgumentException("Invalid operation type: " + node.getOp().getType());
+        }
+    }
+
+    
+    public Double visit_Num(Num node) {
+        // INTEGER literals arrive as Integer, Long or BigInteger, REAL literals as Double
+        return ((Number) node.getValue()).doubleValue();
+    }
+
+   
+    public Double visit_UnaryOp(UnaryOp node) {
+        TokenType opType = node.getOp().getType();
+        double exprValue = (Double) visit(node.getExpr());
+
+        switch (opType) {
+            case PLUS:
+                return exprValue;
+            case MINUS:
+                return -exprValue;
+            default:
+                throw new IllegalArgumentException("Invalid unary operation type: " + opType);
+        }
+    }
+
+    
+    public void visit_Compound(Compound node) {
+        visit_list(node.getChildren());
+    }
+
+    
+    public void visit_Assign(Assign node) {
+    Var leftVar = (Var) node.getLeft();
+
+    int varIndex = leftVar.getSlot();
+
+    double varValue = primitive ? evalDouble(node.getRight()) : (Double) visit(node.getRight());
+
+    GLOBAL_MEMORY[varIndex] = varValue;
+}
+
+    public Double visit_Var(Var node) {
+        return GLOBAL_MEMORY[node.getSlot()];
+    }
+
+    public void visit_If(If node) {
+        if (test(node.getCondition())) {
+            visit_list(node.getBody());
+        } else {
+            visit_list(node.getRest());
+        }
+    }
+
+    public void visit_Else(Else node) {
+        visit_list(node.getBody());
+    }
+
+    public void visit_While(While node) {
+        loop(node);
+    }
+
+    void loop(While node) {
+        long iterations = 0;
+        try {
+            while (test(node.getCondition())) {
+                budget.backEdge();
+                iterations++;
+                visit_list(node.getBody());
+            }
+        } finally {
+            loopIterations = iterations;
+        }
+    }
+
+    public void visit_For(For node) {
+        loop(node);
+    }
+
+    // The induction variable is a local double, stored to its slot at the top of each iteration
+    void loop(For node) {
+        long iterations = 0;
+        try {
+            int slot = node.getVariable().getSlot();
+            double i = value(node.getFrom());
+            for (long remaining = For.tripCount(i, value(node.getTo())); remaining > 0;
+                    remaining--, i++) {
+                budget.backEdge();
+                iterations++;
+                GLOBAL_MEMORY[slot] = i;
+                visit_list(node.getBody());
+            }
+        } finally {
+            loopIterations = iterations;
+        }
+    }
+
+    public void visit_list(List<AST> nodes) {
+        // Indexed loop: no Iterator per executed block
+        for (int i = 0; i < nodes.size(); i++) {
+            visit(nodes.get(i));
+        }
+    }
+
+    private boolean test(AST condition) {
+        return primitive ? evalCondition(condition) : (Double) visit(condition) != 0.0;
+    }
+
+    private double value(AST node) {
+        return primitive ? evalDouble(node) : (Double) visit(node);
+    }
+
+    // Unboxed evaluation for Dispatch.PRIMITIVE. Numeric subtrees never allocate; only nodes
+    // outside the numeric subset go back through visit() and its boxed Double results.
+    private double evalDouble(AST node) {
+        switch (node.kind()) {
+            case NUM: {
+                Object value = ((Num) node).getValue();
+                if (value instanceof Number) {
+                    return ((Number) value).doubleValue();
+                }
+                break;
+            }
+            case VAR:
+                return GLOBAL_MEMORY[((Var) node).getSlot()];
+            case UNARY_OP: {
+                UnaryOp op = (UnaryOp) node;
+                switch (op.getOp().getType()) {
+                    case PLUS:
+                        return evalDouble(op.getExpr());
+                    case MINUS:
+                        return -evalDouble(op.getExpr());
+                    default:
+                        throw new IllegalArgumentException("Invalid unary operation type: " + op.getOp().getType());
+                }
+            }
+            case BIN_OP: {
+                BinOp op = (BinOp) node;
+                switch (op.getOp().getType()) {
+                    case PLUS:
+                        return evalDouble(op.getLeft()) + evalDouble(op.getRight());
+                    case MINUS:
+                        return evalDouble(op.getLeft()) - evalDouble(op.getRight());
+                    case MUL:
+                        return evalDouble(op.getLeft()) * evalDouble(op.getRight());
+                    case DIV:
+                        return evalDouble(op.getLeft()) / evalDouble(op.getRight());
+                    case MOD:
+                        return evalDouble(op.getLeft()) % evalDouble(op.getRight());
+                    case EQUAL:
+                    case NOT:
+                    case GRE:
+                    case LESE:
+                    case GRET:
+                    case LEST:
+                        return evalCondition(op) ? 1.0 : 0.0;
+                    default:
+                        throw new IllegalArgumentException("Invalid operation type: " + op.getOp().getType());
+                }
+            }
+            default:
+                break;
+        }
+        return (Double) visit(node);
+    }
+
+    // Comparisons in conditions produce a boolean directly instead of 1.0 / 0.0
+    private boolean evalCondition(AST node) {
+        if (node.kind() == NodeKind.BIN_OP) {
+            BinOp op = (BinOp) node;
+            switch (op.getOp().getType()) {
+                case EQUAL:
+                    return evalDouble(op.getLeft()) == evalDouble(op.getRight());
+                case NOT:
+                    return evalDouble(op.getLeft()) != evalDouble(op.getRight());
+                case GRE:
+                    return evalDouble(op.getLeft()) >= evalDouble(op.getRight());
+                case LESE:
+                    return evalDouble(op.getLeft()) <= evalDouble(op.getRight());
+                case GRET:
+                    return evalDouble(op.getLeft()) > evalDouble(op.getRight());
+                case LEST:
+                    return evalDouble(op.getLeft()) < evalDouble(op.getRight());
+                default:
+                    break;
+            }
+        }
+        return evalDouble(node) != 0.0;
+    }
+
+    public void visit_NoOp(NoOp node) {
+        // Do nothing
+    }
+}
+
+
+class Main {
+    public static void main(String[] args) {
+        // Example code to parse and interpret
+        String input = "A = 10 * 2 + 5; B = A - 7; IF B > 0 THEN C = B * 2; ELSE C = B / 2; END";
+
+        // Create a lexer and parser
+        Lexer lexer = new Lexer(input);
+        Parser parser = new Parser(lexer);
+
+        // Parse the input and get the abstract syntax tree (AST)
+        AST tree = parser.parse();
+
+        // Create an interpreter and interpret the AST
+        Interpreter interpreter = new Interpreter(tree);
+        interpreter.interpret();
+
+        
+    }
+}
@@ -0,0 +1,88 @@
+package interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+class BatchCompilerTest {
+    // More than one block, so the last one is partly filled
+    private static final int ROWS = BatchCompiler.BLOCK_SIZE + 300;
+
+    // Each row against a fresh Interpreter given the same inputs; a and b differ from row to row,
+    // so lanes of one block take different branches and loop different numbers of times
+    @Test
+    void everyRowMatchesInterpreter() {
+        ProgramGenerator generator = new ProgramGenerator(21);
+        for (int i = 0; i < 60; i++) {
+            String source = generator.program();
+            AST tree = ProgramGenerator.parse(source);
+            Scope scope = Resolver.resolve(tree);
+            BatchProgram.Batch batch = BatchCompiler.compile(ProgramGenerator.parse(source))
+                    .newBatch();
+            double[][] columns = new double[scope.size()][ROWS];
+            for (String name : scope.getNames()) {
+                double[] column = columns[scope.slotOf(name)];
+                if (isInput(name)) {
+                    for (int row = 0; row < ROWS; row++) {
+                        column[row] = input(name, row);
+                    }
+                    batch.bind(name, column);
+                }
+                batch.output(name, column);
+            }
+            batch.run(ROWS);
+            for (int row = 0; row < ROWS; row++) {
+                double[] memory = scope.newFrame();
+                for (String name : scope.getNames()) {
+                    if (isInput(name)) {
+                        memory[scope.slotOf(name)] = input(name, row);
+                    }
+                }
+                new Interpreter(tree, memory).interpret();
+                for (String name : scope.getNames()) {
+                    int slot = scope.slotOf(name);
+                    int r = row;
+                    assertEquals(memory[slot], columns[slot][row],
+                            () -> "row " + r + " disagrees on " + name + " in\n" + source);
+                }
+            }
+        }
+    }
+
+    @Test
+    void forRangesDifferPerRow() {
+        BatchProgram program = BatchCompiler.compile(ProgramGenerator.parse(
+                "s = 0\nfor i in 1..n\ns = s + i\nend"));
+        double[] n = new double[ROWS];
+        double[] s = new double[ROWS];
+        double[] i = new double[ROWS];
+        for (int row = 0; row < ROWS; row++) {
+            n[row] = row % 50 - 5;
+        }
+        program.newBatch().bind("n", n).output("s", s).output("i", i).run(ROWS);
+        for (int row = 0; row < ROWS; row++) {
+            double last = Math.max(n[row], 0);
+            assertEquals(last * (last + 1) / 2, s[row], "s at row " + row);
+            assertEquals(last, i[row], "i at row " + row);
+        }
+    }
+
+    @Test
+    void shortColumnsAndUnknownNamesAreRejected() {
+        BatchProgram.Batch batch = BatchCompiler.compile(ProgramGenerator.parse("y = x + 1"))
+                .newBatch();
+        assertThrows(IllegalArgumentException.class, () -> batch.bind("z", new double[4]));
+        batch.bind("x", new double[4]).output("y", new double[3]);
+        assertThrows(IllegalArgumentException.class, () -> batch.run(4));
+    }
+
+    private static boolean isInput(String name) {
+        return name.equals("a") || name.equals("b");
+    }
+
+    private static double input(String name, int row) {
+        return name.equals("a") ? row % 13 - 6 : row * 0.25;
+    }
+}
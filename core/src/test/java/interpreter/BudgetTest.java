@@ -0,0 +1,147 @@
+package interpreter;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+class BudgetTest {
+    // 30 while iterations around 30 * 40 for iterations, more than one CHECK_INTERVAL of fuel
+    private static final String LOOPS =
+            "s = 0\ni = 0\nwhile i < 30\nfor j in 1..40\ns = s + j\nend\ni = i + 1\nend";
+    private static final int LOOP_ITERATIONS = 30 + 30 * 40;
+    private static final String ENDLESS = "x = 0\nwhile 1 < 2\nx = x + 1\nend";
+
+    // Every engine that takes a budget, each running a freshly parsed tree
+    private static Map<String, BiConsumer<AST, Budget>> engines() {
+        Map<String, BiConsumer<AST, Budget>> engines = new LinkedHashMap<>();
+        engines.put("interpreter", (tree, budget) ->
+                new Interpreter(tree, Resolver.resolve(tree).newFrame(), budget).interpret());
+        engines.put("closure", (tree, budget) -> {
+            ClosureProgram program = ClosureCompiler.compile(tree);
+            program.execute(program.newMemory(), budget);
+        });
+        engines.put("bytecode", (tree, budget) -> {
+            double[] memory = Resolver.resolve(tree).newFrame();
+            BytecodeCompiler.compile(tree).run(memory, budget);
+        });
+        engines.put("register", (tree, budget) -> {
+            RegisterProgram program = RegisterCompiler.compile(tree);
+            program.execute(program.newMemory(), budget);
+        });
+        engines.put("flat", (tree, budget) -> {
+            FlatTree program = FlatTree.of(tree);
+            program.execute(program.newMemory(), budget);
+        });
+        engines.put("parallel", (tree, budget) -> {
+            ParallelProgram program = ParallelProgram.compile(tree);
+            program.execute(program.newMemory(), budget);
+        });
+        engines.put("specializing", (tree, budget) -> {
+            SpecializingInterpreter interpreter = new SpecializingInterpreter(tree);
+            interpreter.setBudget(budget);
+            interpreter.interpret();
+        });
+        engines.put("batch", (tree, budget) ->
+                BatchCompiler.compile(tree).newBatch().run(1, budget));
+        return engines;
+    }
+
+    @Test
+    void exactIterationLimitIsEnough() {
+        engines().forEach((name, engine) -> {
+            Budget budget = Budget.iterations(LOOP_ITERATIONS);
+            engine.accept(ProgramGenerator.parse(LOOPS), budget);
+            assertEquals(LOOP_ITERATIONS, budget.getIterations(), name);
+        });
+    }
+
+    @Test
+    void oneIterationLessRunsOutOfFuel() {
+        engines().forEach((name, engine) -> assertReason(BudgetExceededException.Reason.FUEL,
+                () -> engine.accept(ProgramGenerator.parse(LOOPS),
+                        Budget.iterations(LOOP_ITERATIONS - 1)), name));
+    }
+
+    @Test
+    void deadlineStopsEndlessLoops() {
+        engines().forEach((name, engine) -> assertReason(BudgetExceededException.Reason.DEADLINE,
+                () -> engine.accept(ProgramGenerator.parse(ENDLESS), Budget.timeout(20)), name));
+    }
+
+    @Test
+    void interruptStopsEndlessLoops() {
+        engines().forEach((name, engine) -> {
+            Thread.currentThread().interrupt();
+            try {
+                assertReason(BudgetExceededException.Reason.INTERRUPTED, () ->
+                        engine.accept(ProgramGenerator.parse(ENDLESS), Budget.unlimited()), name);
+            } finally {
+                Thread.interrupted();
+            }
+        });
+    }
+
+    // Fuel the compiled loop has acquired is handed back before the interpreter takes over
+    @Test
+    void bytecodeFallbackKeepsTheLimitExact() {
+        String source = "s = 0\ni = 0\nwhile i < 3\nj = 0\nwhile j < 1000\nj = j + 1\n" +
+                "s = s + 1\nend\ni = i + 1\nend";
+        BiConsumer<AST, Budget> engine = (tree, budget) -> {
+            While outer = (While) ((Compound) tree).getChildren().get(2);
+            Num bound = (Num) ((BinOp) ((While) outer.getBody().get(1)).getCondition()).getRight();
+            Object value = bound.value;
+            // Not compilable, so the inner loop runs in the interpreter
+            bound.value = "bound";
+            BytecodeCompiler.Code code = BytecodeCompiler.compile(tree);
+            bound.value = value;
+            code.run(Resolver.resolve(tree).newFrame(), budget);
+        };
+        Budget budget = Budget.iterations(3003);
+        engine.accept(ProgramGenerator.parse(source), budget);
+        assertEquals(3003, budget.getIterations());
+        assertReason(BudgetExceededException.Reason.FUEL, () ->
+                engine.accept(ProgramGenerator.parse(source), Budget.iterations(3002)), "fallback");
+    }
+
+    // A branch that runs out waits for its sibling's unused iterations, so the exact limit is
+    // always enough and one less always fails. In the second program the j loop, which starts
+    // first, holds most of a CHECK_INTERVAL chunk through 100 slow iterations while the i loop
+    // uses up the rest.
+    @Test
+    void parallelStagesShareTheExactLimit() {
+        String slow = "b = b + j\n".repeat(1000);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (String source : List.of(
+                    "a = 0\nfor i in 1..3000\na = a + i\nend\n" +
+                            "b = 0\nfor j in 1..3000\nb = b + j\nend",
+                    "b = 0\nfor j in 1..100\n" + slow + "end\n" +
+                            "a = 0\nfor i in 1..5900\na = a + i\nend")) {
+                ParallelProgram program = ParallelProgram.compile(ProgramGenerator.parse(source),
+                        pool);
+                assertEquals(1, program.getParallelStageCount());
+                for (int run = 0; run < 20; run++) {
+                    Budget budget = Budget.iterations(6000);
+                    program.execute(program.newMemory(), budget);
+                    assertEquals(6000, budget.getIterations());
+                    assertReason(BudgetExceededException.Reason.FUEL, () -> program.execute(
+                            program.newMemory(), Budget.iterations(5999)), "parallel");
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertReason(BudgetExceededException.Reason reason, Runnable run,
+            String name) {
+        assertEquals(reason, assertThrows(BudgetExceededException.class, run::run, name).getReason(),
+                name);
+    }
+}
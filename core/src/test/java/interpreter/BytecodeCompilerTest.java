@@ -0,0 +1,111 @@
+package interpreter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class BytecodeCompilerTest {
+
+    @Test
+    void tieredProgramCompilesAfterThreshold() {
+        TieredProgram program = new TieredProgram(ProgramGenerator.parse(
+                "s = 0\ni = 0\nwhile i < 100\ns = s + i\ni = i + 1\nend"), 2);
+        // The first two runs are interpreted and the third compiles; every one gives the same result
+        for (int run = 0; run < 4; run++) {
+            ExecutionContext context = program.newContext().run();
+            assertEquals(4950.0, context.get("s"));
+            assertEquals(run >= 2, program.isCompiled());
+        }
+    }
+
+    @Test
+    void tieredProgramStartsInterpreted() {
+        TieredProgram program = new TieredProgram(ProgramGenerator.parse("x = 1"));
+        program.newContext().run();
+        assertFalse(program.isCompiled());
+    }
+
+    // A class the JVM refuses to load is tried once, then the program stays interpreted
+    @Test
+    void tieredProgramKeepsInterpretingWhenTheClassFailsToLoad() {
+        AtomicInteger attempts = new AtomicInteger();
+        TieredProgram program = new TieredProgram(ProgramGenerator.parse(
+                "s = 0\nfor i in 1..10\ns = s + i\nend"), 1, tree -> {
+                    attempts.incrementAndGet();
+                    throw new VerifyError("Bad type on operand stack");
+                });
+        for (int run = 0; run < 4; run++) {
+            assertEquals(55.0, program.newContext().run().get("s"));
+            assertFalse(program.isCompiled());
+        }
+        assertEquals(1, attempts.get());
+    }
+
+    // s = 0 | for | t = s | while | u = t
+    @Test
+    void eachTopLevelLoopGetsAMethod() {
+        String source = "s = 0\nfor i in 1..10\ns = s + i\nend\nt = s\n" +
+                "while t > 0\nt = t - 7\nend\nu = t";
+        assertEquals(5, BytecodeCompiler.methodSizes(ProgramGenerator.parse(source)).length);
+        assertMatchesInterpreter(source);
+    }
+
+    @Test
+    void straightLineCodeIsSplitUnderTheHugeMethodLimit() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            source.append('v').append(i % 50).append(" = v").append((i + 7) % 50)
+                    .append(" * 0.5 + ").append(i).append('\n');
+        }
+        int[] sizes = BytecodeCompiler.methodSizes(ProgramGenerator.parse(source.toString()));
+        assertTrue(sizes.length > 1);
+        for (int size : sizes) {
+            assertTrue(size <= BytecodeCompiler.HUGE_METHOD_LIMIT, () -> size + " bytes");
+        }
+        assertMatchesInterpreter(source.toString());
+    }
+
+    // No split can shrink a single loop, so its method only calls the Interpreter, which still
+    // charges every iteration to the budget
+    @Test
+    void loopsTooLargeForOneMethodAreInterpreted() {
+        String source = "s = 0\nfor i in 1..20\n" + "s = s + i * 3 - 1\n".repeat(1000) +
+                "end\nt = s";
+        int[] sizes = BytecodeCompiler.methodSizes(ProgramGenerator.parse(source));
+        assertEquals(3, sizes.length);
+        assertTrue(sizes[1] < 100, () -> sizes[1] + " bytes");
+        assertMatchesInterpreter(source);
+        Budget budget = Budget.iterations(20);
+        run(source, budget);
+        assertEquals(20, budget.getIterations());
+        assertThrows(BudgetExceededException.class, () -> run(source, Budget.iterations(19)));
+    }
+
+    // Each method hands back its unused iterations on exit, so the next one draws on them
+    @Test
+    void iterationLimitIsExactAcrossMethods() {
+        String source = "s = 0\nfor i in 1..700\ns = s + i\nend\nt = 0\n" +
+                "while t < 700\nt = t + 1\nend\nfor i in 1..700\ns = s - i\nend";
+        Budget budget = Budget.iterations(2100);
+        run(source, budget);
+        assertEquals(2100, budget.getIterations());
+        assertThrows(BudgetExceededException.class, () -> run(source, Budget.iterations(2099)));
+    }
+
+    private static void run(String source, Budget budget) {
+        AST tree = ProgramGenerator.parse(source);
+        BytecodeCompiler.compile(tree).run(Resolver.resolve(tree).newFrame(), budget);
+    }
+
+    private static void assertMatchesInterpreter(String source) {
+        AST tree = ProgramGenerator.parse(source);
+        Scope scope = Resolver.resolve(tree);
+        double[] memory = scope.newFrame();
+        BytecodeCompiler.compile(tree).run(memory, Budget.unlimited());
+        ProgramGenerator.assertMatchesInterpreter(source, "bytecode",
+                name -> memory[scope.slotOf(name)]);
+    }
+}
@@ -0,0 +1,29 @@
+package interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+class ClosureCompilerTest {
+
+    @Test
+    void programKeepsNoStateBetweenRuns() {
+        ClosureProgram program = ClosureCompiler.compile(ProgramGenerator.parse(
+                "s = s + 1\ni = 0\nwhile i < 10\ns = s + i\ni = i + 1\nend"));
+        double[] first = program.run();
+        double[] second = program.run();
+        assertEquals(46.0, program.getVariable(first, "s"));
+        assertEquals(46.0, program.getVariable(second, "s"));
+    }
+
+    // Closures nest as deep as the tree they were built from, and run by recursion like it
+    @Test
+    void deeplyNestedExpressionsMatchTheInterpreter() {
+        String source = ProgramGenerator.deepExpressions(1000);
+        ClosureProgram program = ClosureCompiler.compile(ProgramGenerator.parse(source));
+        double[] memory = program.run();
+        ProgramGenerator.assertMatchesInterpreter(source, "closure",
+                name -> program.getVariable(memory, name));
+    }
+}
@@ -0,0 +1,112 @@
+package interpreter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+
+// Every engine against the Interpreter on the same generated programs. Each engine's own limits
+// and failure paths are tested in its own class.
+class EngineDifferentialTest {
+
+    // Runs the source and reads its variables back by name
+    interface Engine {
+        ToDoubleFunction<String> run(String source) throws IOException;
+    }
+
+    static Stream<Arguments> engines() {
+        return Stream.of(
+                arguments("reflective", dispatch(Interpreter.Dispatch.REFLECTIVE)),
+                arguments("table", dispatch(Interpreter.Dispatch.TABLE)),
+                arguments("primitive", dispatch(Interpreter.Dispatch.PRIMITIVE)),
+                arguments("profiled", (Engine) source -> {
+                    Interpreter interpreter = new Interpreter(ProgramGenerator.parse(source),
+                            Interpreter.Dispatch.TABLE, new Profiler());
+                    interpreter.interpret();
+                    return interpreter::getVariable;
+                }),
+                arguments("optimized", (Engine) source -> {
+                    Interpreter interpreter = new Interpreter(
+                            new Optimizer().optimize(ProgramGenerator.parse(source)));
+                    interpreter.interpret();
+                    return interpreter::getVariable;
+                }),
+                arguments("closure", (Engine) source ->
+                        run(ClosureCompiler.compile(ProgramGenerator.parse(source)))),
+                arguments("program", (Engine) source -> run(Program.compile(source))),
+                arguments("bytecode", (Engine) source -> {
+                    AST tree = ProgramGenerator.parse(source);
+                    Scope scope = Resolver.resolve(tree);
+                    double[] memory = scope.newFrame();
+                    BytecodeCompiler.compile(tree).run(memory, Budget.unlimited());
+                    return name -> memory[scope.slotOf(name)];
+                }),
+                arguments("tiered", (Engine) source ->
+                        run(new TieredProgram(ProgramGenerator.parse(source), 0))),
+                arguments("register", (Engine) source ->
+                        run(RegisterCompiler.compile(ProgramGenerator.parse(source)))),
+                arguments("loaded register", (Engine) source -> {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    RegisterCompiler.compile(ProgramGenerator.parse(source))
+                            .write(new DataOutputStream(bytes));
+                    return run(RegisterProgram.read(
+                            new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+                }),
+                arguments("flat", (Engine) source ->
+                        run(FlatTree.of(ProgramGenerator.parse(source)))),
+                arguments("loaded flat", (Engine) source -> {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    FlatTree.of(ProgramGenerator.parse(source)).write(new DataOutputStream(bytes));
+                    return run(FlatTree.read(ByteBuffer.wrap(bytes.toByteArray())));
+                }),
+                arguments("batch", (Engine) source -> {
+                    BatchProgram program = BatchCompiler.compile(ProgramGenerator.parse(source));
+                    BatchProgram.Batch batch = program.newBatch();
+                    double[][] columns = new double[program.getScope().size()][1];
+                    for (String name : program.getScope().getNames()) {
+                        batch.output(name, columns[program.getScope().slotOf(name)]);
+                    }
+                    batch.run(1);
+                    return name -> columns[program.getScope().slotOf(name)][0];
+                }),
+                arguments("parallel", (Engine) source -> run(ParallelProgram.compile(
+                        ProgramGenerator.parse(source), ForkJoinPool.commonPool()))));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("engines")
+    void matchesInterpreterOnGeneratedPrograms(String name, Engine engine) throws IOException {
+        ProgramGenerator generator = new ProgramGenerator(1);
+        for (int i = 0; i < 500; i++) {
+            String source = generator.program();
+            ProgramGenerator.assertMatchesInterpreter(source, name, engine.run(source));
+        }
+    }
+
+    private static Engine dispatch(Interpreter.Dispatch dispatch) {
+        return source -> {
+            Interpreter interpreter = new Interpreter(ProgramGenerator.parse(source), dispatch);
+            interpreter.interpret();
+            return interpreter::getVariable;
+        };
+    }
+
+    private static ToDoubleFunction<String> run(Program program) {
+        double[] memory = program.newMemory();
+        program.execute(memory);
+        return name -> memory[program.getScope().slotOf(name)];
+    }
+
+    private static ToDoubleFunction<String> run(RegisterProgram program) {
+        double[] memory = program.run();
+        return name -> program.getVariable(memory, name);
+    }
+}
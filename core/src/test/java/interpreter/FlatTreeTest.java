@@ -0,0 +1,109 @@
+package interpreter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+class FlatTreeTest {
+
+    @Test
+    void parsesPackedTokensLikeTheLexer() {
+        ProgramGenerator generator = new ProgramGenerator(130);
+        for (int i = 0; i < 100; i++) {
+            String source = generator.program();
+            FlatTree fromLexer = FlatTree.parse(new Lexer(source));
+            FlatTree fromPacked = FlatTree.parse(PackedTokens.tokenize(new Lexer(source)).cursor());
+            assertEquals(fromLexer.size(), fromPacked.size());
+            ProgramGenerator.assertMatchesInterpreter(source, "flat",
+                    fromPacked.newContext().run()::get);
+        }
+    }
+
+    @Test
+    void imageReadsBackTheSame() throws IOException {
+        ProgramGenerator generator = new ProgramGenerator(15);
+        for (int i = 0; i < 200; i++) {
+            String source = generator.program();
+            FlatTree tree = FlatTree.of(ProgramGenerator.parse(source));
+            FlatTree copy = FlatTree.read(ByteBuffer.wrap(image(tree)));
+            assertEquals(tree.size(), copy.size());
+            assertEquals(tree.getRoot(), copy.getRoot());
+            assertEquals(tree.getScope().getNames(), copy.getScope().getNames());
+            assertArrayEquals(image(tree), image(copy));
+            ProgramGenerator.assertMatchesInterpreter(source, "loaded flat",
+                    copy.newContext().run()::get);
+        }
+    }
+
+    // Nodes are stored flat, but evaluation and the image still follow the nesting
+    @Test
+    void deeplyNestedExpressionsRunAndReadBack() throws IOException {
+        String source = ProgramGenerator.deepExpressions(1000);
+        FlatTree tree = FlatTree.of(ProgramGenerator.parse(source));
+        ProgramGenerator.assertMatchesInterpreter(source, "flat", tree.newContext().run()::get);
+        FlatTree copy = FlatTree.read(ByteBuffer.wrap(image(tree)));
+        ProgramGenerator.assertMatchesInterpreter(source, "loaded flat",
+                copy.newContext().run()::get);
+    }
+
+    @Test
+    void truncatedImagesAreRejected() throws IOException {
+        byte[] image = image(FlatTree.of(ProgramGenerator.parse(
+                "s = 0\nfor i in 1..10\nif i % 2 == 0\ns = s + i\nelse\ns = s - 1.5\nend\nend")));
+        for (int length = 0; length < image.length; length++) {
+            ByteBuffer truncated = ByteBuffer.wrap(image, 0, length).slice();
+            assertThrows(IOException.class, () -> FlatTree.read(truncated), "length " + length);
+        }
+    }
+
+    // Counts in the header are checked against the bytes that follow before anything is allocated
+    @Test
+    void oversizedCountsAreRejectedWithoutAllocating() throws IOException {
+        byte[] image = image(FlatTree.of(ProgramGenerator.parse("x = 1")));
+        for (int field = 1; field <= 5; field++) {
+            for (int count : new int[] {-1, Integer.MAX_VALUE, 1 << 28}) {
+                ByteBuffer damaged = ByteBuffer.wrap(image.clone());
+                damaged.putInt(4 * field, count);
+                assertThrows(IOException.class, () -> FlatTree.read(damaged), field + ": " + count);
+            }
+        }
+    }
+
+    // Validation keeps every index in range, so a damaged image either fails to load or runs;
+    // a flipped condition can still loop forever, which the budget stops
+    @Test
+    void damagedImagesFailToLoadOrRunSafely() throws IOException {
+        byte[] image = image(FlatTree.of(ProgramGenerator.parse(
+                "s = 0\ni = 0\nwhile i < 10\nif i % 3 == 0\ns = s + i * 2\nelse\ns = s - 1\nend\n" +
+                "i = i + 1\nend")));
+        Random random = new Random(150);
+        for (int i = 0; i < 5000; i++) {
+            byte[] damaged = image.clone();
+            damaged[random.nextInt(damaged.length)] ^= (byte) (1 << random.nextInt(8));
+            FlatTree tree;
+            try {
+                tree = FlatTree.read(ByteBuffer.wrap(damaged));
+            } catch (IOException e) {
+                continue;
+            }
+            try {
+                tree.execute(tree.newMemory(), Budget.iterations(10_000));
+            } catch (BudgetExceededException e) {
+                // Expected for conditions that no longer end the loop
+            }
+        }
+    }
+
+    private static byte[] image(FlatTree tree) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        tree.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,130 @@
+package interpreter;
+
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.ToDoubleFunction;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+// For loop semantics, which every engine implements on its own: the range is evaluated once,
+// the loop runs For.tripCount() times whatever the body assigns, and an empty range leaves the
+// variable alone.
+class ForLoopTest {
+
+    // Runs the source on each engine under the budget and reads its variables back by name
+    private static Map<String, BiFunction<String, Budget, ToDoubleFunction<String>>> engines() {
+        Map<String, BiFunction<String, Budget, ToDoubleFunction<String>>> engines =
+                new LinkedHashMap<>();
+        engines.put("interpreter", (source, budget) -> {
+            AST tree = ProgramGenerator.parse(source);
+            Scope scope = Resolver.resolve(tree);
+            double[] memory = scope.newFrame();
+            new Interpreter(tree, memory, budget).interpret();
+            return name -> memory[scope.slotOf(name)];
+        });
+        engines.put("closure", (source, budget) ->
+                run(ClosureCompiler.compile(ProgramGenerator.parse(source)), budget));
+        engines.put("program", (source, budget) -> run(Program.compile(source), budget));
+        engines.put("flat", (source, budget) ->
+                run(FlatTree.of(ProgramGenerator.parse(source)), budget));
+        engines.put("parallel", (source, budget) ->
+                run(ParallelProgram.compile(ProgramGenerator.parse(source)), budget));
+        engines.put("bytecode", (source, budget) -> {
+            AST tree = ProgramGenerator.parse(source);
+            Scope scope = Resolver.resolve(tree);
+            double[] memory = scope.newFrame();
+            BytecodeCompiler.compile(tree).run(memory, budget);
+            return name -> memory[scope.slotOf(name)];
+        });
+        engines.put("register", (source, budget) -> {
+            RegisterProgram program = RegisterCompiler.compile(ProgramGenerator.parse(source));
+            double[] memory = program.newMemory();
+            program.execute(memory, budget);
+            return name -> program.getVariable(memory, name);
+        });
+        engines.put("specializing", (source, budget) -> {
+            SpecializingInterpreter interpreter = new SpecializingInterpreter(
+                    ProgramGenerator.parse(source));
+            interpreter.setBudget(budget);
+            interpreter.interpret();
+            return interpreter::getVariable;
+        });
+        engines.put("batch", (source, budget) -> {
+            BatchProgram program = BatchCompiler.compile(ProgramGenerator.parse(source));
+            BatchProgram.Batch batch = program.newBatch();
+            Map<String, double[]> outputs = new HashMap<>();
+            for (String name : program.getScope().getNames()) {
+                outputs.put(name, new double[1]);
+                batch.output(name, outputs.get(name));
+            }
+            batch.run(1, budget);
+            return name -> outputs.get(name)[0];
+        });
+        return engines;
+    }
+
+    @Test
+    void variableKeepsTheLastValue() {
+        assertLoop("s = 0\nfor i in 1..10\ns = s + i\nend", "s", 55.0, "i", 10.0);
+        assertLoop("s = 0\nfor i in 0.5..3\ns = s + i\nend", "s", 4.5, "i", 2.5);
+    }
+
+    @Test
+    void emptyRangeLeavesTheVariableAlone() {
+        assertLoop("i = 7\ns = 0\nfor i in 3..2\ns = 1\nend", "i", 7.0, "s", 0.0);
+    }
+
+    // Neither the bound nor the variable changes how often the body runs
+    @Test
+    void bodyAssignmentsDoNotChangeTheTripCount() {
+        assertLoop("s = 0\nn = 5\nfor i in 1..n\nn = n + 1\ni = i * 100\ns = s + i\nend",
+                "s", 1500.0, "n", 10.0, "i", 500.0);
+    }
+
+    @Test
+    void nestedRangesDependOnOuterVariables() {
+        assertLoop("s = 0\nfor i in 1..4\nfor j in i..4\ns = s + i * j\nend\nend",
+                "s", 65.0, "j", 4.0);
+    }
+
+    // Beyond 2^53 i + 1 == i, so a loop testing i <= to would never end; every engine must stop
+    // after 11 iterations, well inside the budget
+    @Test
+    void rangesBeyondTwoToThe53End() {
+        assertLoop("s = 0\nfor i in 9007199254740990..9007199254741000\ns = s + 1\nend", "s", 11.0);
+    }
+
+    @Test
+    void tripCounts() {
+        assertEquals(10, For.tripCount(1, 10));
+        assertEquals(1, For.tripCount(1, 1));
+        assertEquals(0, For.tripCount(3, 2));
+        assertEquals(3, For.tripCount(0.5, 3));
+        assertEquals(2, For.tripCount(-1, 0.5));
+        assertEquals(0, For.tripCount(Double.NaN, 1));
+        assertEquals(0, For.tripCount(1, Double.NaN));
+        assertEquals(11, For.tripCount(9007199254740990.0, 9007199254741000.0));
+        assertEquals(Long.MAX_VALUE, For.tripCount(0, 1e300));
+        assertEquals(Long.MAX_VALUE, For.tripCount(Double.NEGATIVE_INFINITY, 0));
+    }
+
+    private static ToDoubleFunction<String> run(Program program, Budget budget) {
+        double[] memory = program.newMemory();
+        program.execute(memory, budget);
+        return name -> memory[program.getScope().slotOf(name)];
+    }
+
+    private static void assertLoop(String source, Object... expected) {
+        engines().forEach((engine, run) -> {
+            ToDoubleFunction<String> variables = run.apply(source, Budget.iterations(1000));
+            for (int i = 0; i < expected.length; i += 2) {
+                String name = (String) expected[i];
+                assertEquals((double) expected[i + 1], variables.applyAsDouble(name),
+                        () -> engine + " disagrees on " + name + " in\n" + source);
+            }
+        });
+    }
+}
@@ -0,0 +1,119 @@
+package interpreter;
+
+import java.math.BigInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+class IntegersTest {
+    private static final BigInteger MAX = BigInteger.valueOf(Long.MAX_VALUE);
+    private static final BigInteger MIN = BigInteger.valueOf(Long.MIN_VALUE);
+
+    @Test
+    void overflowPromotesToBigInteger() {
+        assertEquals(MAX.add(BigInteger.ONE), Integers.add(Long.MAX_VALUE, 1L));
+        assertEquals(MIN.subtract(BigInteger.ONE), Integers.subtract(Long.MIN_VALUE, 1L));
+        assertEquals(MAX.multiply(BigInteger.TEN), Integers.multiply(Long.MAX_VALUE, 10L));
+        assertEquals(MIN.multiply(MIN), Integers.multiply(Long.MIN_VALUE, Long.MIN_VALUE));
+        assertEquals(MIN.negate(), Integers.negate(Long.MIN_VALUE));
+        assertEquals(MIN.negate(), Integers.divideExact(Long.MIN_VALUE, -1L));
+        assertEquals(0L, Integers.remainder(Long.MIN_VALUE, -1L));
+    }
+
+    @Test
+    void resultsThatFitAreLongsAgain() {
+        Object big = Integers.add(Long.MAX_VALUE, 1L);
+        assertEquals(Long.MAX_VALUE, Integers.subtract(big, 1L));
+        assertEquals(Long.MIN_VALUE, Integers.negate(big));
+        assertEquals(4611686018427387904L, Integers.divideExact(big, 2L));
+        assertEquals(8L, Integers.remainder(big, 10L));
+        assertEquals(Long.MIN_VALUE, Integers.valueOf(MIN));
+        assertEquals(MAX.add(BigInteger.ONE), Integers.valueOf(MAX.add(BigInteger.ONE)));
+    }
+
+    @Test
+    void longArithmeticStaysLong() {
+        assertEquals(Long.MAX_VALUE, Integers.add(Long.MAX_VALUE - 1, 1L));
+        assertEquals(Long.MIN_VALUE, Integers.subtract(-1L, Long.MAX_VALUE));
+        assertEquals(-6L, Integers.multiply(-2L, 3L));
+        assertEquals(-3L, Integers.divideExact(9L, -3L));
+        assertEquals(-1L, Integers.remainder(-7L, 3L));
+    }
+
+    // Inexact quotients and zero divisors are left to double arithmetic
+    @Test
+    void inexactDivisionAndZeroDivisorsReturnNull() {
+        assertNull(Integers.divideExact(7L, 2L));
+        assertNull(Integers.divideExact(7L, 0L));
+        assertNull(Integers.divideExact(MAX.add(BigInteger.ONE), 3L));
+        assertNull(Integers.divideExact(MAX.add(BigInteger.ONE), 0L));
+        assertNull(Integers.remainder(7L, 0L));
+        assertNull(Integers.remainder(MAX.add(BigInteger.ONE), 0L));
+    }
+
+    @Test
+    void comparesAcrossRepresentations() {
+        Object big = Integers.add(Long.MAX_VALUE, 1L);
+        assertEquals(1, Integer.signum(Integers.compare(big, Long.MAX_VALUE)));
+        assertEquals(-1, Integer.signum(Integers.compare(Integers.negate(big), -1L)));
+        assertEquals(-1, Integer.signum(Integers.compare(Long.MIN_VALUE, big)));
+        assertEquals(0, Integers.compare(Integers.subtract(big, 1L), Long.MAX_VALUE));
+    }
+
+    // The same multiply node goes from long to BigInteger part way through the loop
+    @Test
+    void longNodesMoveToBigIntegerOnOverflow() {
+        SpecializingInterpreter interpreter = run(
+                "x = 1\ni = 0\nwhile i < 100\nx = x * 3\ni = i + 1\nend");
+        assertEquals(BigInteger.valueOf(3).pow(100), interpreter.getValue("x"));
+    }
+
+    // Results that fit a long again come back as Long
+    @Test
+    void bigIntegerResultsThatFitAreLongs() {
+        SpecializingInterpreter interpreter = run(
+                "i = 0\nwhile i < 4\nx = 9223372036854775805 + i\ny = x - i\ni = i + 1\nend");
+        assertEquals(new BigInteger("9223372036854775808"), interpreter.getValue("x"));
+        assertEquals(9223372036854775805L, interpreter.getValue("y"));
+    }
+
+    // 30! needs a BigInteger; the scripts see exact results where doubles would round
+    @Test
+    void scriptsComputeExactly() {
+        SpecializingInterpreter interpreter = run("n = 1\ni = 1\nwhile i < 31\nn = n * i\n" +
+                "i = i + 1\nend\nk = n % 1000000007\nb = n > 9223372036854775807\nd = n - n + 5\n" +
+                "h = 99999999999999999999 + 1");
+        BigInteger factorial = BigInteger.ONE;
+        for (int i = 1; i <= 30; i++) {
+            factorial = factorial.multiply(BigInteger.valueOf(i));
+        }
+        assertEquals(factorial, interpreter.getValue("n"));
+        assertEquals(factorial.mod(BigInteger.valueOf(1000000007)).longValue(),
+                interpreter.getValue("k"));
+        assertEquals(1L, interpreter.getValue("b"));
+        assertEquals(5L, interpreter.getValue("d"));
+        assertEquals(new BigInteger("100000000000000000000"), interpreter.getValue("h"));
+    }
+
+    // In the second iteration y is a long and the double nodes for x + y and x == ... fail their
+    // guard on the right operand; x must reach the generic path as the exact long, not rounded
+    // through the double it was widened to
+    @Test
+    void failedGuardsKeepLongOperandsExact() {
+        SpecializingInterpreter interpreter = run("x = 9007199254740993\ni = 0\nwhile i < 2\n" +
+                "if i == 0\ny = 0.5\nelse\ny = 0\nend\nz = x + y\n" +
+                "c = x == (y + 9007199254740993)\ni = i + 1\nend");
+        assertEquals(9007199254740993L, interpreter.getValue("z"));
+        assertEquals(1L, interpreter.getValue("c"));
+    }
+
+    private static SpecializingInterpreter run(String source) {
+        SpecializingInterpreter interpreter = new SpecializingInterpreter(
+                ProgramGenerator.parse(source));
+        interpreter.interpret();
+        return interpreter;
+    }
+}
@@ -0,0 +1,31 @@
+package interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+class InterpreterTest {
+
+    @Test
+    void runsAgainstCallerMemory() {
+        AST tree = ProgramGenerator.parse("y = x * 2");
+        Scope scope = Resolver.resolve(tree);
+        double[] memory = scope.newFrame();
+        memory[scope.slotOf("x")] = 21;
+        new Interpreter(tree, memory).interpret();
+        assertEquals(42.0, memory[scope.slotOf("y")]);
+    }
+
+    // The primitive path evaluates by recursion on the tree, like the boxed one
+    @Test
+    void primitiveDispatchRunsDeeplyNestedExpressions() {
+        String source = ProgramGenerator.deepExpressions(1000);
+        Interpreter interpreter = new Interpreter(ProgramGenerator.parse(source),
+                Interpreter.Dispatch.PRIMITIVE);
+        interpreter.interpret();
+        ProgramGenerator.assertMatchesInterpreter(source, "primitive", interpreter::getVariable);
+        assertEquals(503.0, interpreter.getVariable("l"));
+        assertEquals(3.0, interpreter.getVariable("r"));
+    }
+}
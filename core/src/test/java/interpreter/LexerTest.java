@@ -0,0 +1,254 @@
+package interpreter;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+// Every way of feeding the Lexer must give the token stream new Lexer(String) gives, however the
+// input is split into reads, buffer refills and mapped windows
+class LexerTest {
+    private static final int BUFFER_SIZE = 8192;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void everySourceGivesTheStringTokens() throws IOException {
+        StringBuilder source = new StringBuilder();
+        ProgramGenerator generator = new ProgramGenerator(9);
+        while (source.length() < 4 * BUFFER_SIZE) {
+            source.append(generator.program())
+                    .append("# comment ünïcödé\ns = \"😀 é 日本\"\nnaïve = 1.25e\n");
+        }
+        assertSameTokens(source.toString());
+    }
+
+    // The boundary falls at each position of the tokens after the padding, including inside
+    // two-char operators, identifiers, numbers and strings
+    @Test
+    void tokensSplitByARefillAreWhole() throws IOException {
+        String tokens = "identifier == 123456.789 .. 98765432109876543210 \"str\" <= x";
+        for (int padding = BUFFER_SIZE - tokens.length(); padding <= BUFFER_SIZE; padding++) {
+            assertSameTokens(" ".repeat(padding - 1) + "\n" + tokens);
+        }
+    }
+
+    // Four-byte characters at every offset, so small windows end inside their bytes and some
+    // one-char reads must hand out a surrogate pair half at a time
+    @Test
+    void mappedWindowsSplitInsideSurrogatePairs() throws IOException {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            source.append("s").append(i).append(" = \"").append("a".repeat(i % 5))
+                    .append("😀é😀😀\"\n");
+        }
+        Path file = write(source.toString());
+        for (long window = MappedFileReader.MIN_WINDOW_SIZE; window < 24; window++) {
+            try (FileChannel channel = FileChannel.open(file)) {
+                StringBuilder chars = new StringBuilder();
+                MappedFileReader reader = new MappedFileReader(channel, StandardCharsets.UTF_8,
+                        window);
+                char[] one = new char[1];
+                while (reader.read(one, 0, 1) > 0) {
+                    chars.append(one[0]);
+                }
+                assertEquals(source.toString(), chars.toString(), "window " + window);
+            }
+            try (FileChannel channel = FileChannel.open(file)) {
+                assertEquals(tokens(new Lexer(source.toString())), tokens(new Lexer(
+                        new MappedFileReader(channel, StandardCharsets.UTF_8, window))));
+            }
+        }
+    }
+
+    @Test
+    void emptyInputIsJustEof() throws IOException {
+        assertSameTokens("");
+        try (FileChannel channel = FileChannel.open(write(""))) {
+            assertEquals(-1, new MappedFileReader(channel, StandardCharsets.UTF_8)
+                    .read(new char[8], 0, 8));
+        }
+        assertEquals(List.of("EOF null 1 0"), tokens(new Lexer("")));
+    }
+
+    @Test
+    void malformedUtf8IsAnError() throws IOException {
+        Path file = directory.resolve("bad.txt");
+        Files.write(file, new byte[] {'x', ' ', '=', ' ', (byte) 0xC3});
+        try (FileChannel channel = FileChannel.open(file)) {
+            assertThrows(UncheckedIOException.class, () -> tokens(new Lexer(channel)));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new MappedFileReader(null,
+                StandardCharsets.UTF_8, MappedFileReader.MIN_WINDOW_SIZE - 1));
+    }
+
+    // The fast path divides an exact mantissa by an exact power of ten; anything longer must fall
+    // back to parsing the spelling, so every literal converts as Double.parseDouble does
+    @Test
+    void realLiteralsMatchParseDouble() {
+        List<String> literals = new ArrayList<>(List.of("0.1", "1.", "0.", "00.5",
+                "9007199254740992.0", "9007199254740993.0", "9007199254740993.",
+                "18014398509481985.5", "9223372036854775807.5", "92233720368547758079.",
+                "1.0000000000000000000000001", "0.30000000000000000000000000000000000000001",
+                "4.9406564584124654", "123456789012345.67", "2.2250738585072011",
+                "179769313486231570000000000000000000000000.0",
+                "0.0000000000000000000000000000000000000000000001"));
+        Random random = new Random(10);
+        for (int i = 0; i < 20000; i++) {
+            literals.add(digits(random, 1 + random.nextInt(25)) + "." +
+                    digits(random, random.nextInt(25)));
+        }
+        for (String literal : literals) {
+            Token token = new Lexer(literal).getNextToken();
+            assertEquals(TokenType.REAL, token.type, literal);
+            assertEquals(Double.parseDouble(literal), token.value, literal);
+        }
+    }
+
+    @Test
+    void integerLiteralsAreExact() {
+        List<String> literals = new ArrayList<>(List.of("0", "007", "2147483647", "2147483648",
+                "9007199254740993", "9223372036854775807", "9223372036854775808",
+                "99999999999999999999999999"));
+        Random random = new Random(11);
+        for (int i = 0; i < 5000; i++) {
+            literals.add(digits(random, 1 + random.nextInt(30)));
+        }
+        for (String literal : literals) {
+            Token token = new Lexer(literal).getNextToken();
+            assertEquals(TokenType.INTEGER, token.type, literal);
+            assertEquals(new BigInteger(literal), new BigInteger(token.value.toString()), literal);
+            // Integer where it fits, else Long, else BigInteger
+            assertEquals(new BigInteger(literal).bitLength() < 32 ? Integer.class
+                    : new BigInteger(literal).bitLength() < 64 ? Long.class : BigInteger.class,
+                    token.value.getClass(), literal);
+        }
+    }
+
+    // 1..5 is a range, so the dot is not part of the 1
+    @Test
+    void aDotBeforeARangeIsNotAFraction() {
+        assertEquals(List.of("INTEGER 1 1 0", "RANGE .. 1 1", "INTEGER 5 1 3", "EOF null 1 4"),
+                tokens(new Lexer("1..5")));
+    }
+
+    // Names that share prefixes, differ only in case or share a hash code are all distinct; every
+    // occurrence of a name is the same Token, before and after the table grows
+    @Test
+    void symbolTableInternsEachSpellingOnce() {
+        List<String> names = new ArrayList<>(List.of("a", "ab", "abc", "abcd", "A", "Ab", "aB",
+                "AB", "Aa", "BB", "AaAa", "BBBB", "AaBB", "BBAa"));
+        for (int i = 0; i < 5000; i++) {
+            names.add("v" + i);
+        }
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        SymbolTable table = new SymbolTable();
+        Map<String, Token> first = new LinkedHashMap<>();
+        for (String name : names) {
+            first.put(name, intern(table, name));
+        }
+        Set<Token> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        distinct.addAll(first.values());
+        assertEquals(names.size(), distinct.size());
+        for (String name : names) {
+            Token token = intern(table, name);
+            assertSame(first.get(name), token, name);
+            assertEquals(TokenType.ID, token.type);
+            assertSame(name.intern(), token.value);
+        }
+    }
+
+    @Test
+    void lexerReturnsOneTokenPerName() {
+        Lexer lexer = new Lexer("count = count + counter\ncount = Count");
+        List<Token> ids = new ArrayList<>();
+        for (Token token = lexer.getNextToken(); token.type != TokenType.EOF;
+                token = lexer.getNextToken()) {
+            if (token.type == TokenType.ID) {
+                ids.add(token);
+            }
+        }
+        assertSame(ids.get(0), ids.get(1));
+        assertSame(ids.get(0), ids.get(3));
+        assertNotSame(ids.get(0), ids.get(2));
+        assertNotSame(ids.get(0), ids.get(4));
+    }
+
+    private static Token intern(SymbolTable table, String name) {
+        return table.intern(name.toCharArray(), name.length(), name.hashCode());
+    }
+
+    private static String digits(Random random, int count) {
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            digits.append((char) ('0' + random.nextInt(10)));
+        }
+        return digits.toString();
+    }
+
+    private void assertSameTokens(String source) throws IOException {
+        List<String> expected = tokens(new Lexer(source));
+        assertEquals(expected, tokens(new Lexer(CharBuffer.wrap(source))), "CharBuffer");
+        assertEquals(expected, tokens(new Lexer(new Trickle(source))), "Reader");
+        Path file = write(source);
+        try (FileChannel channel = FileChannel.open(file)) {
+            assertEquals(expected, tokens(new Lexer(channel)), "FileChannel");
+        }
+        try (FileChannel channel = FileChannel.open(file)) {
+            assertEquals(expected, tokens(new Lexer(new MappedFileReader(channel,
+                    StandardCharsets.UTF_8, 4099))), "small windows");
+        }
+    }
+
+    private Path write(String source) throws IOException {
+        return Files.writeString(Files.createTempFile(directory, "script", ".txt"), source);
+    }
+
+    // Type, value, line and char offset of each token up to and including EOF
+    private static List<String> tokens(Lexer lexer) {
+        List<String> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = lexer.getNextToken();
+            tokens.add(token.type + " " + token.value + " " + lexer.getLine() + " " +
+                    lexer.getTokenOffset());
+        } while (token.type != TokenType.EOF);
+        return tokens;
+    }
+
+    // Hands out one to seven chars per read, so refills stop at every kind of position
+    private static class Trickle extends Reader {
+        private final String text;
+        private int position;
+
+        Trickle(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (position == text.length()) {
+                return -1;
+            }
+            int count = Math.min(Math.min(len, 1 + position % 7), text.length() - position);
+            text.getChars(position, position + count, cbuf, off);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package interpreter;
+
+import java.math.BigInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class OptimizerTest {
+
+    @Test
+    void optimizedProgramsKeepIntegerResults() {
+        ProgramGenerator generator = new ProgramGenerator(70, true);
+        for (int i = 0; i < 300; i++) {
+            String source = generator.program();
+            SpecializingInterpreter plain = new SpecializingInterpreter(ProgramGenerator.parse(source));
+            SpecializingInterpreter optimized = new SpecializingInterpreter(
+                    new Optimizer().optimize(ProgramGenerator.parse(source)));
+            plain.interpret();
+            optimized.interpret();
+            for (String name : Resolver.resolve(ProgramGenerator.parse(source)).getNames()) {
+                assertEquals(plain.getValue(name), optimized.getValue(name), name + " in\n" + source);
+            }
+        }
+    }
+
+    @Test
+    void foldsIntegerLiteralsExactly() {
+        assertEquals(1, foldedValue("9007199254740993 - 9007199254740992"));
+        assertEquals(new BigInteger("9223372036854775808"), foldedValue("9223372036854775807 + 1"));
+        assertEquals(2147483648L, foldedValue("2147483647 + 1"));
+        assertEquals(4, foldedValue("8 / 2"));
+        assertEquals(3.5, foldedValue("7 / 2"));
+        assertEquals(Double.NaN, foldedValue("7 % 0"));
+        assertEquals(1, foldedValue("1.5 > 1"));
+        assertEquals(2.5, foldedValue("1.5 + 1"));
+    }
+
+    @Test
+    void keepsNegativeZero() {
+        for (String expression : new String[] {"-0", "0 * -5", "-5 % 5", "0 / -3"}) {
+            Interpreter interpreter = new Interpreter(new Optimizer().optimize(
+                    ProgramGenerator.parse("x = 1 / (" + expression + ")")));
+            interpreter.interpret();
+            assertEquals(Double.NEGATIVE_INFINITY, interpreter.getVariable("x"), expression);
+        }
+    }
+
+    @Test
+    void removesDeadCodeAndHoistsInvariants() {
+        Optimizer optimizer = new Optimizer();
+        AST tree = optimizer.optimize(ProgramGenerator.parse(
+                "s = 0\nk = 3\nfor i in 1..10\ns = s + k * 2 + i\nend\nfor j in 5..1\ns = 0\nend\n" +
+                "if 1 < 0\ns = 1\nelse\nt = 2\nend"));
+        assertEquals(1, optimizer.getExpressionsHoisted());
+        assertTrue(optimizer.getNodesRemoved() > 0);
+        Interpreter interpreter = new Interpreter(tree);
+        interpreter.interpret();
+        assertEquals(115.0, interpreter.getVariable("s"));
+        assertEquals(2.0, interpreter.getVariable("t"));
+    }
+
+    // Both nestings survive a pass over them, and a constant one folds to a single literal
+    @Test
+    void optimizesDeeplyNestedExpressions() {
+        String source = ProgramGenerator.deepExpressions(1000);
+        Interpreter interpreter = new Interpreter(new Optimizer().optimize(
+                ProgramGenerator.parse(source)));
+        interpreter.interpret();
+        ProgramGenerator.assertMatchesInterpreter(source, "optimized", interpreter::getVariable);
+        assertEquals(1000, foldedValue("1" + " + 1".repeat(999)));
+        assertEquals(0, foldedValue("1 - (".repeat(999) + "1" + ")".repeat(999)));
+    }
+
+    private static Object foldedValue(String expression) {
+        Compound tree = (Compound) new Optimizer().optimize(ProgramGenerator.parse("x = " + expression));
+        return ((Num) ((Assign) tree.getChildren().get(0)).getRight()).getValue();
+    }
+}
@@ -0,0 +1,79 @@
+package interpreter;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+class ParallelProgramTest {
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdown();
+    }
+
+    // Both loops wait for the assignments before them, then share the second stage
+    @Test
+    void independentLoopsRunSideBySide() {
+        ParallelProgram program = compile(
+                "a = 0\ni = 0\nwhile i < 2000\ni = i + 1\na = a + i\nend\n" +
+                "b = 0\nj = 0\nwhile j < 2000\nj = j + 1\nb = b - j\nend");
+        assertEquals(2, program.getStageCount());
+        assertEquals(1, program.getParallelStageCount());
+        assertRepeatedly(program, "a", 2001000.0);
+        assertRepeatedly(program, "b", -2001000.0);
+    }
+
+    // The second loop reads what the first one writes
+    @Test
+    void readAfterWriteWaits() {
+        ParallelProgram program = compile(
+                "a = 0\ni = 0\nwhile i < 2000\ni = i + 1\na = a + 1\nend\n" +
+                "b = 0\nj = 0\nwhile j < 2000\nj = j + 1\nb = b + a\nend");
+        assertEquals(3, program.getStageCount());
+        assertEquals(0, program.getParallelStageCount());
+        assertRepeatedly(program, "b", 4000000.0);
+    }
+
+    // The second loop overwrites what the first one still reads
+    @Test
+    void writeAfterReadWaits() {
+        ParallelProgram program = compile(
+                "s = 0\ni = 0\nwhile i < 2000\ni = i + 1\ns = s + a\nend\n" +
+                "j = 0\nwhile j < 2000\nj = j + 1\na = j\nend");
+        assertEquals(0, program.getParallelStageCount());
+        assertRepeatedly(program, "s", 0.0);
+        assertRepeatedly(program, "a", 2000.0);
+    }
+
+    // Both loops write x, the later one must have the last word
+    @Test
+    void writeAfterWriteWaits() {
+        ParallelProgram program = compile(
+                "i = 0\nwhile i < 2000\ni = i + 1\nx = i\nend\n" +
+                "j = 0\nwhile j < 1000\nj = j + 1\nx = j\nend");
+        assertEquals(3, program.getStageCount());
+        assertEquals(0, program.getParallelStageCount());
+        assertRepeatedly(program, "x", 1000.0);
+    }
+
+    private static ParallelProgram compile(String source) {
+        return ParallelProgram.compile(ProgramGenerator.parse(source), pool);
+    }
+
+    private static void assertRepeatedly(ParallelProgram program, String name, double expected) {
+        for (int run = 0; run < 50; run++) {
+            assertEquals(expected, program.newContext().run().get(name), name + " in run " + run);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package interpreter;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+// The precedence-climbing Parser against the recursive-descent expr() / term() / factor() it
+// replaced, kept here as the reference: both must build the same tree, or both reject the input.
+class ParserTest {
+    private static final String[] OPERATORS = {
+        "+", "-", "*", "/", "%", "==", "!=", "<", "<=", ">", ">="
+    };
+    private static final String[] TOKENS = {
+        "+", "-", "*", "/", "%", "==", "!=", "<", "<=", ">", ">=", "(", ")", "1", "2.5", "x", "y"
+    };
+
+    @Test
+    void buildsTheSameTreesAsRecursiveDescent() {
+        Random random = new Random(12);
+        for (int i = 0; i < 20000; i++) {
+            assertSameTree(expression(random, 4));
+        }
+    }
+
+    @Test
+    void rejectsTheSameInputsAsRecursiveDescent() {
+        Random random = new Random(120);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder tokens = new StringBuilder();
+            for (int length = 1 + random.nextInt(8); length > 0; length--) {
+                tokens.append(TOKENS[random.nextInt(TOKENS.length)]).append(' ');
+            }
+            assertSameTree(tokens.toString());
+        }
+    }
+
+    private static void assertSameTree(String expression) {
+        assertEquals(parse(() -> new ReferenceParser(new Lexer(expression)).parse()),
+                parse(() -> assignedExpression("x = " + expression)), expression);
+    }
+
+    // Tokens left after the expression would start another statement, so those count as rejected
+    private static AST assignedExpression(String source) {
+        List<AST> statements = ((Compound) ProgramGenerator.parse(source)).getChildren();
+        if (statements.size() != 1) {
+            throw new RuntimeException("Invalid syntax");
+        }
+        return ((Assign) statements.get(0)).getRight();
+    }
+
+    private static String parse(Supplier<AST> parser) {
+        try {
+            return parser.get().toString();
+        } catch (RuntimeException e) {
+            return "rejected";
+        }
+    }
+
+    private static String expression(Random random, int depth) {
+        switch (depth == 0 ? 0 : random.nextInt(4)) {
+            case 0:
+                return random.nextBoolean() ? String.valueOf(random.nextInt(10))
+                        : String.valueOf("abc".charAt(random.nextInt(3)));
+            case 1:
+                return (random.nextBoolean() ? "-" : "+") + expression(random, depth - 1);
+            case 2:
+                return "(" + expression(random, depth - 1) + ")";
+            default: {
+                String operator = OPERATORS[random.nextInt(OPERATORS.length)];
+                return expression(random, depth - 1) + " " + operator + " " +
+                        expression(random, depth - 1);
+            }
+        }
+    }
+
+    // Expression grammar of the parser before precedence climbing
+    private static class ReferenceParser {
+        private static final Set<TokenType> MULTIPLICATIVE = EnumSet.of(TokenType.MUL,
+                TokenType.DIV, TokenType.MOD, TokenType.EQUAL, TokenType.NOT, TokenType.LEST,
+                TokenType.GRET, TokenType.LESE, TokenType.GRE);
+
+        private final Lexer lexer;
+        private Token currentToken;
+
+        ReferenceParser(Lexer lexer) {
+            this.lexer = lexer;
+            this.currentToken = lexer.getNextToken();
+        }
+
+        AST parse() {
+            AST node = expr();
+            eat(TokenType.EOF);
+            return node;
+        }
+
+        private void eat(TokenType type) {
+            if (currentToken.type != type) {
+                throw new RuntimeException("Invalid syntax");
+            }
+            currentToken = lexer.getNextToken();
+        }
+
+        private AST expr() {
+            AST node = term();
+            while (currentToken.type == TokenType.PLUS || currentToken.type == TokenType.MINUS) {
+                Token token = currentToken;
+                eat(token.type);
+                node = new BinOp(node, token, term());
+            }
+            return node;
+        }
+
+        private AST term() {
+            AST node = factor();
+            while (MULTIPLICATIVE.contains(currentToken.type)) {
+                Token token = currentToken;
+                eat(token.type);
+                node = new BinOp(node, token, factor());
+            }
+            return node;
+        }
+
+        private AST factor() {
+            Token token = currentToken;
+            switch (token.type) {
+                case INTEGER:
+                case REAL:
+                case STR:
+                    eat(token.type);
+                    return new Num(token);
+                case PLUS:
+                case MINUS:
+                    eat(token.type);
+                    return new UnaryOp(token, factor());
+                case LPAREN: {
+                    eat(TokenType.LPAREN);
+                    AST result = expr();
+                    eat(TokenType.RPAREN);
+                    return result;
+                }
+                case ID:
+                    eat(TokenType.ID);
+                    return new Var(token);
+                default:
+                    throw new RuntimeException("Invalid syntax");
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package interpreter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class ProfilerTest {
+    private static final String LOOP = "s = 0\ni = 0\nwhile i < 10\ns = s + i\ni = i + 1\nend";
+
+    @Test
+    void countsEveryNodeWithTableDispatch() {
+        Profiler profiler = profile(LOOP);
+        Map<String, Long> counts = new HashMap<>();
+        for (Profiler.Site site : profiler.hotSpots()) {
+            counts.merge(site.getLine() + " " + site.describe(), site.getCount(), Long::sum);
+        }
+        assertEquals(1L, counts.get("1 ASSIGN s"));
+        assertEquals(1L, counts.get("3 WHILE"));
+        assertEquals(11L, counts.get("3 BIN_OP LEST"));
+        assertEquals(11L, counts.get("3 VAR i"));
+        assertEquals(10L, counts.get("4 ASSIGN s"));
+        assertEquals(10L, counts.get("4 BIN_OP PLUS"));
+        assertEquals(10L, counts.get("4 VAR s"));
+        assertEquals(10L, counts.get("5 ASSIGN i"));
+    }
+
+    @Test
+    void loopsReportTheirIterations() {
+        Map<Integer, Long> iterations = new HashMap<>();
+        Profiler profiler = profile(LOOP + "\nj = 0\nwhile j < 3\nj = j + 1\nend");
+        for (Profiler.Site loop : profiler.hotLoops()) {
+            assertEquals(1, loop.getCount());
+            iterations.put(loop.getLine(), loop.getIterations());
+        }
+        assertEquals(Map.of(3, 10L, 8, 3L), iterations);
+    }
+
+    // Self time excludes nested nodes, so the self times of all nodes add up to the root's total
+    @Test
+    void selfTimesAddUpToTheTotal() {
+        List<Profiler.Site> sites = profile(LOOP).hotSpots();
+        long self = 0;
+        long root = 0;
+        for (int i = 0; i < sites.size(); i++) {
+            Profiler.Site site = sites.get(i);
+            assertTrue(site.getSelfNanos() <= site.getTotalNanos(), site.describe());
+            if (i > 0) {
+                assertTrue(sites.get(i - 1).getSelfNanos() >= site.getSelfNanos());
+            }
+            self += site.getSelfNanos();
+            if (site.describe().equals("COMPOUND")) {
+                root = site.getTotalNanos();
+            }
+        }
+        assertEquals(root, self);
+    }
+
+    @Test
+    void hotLinesSumNodesPerLine() {
+        Map<Long, Long> counts = new HashMap<>();
+        for (long[] line : profile(LOOP).hotLines()) {
+            counts.put(line[0], line[1]);
+        }
+        // Line 3 is the while itself, its condition i < 10 evaluated 11 times and its three nodes
+        assertEquals(Map.of(1L, 3L, 2L, 2L, 3L, 34L, 4L, 40L, 5L, 40L), counts);
+    }
+
+    @Test
+    void reportListsLinesAndLoops() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        profile(LOOP).report(new PrintStream(bytes, true), 10);
+        String text = bytes.toString();
+        List<String> lines = Arrays.asList(text.split("\\R"));
+        assertTrue(lines.get(0).trim().startsWith("line"), text);
+        // One row per line of the script, then the loop on line 3: 1 entry, 10 iterations
+        assertEquals(5, lines.stream()
+                .filter(line -> line.matches(" +\\d+ +\\d+ +[\\d.,]+ +[\\d.,]+%")).count(), text);
+        assertTrue(lines.stream().anyMatch(line -> line.matches(" +3 +1 +10 .*")), text);
+    }
+
+    // The outer loop is cut short in its third iteration, inside the inner loop's fifth
+    @Test
+    void loopsCutShortByTheBudgetReportTheirIterations() {
+        Profiler profiler = new Profiler();
+        Interpreter interpreter = new Interpreter(ProgramGenerator.parse(
+                "i = 0\nwhile i < 10\nfor j in 1..10\nx = j\nend\ni = i + 1\nend"),
+                Interpreter.Dispatch.TABLE, profiler);
+        interpreter.setBudget(Budget.iterations(27));
+        assertThrows(BudgetExceededException.class, interpreter::interpret);
+        Map<Integer, Long> iterations = new HashMap<>();
+        for (Profiler.Site loop : profiler.hotLoops()) {
+            iterations.put(loop.getLine(), loop.getIterations());
+        }
+        assertEquals(Map.of(2, 3L, 3, 24L), iterations);
+    }
+
+    @Test
+    void reflectiveDispatchCannotBeProfiled() {
+        assertThrows(IllegalArgumentException.class, () -> new Interpreter(
+                ProgramGenerator.parse(LOOP), Interpreter.Dispatch.REFLECTIVE, new Profiler()));
+    }
+
+    private static Profiler profile(String source) {
+        Profiler profiler = new Profiler();
+        new Interpreter(ProgramGenerator.parse(source), Interpreter.Dispatch.TABLE, profiler)
+                .interpret();
+        return profiler;
+    }
+}
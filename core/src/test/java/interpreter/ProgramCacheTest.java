@@ -0,0 +1,130 @@
+package interpreter;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class ProgramCacheTest {
+    // Five characters each, so a cache of weight 10 holds two
+    private static final String A = "a = 1", B = "b = 2", C = "c = 3";
+
+    private final AtomicInteger compiles = new AtomicInteger();
+
+    private ProgramCache<Object> cache(long maxWeight) {
+        return new ProgramCache<>(maxWeight, tree -> {
+            compiles.incrementAndGet();
+            return new Object();
+        });
+    }
+
+    @Test
+    void repeatedSourcesAreCompiledOnce() {
+        ProgramCache<Object> cache = cache(100);
+        Object program = cache.get(A);
+        assertSame(program, cache.get(A));
+        assertSame(program, cache.get(A));
+        assertEquals(1, compiles.get());
+        assertCounts(cache, 2, 1, 0);
+        assertEquals(5, cache.getWeight());
+    }
+
+    // Reading A makes B the least recently used, so C evicts B
+    @Test
+    void evictsTheLeastRecentlyUsedEntry() {
+        ProgramCache<Object> cache = cache(10);
+        Object a = cache.get(A);
+        Object b = cache.get(B);
+        cache.get(A);
+        cache.get(C);
+        assertCounts(cache, 1, 3, 1);
+        assertEquals(2, cache.size());
+        assertEquals(10, cache.getWeight());
+        assertSame(a, cache.get(A));
+        assertNotSame(b, cache.get(B));
+        assertCounts(cache, 2, 4, 2);
+        assertEquals(4, compiles.get());
+    }
+
+    @Test
+    void weightNeverExceedsTheLimit() {
+        ProgramCache<Object> cache = cache(12);
+        for (int i = 0; i < 100; i++) {
+            cache.get("x = " + i % 17);
+            assertTrue(cache.getWeight() <= 12, cache::toString);
+        }
+        assertEquals(cache.getMisses() - cache.size(), cache.getEvictions());
+    }
+
+    // The heavy program is not kept and evicts nothing
+    @Test
+    void programsHeavierThanTheCacheAreReturnedButNotRetained() {
+        ProgramCache<Object> cache = cache(10);
+        Object a = cache.get(A);
+        String heavy = "x = 1 + 2 + 3";
+        Object first = cache.get(heavy);
+        assertNotNull(first);
+        assertNotSame(first, cache.get(heavy));
+        assertSame(a, cache.get(A));
+        assertEquals(1, cache.size());
+        assertEquals(5, cache.getWeight());
+        assertCounts(cache, 1, 3, 0);
+    }
+
+    @Test
+    void clearDropsEntriesButKeepsCounts() {
+        ProgramCache<Object> cache = cache(100);
+        cache.get(A);
+        cache.get(A);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+        cache.get(A);
+        assertCounts(cache, 1, 2, 0);
+    }
+
+    // Both threads are compiling at once, so both miss; the later one returns the earlier one's
+    // program and its own is dropped
+    @Test
+    void concurrentMissesCompileTwiceAndShareOneProgram() throws Exception {
+        CyclicBarrier bothCompiling = new CyclicBarrier(2);
+        ProgramCache<Object> cache = new ProgramCache<>(100, tree -> {
+            try {
+                bothCompiling.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                throw new IllegalStateException(e);
+            }
+            compiles.incrementAndGet();
+            return new Object();
+        });
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> first = threads.submit(() -> cache.get(A));
+            Future<Object> second = threads.submit(() -> cache.get(A));
+            assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        } finally {
+            threads.shutdown();
+        }
+        assertEquals(2, compiles.get());
+        assertCounts(cache, 0, 2, 0);
+        assertEquals(1, cache.size());
+        assertEquals(5, cache.getWeight());
+    }
+
+    @Test
+    void keysAreSha256OfTheSource() {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                ProgramCache.key("abc"));
+        assertThrows(IllegalArgumentException.class, () -> cache(0));
+    }
+
+    private static void assertCounts(ProgramCache<?> cache, long hits, long misses,
+            long evictions) {
+        assertEquals(hits, cache.getHits(), "hits");
+        assertEquals(misses, cache.getMisses(), "misses");
+        assertEquals(evictions, cache.getEvictions(), "evictions");
+    }
+}
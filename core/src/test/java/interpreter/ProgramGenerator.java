@@ -0,0 +1,161 @@
+package interpreter;
+
+import java.util.*;
+import java.util.function.ToDoubleFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+// Random scripts for differential tests: each engine must leave every variable with the value the
+// Interpreter gives it. Programs always terminate: while loops run on counters the generated
+// statements never assign, and for loops cover small ranges.
+// A bounded generator takes every assignment % 1000, so integer values stay far below 2^53 and
+// engines with exact integers agree with the double engines.
+class ProgramGenerator {
+    private static final String[] VARIABLES = {"a", "b", "c", "d"};
+    private static final String[] OPERATORS = {
+        "+", "-", "*", "/", "%", "==", "!=", "<", "<=", ">", ">="
+    };
+    private static final int MAX_DEPTH = 2;
+
+    private final Random random;
+    private final boolean bounded;
+    private final List<String> readable = new ArrayList<>();
+    private StringBuilder out;
+    private int loops;
+
+    ProgramGenerator(long seed) {
+        this(seed, false);
+    }
+
+    ProgramGenerator(long seed, boolean bounded) {
+        this.random = new Random(seed);
+        this.bounded = bounded;
+    }
+
+    public String program() {
+        out = new StringBuilder();
+        loops = 0;
+        readable.clear();
+        readable.addAll(Arrays.asList(VARIABLES));
+        int statements = 1 + random.nextInt(6);
+        for (int i = 0; i < statements; i++) {
+            statement(0);
+        }
+        return out.toString();
+    }
+
+    static AST parse(String source) {
+        return new Parser(new Lexer(source)).parse();
+    }
+
+    // An expression nested depth deep on the left (x + x - 2 + x - 2 ...) and one nested depth
+    // deep on the right (x - (x - (x ...))). Both read x, so nothing folds to a constant.
+    static String deepExpressions(int depth) {
+        return "x = 3\nl = x" + " + x - 2".repeat(depth / 2) + "\nr = " +
+                "x - (".repeat(depth) + "x" + ")".repeat(depth) + "\n";
+    }
+
+    // Every variable of the script, read from the engine by name, against the Interpreter
+    static void assertMatchesInterpreter(String source, String engine,
+                                         ToDoubleFunction<String> variables) {
+        Interpreter interpreter = new Interpreter(parse(source));
+        interpreter.interpret();
+        for (String name : Resolver.resolve(parse(source)).getNames()) {
+            assertEquals(interpreter.getVariable(name), variables.applyAsDouble(name),
+                    () -> engine + " disagrees on " + name + " in\n" + source);
+        }
+    }
+
+    private void statement(int depth) {
+        switch (depth == MAX_DEPTH ? 0 : random.nextInt(5)) {
+            case 1:
+                ifStatement(depth);
+                break;
+            case 2:
+                whileStatement(depth);
+                break;
+            case 3:
+                forStatement(depth);
+                break;
+            default:
+                assignment();
+                break;
+        }
+    }
+
+    private void assignment() {
+        String value = expression(MAX_DEPTH);
+        out.append(VARIABLES[random.nextInt(VARIABLES.length)]).append(" = ")
+                .append(bounded ? "(" + value + ") % 1000" : value).append('\n');
+    }
+
+    // The parser needs an else to close every if. An if with an elsif only parses where no else
+    // follows it, as the if after an elsif goes on to take the next else as its own.
+    private void ifStatement(int depth) {
+        out.append("if ").append(expression(1)).append('\n');
+        block(depth);
+        if (depth == 0 && random.nextBoolean()) {
+            out.append("elsif ").append(expression(1)).append('\n');
+            block(depth);
+        }
+        out.append("else\n");
+        block(depth);
+        out.append("end\n");
+    }
+
+    private void whileStatement(int depth) {
+        String counter = "w" + loops++;
+        out.append(counter).append(" = 0\n");
+        out.append("while ").append(counter).append(" < ").append(random.nextInt(4)).append('\n');
+        out.append(counter).append(" = ").append(counter).append(" + 1\n");
+        loopBody(counter, depth);
+    }
+
+    // The upper bound is either a constant or a variable % 4, which is below 4 whatever it holds
+    private void forStatement(int depth) {
+        String variable = "i" + loops++;
+        int from = random.nextInt(5) - 2;
+        String to = random.nextBoolean() ? String.valueOf(from + random.nextInt(5) - 1)
+                : "(" + readable.get(random.nextInt(readable.size())) + " % 4)";
+        out.append("for ").append(variable).append(" in ").append(from).append("..").append(to)
+                .append('\n');
+        loopBody(variable, depth);
+    }
+
+    private void loopBody(String variable, int depth) {
+        readable.add(variable);
+        block(depth);
+        readable.remove(readable.size() - 1);
+        out.append("end\n");
+    }
+
+    private void block(int depth) {
+        int statements = 1 + random.nextInt(3);
+        for (int i = 0; i < statements; i++) {
+            statement(depth + 1);
+        }
+    }
+
+    private String expression(int depth) {
+        if (depth == 0 || random.nextInt(3) == 0) {
+            return leaf();
+        }
+        if (random.nextInt(8) == 0) {
+            return "-" + leaf();
+        }
+        String operator = OPERATORS[random.nextInt(OPERATORS.length)];
+        return "(" + expression(depth - 1) + " " + operator + " " + expression(depth - 1) + ")";
+    }
+
+    private String leaf() {
+        switch (random.nextInt(4)) {
+            case 0:
+                return String.valueOf(random.nextInt(100));
+            case 1:
+                return random.nextInt(10) + ".5";
+            default:
+                return readable.get(random.nextInt(readable.size()));
+        }
+    }
+}
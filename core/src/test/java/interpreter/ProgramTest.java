@@ -0,0 +1,53 @@
+package interpreter;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+class ProgramTest {
+
+    // The optimizer removes the only assignment to limit, but it can still be given as an input
+    @Test
+    void namesInOptimizedAwayCodeKeepTheirSlots() {
+        Program program = Program.compile("if 1 > 2\nlimit = 0\nelse\ny = limit + 2\nend");
+        ExecutionContext context = program.newContext().set("limit", 3).run();
+        assertEquals(5.0, context.get("y"));
+        assertThrows(IllegalArgumentException.class, () -> program.newContext().set("other", 1));
+    }
+
+    @Test
+    void contextsAreIndependentAndReusable() {
+        Program program = Program.compile("s = s + n\nn = n * 2");
+        ExecutionContext first = program.newContext().set("n", 1).run().run();
+        ExecutionContext second = program.newContext().set("n", 10).run();
+        assertEquals(3.0, first.get("s"));
+        assertEquals(10.0, second.get("s"));
+        first.reset().set("n", 5).run();
+        assertEquals(5.0, first.get("s"));
+        assertEquals(10.0, first.get("n"));
+    }
+
+    @Test
+    void oneProgramRunsOnManyThreads() throws Exception {
+        Program program = Program.compile(
+                "s = 0\ni = 0\nwhile i < n\nfor j in 1..3\ns = s + i * j\nend\ni = i + 1\nend");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Double>> results = new ArrayList<>();
+            for (int n = 0; n < 200; n++) {
+                int input = n;
+                results.add(executor.submit(() -> program.newContext().set("n", input).run().get("s")));
+            }
+            for (int n = 0; n < results.size(); n++) {
+                assertEquals((double) (3 * n * (n - 1)), results.get(n).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
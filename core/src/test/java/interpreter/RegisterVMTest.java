@@ -0,0 +1,175 @@
+package interpreter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static interpreter.RegisterProgram.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class RegisterVMTest {
+    private static final String LOOPS = "s = 0\ni = 0\nwhile i < 10\nif i % 3 == 0\n" +
+            "s = s + i * 2\nelse\ns = s - 1\nend\nfor j in 1..i\ns = s + j\nend\ni = i + 1\nend";
+
+    @Test
+    void writtenProgramReadsBackTheSame() throws IOException {
+        ProgramGenerator generator = new ProgramGenerator(40);
+        for (int i = 0; i < 100; i++) {
+            RegisterProgram program = RegisterCompiler.compile(ProgramGenerator.parse(generator.program()));
+            RegisterProgram copy = read(image(program));
+            assertArrayEquals(program.code, copy.code);
+            assertArrayEquals(program.constants, copy.constants);
+            assertArrayEquals(program.variables, copy.variables);
+            assertArrayEquals(program.run(), copy.run());
+        }
+    }
+
+    @Test
+    void readRejectsOtherData() {
+        byte[] bytes = {'R', 'V', 'M', '1', 0, 0, 0, 0};
+        assertThrows(IOException.class, () -> read(bytes));
+    }
+
+    @Test
+    void truncatedImagesAreRejected() throws IOException {
+        byte[] image = image(RegisterCompiler.compile(ProgramGenerator.parse(LOOPS)));
+        for (int length = 0; length < image.length; length++) {
+            byte[] truncated = Arrays.copyOf(image, length);
+            assertThrows(IOException.class, () -> read(truncated), "length " + length);
+        }
+    }
+
+    // The header is magic, register count, variable count, constant count and code length; with
+    // no variables or constants the two counts sit at offsets 8 and 12. The code grows as it is
+    // read, so a huge length ends in EOFException instead of a huge allocation.
+    @Test
+    void badCountsAreRejected() throws IOException {
+        byte[] image = image(new RegisterProgram(new int[] {HALT}, new double[0], 0,
+                new String[0]));
+        read(image);
+        for (int offset : new int[] {8, 12}) {
+            for (int count : new int[] {-1, Integer.MAX_VALUE, 1 << 28}) {
+                byte[] damaged = image.clone();
+                ByteBuffer.wrap(damaged).putInt(offset, count);
+                assertThrows(IOException.class, () -> read(damaged), offset + ": " + count);
+            }
+        }
+    }
+
+    @Test
+    void badRegisterCountsAreRejected() {
+        assertRejected(new RegisterProgram(new int[] {HALT}, new double[0], 1,
+                new String[] {"x", "y"}));
+        assertRejected(new RegisterProgram(new int[] {HALT}, new double[0], MAX_REGISTERS + 1,
+                new String[0]));
+    }
+
+    @Test
+    void badInstructionsAreRejected() {
+        // Unknown opcode
+        assertRejected(program(99, HALT));
+        // Register operands past the register file, in each position
+        assertRejected(program(insn(ADD, 2, 0, 1), HALT));
+        assertRejected(program(insn(MOVE, 0, 2, 0), HALT));
+        assertRejected(program(insn(LT, 0, 1, 200), HALT));
+        assertRejected(program(insn(JZ, 2, 0, 0), 3, HALT));
+        assertRejected(program(insn(FORPREP, 0, 9, 0), 3, HALT));
+        // LOADK past the single constant
+        assertRejected(program(LOADK | 1 << 16, HALT));
+    }
+
+    @Test
+    void badJumpsAreRejected() {
+        // Past the end, and into the target word of another jump
+        assertRejected(program(JMP, 7));
+        assertRejected(program(insn(JZ, 0, 0, 0), 4, JMP, 1, HALT));
+        // A jump with no target word
+        assertRejected(program(HALT, JMP));
+        // Backward jumps must land on a TICK
+        assertRejected(program(insn(MOVE, 0, 1, 0), JMP, 0));
+        assertRejected(program(TICK, insn(FORLOOP, 0, 1, 0), 0, insn(FORLOOP, 0, 1, 0), 3, HALT));
+        // The last instruction must not fall through
+        assertRejected(program(TICK));
+        assertRejected(program(insn(JZ, 0, 0, 0), 0));
+    }
+
+    // A cycle through a TICK loads, and the budget stops it
+    @Test
+    void loopsThroughATickLoadAndAreBudgeted() throws IOException {
+        RegisterProgram program = read(image(program(TICK, JMP, 0)));
+        assertThrows(BudgetExceededException.class,
+                () -> program.execute(program.newMemory(), Budget.iterations(100)));
+    }
+
+    // Validation keeps every operand and jump in range and every cycle through a TICK, so a
+    // damaged image either fails to load or runs until it halts or the budget stops it
+    @Test
+    void damagedImagesFailToLoadOrRunSafely() throws IOException {
+        byte[] image = image(RegisterCompiler.compile(ProgramGenerator.parse(LOOPS)));
+        Random random = new Random(40);
+        for (int i = 0; i < 5000; i++) {
+            byte[] damaged = image.clone();
+            damaged[random.nextInt(damaged.length)] ^= (byte) (1 << random.nextInt(8));
+            RegisterProgram program;
+            try {
+                program = read(damaged);
+            } catch (IOException e) {
+                continue;
+            }
+            try {
+                program.execute(program.newMemory(), Budget.iterations(10_000));
+            } catch (BudgetExceededException e) {
+                // Expected for conditions that no longer end the loop
+            }
+        }
+    }
+
+    // A right-leaning expression holds one temporary per level; a left-leaning one reuses its
+    // target, so only the right runs out of registers
+    @Test
+    void deepExpressionsRunOutOfRegisters() {
+        String source = ProgramGenerator.deepExpressions(200);
+        RegisterProgram program = RegisterCompiler.compile(ProgramGenerator.parse(source));
+        double[] memory = program.run();
+        ProgramGenerator.assertMatchesInterpreter(source, "register",
+                name -> program.getVariable(memory, name));
+        assertTrue(program.registerCount < 210);
+
+        String left = "x = 3\nl = x" + " + x - 2".repeat(1000);
+        RegisterProgram chain = RegisterCompiler.compile(ProgramGenerator.parse(left));
+        assertEquals(3.0 + 1000, chain.getVariable(chain.run(), "l"));
+        assertTrue(chain.registerCount <= 4);
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> RegisterCompiler.compile(
+                ProgramGenerator.parse(ProgramGenerator.deepExpressions(300))));
+        assertEquals("Expression too deep", e.getMessage());
+    }
+
+    private static int insn(int op, int a, int b, int c) {
+        return op | a << 8 | b << 16 | c << 24;
+    }
+
+    // Two registers, one for the variable x, and one constant
+    private static RegisterProgram program(int... code) {
+        return new RegisterProgram(code, new double[] {1.0}, 2, new String[] {"x"});
+    }
+
+    private static void assertRejected(RegisterProgram program) {
+        assertThrows(IOException.class, () -> read(image(program)),
+                () -> Arrays.toString(program.code));
+    }
+
+    private static byte[] image(RegisterProgram program) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        program.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static RegisterProgram read(byte[] image) throws IOException {
+        return RegisterProgram.read(new DataInputStream(new ByteArrayInputStream(image)));
+    }
+}
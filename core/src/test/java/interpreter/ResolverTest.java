@@ -0,0 +1,73 @@
+package interpreter;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class ResolverTest {
+
+    // Slots follow first appearance, and each name reads back the value assigned to it, so no two
+    // names share a slot
+    @Test
+    void namesThatSharePrefixesOrDifferInCaseGetTheirOwnSlots() {
+        List<String> names = List.of("a", "ab", "abc", "A", "Ab", "AB", "aB", "a_b", "ab1");
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < names.size(); i++) {
+            source.append(names.get(i)).append(" = ").append(i + 1).append('\n');
+        }
+        FlatTree program = FlatTree.of(ProgramGenerator.parse(source.toString()));
+        assertEquals(names, program.getScope().getNames());
+        double[] memory = program.newMemory();
+        program.execute(memory);
+        for (int i = 0; i < names.size(); i++) {
+            assertEquals(i, program.getScope().slotOf(names.get(i)));
+            assertEquals(i + 1.0, memory[i], names.get(i));
+        }
+        assertEquals(-1, program.getScope().slotOf("abcd"));
+    }
+
+    @Test
+    void resolvingAgainAddsNothing() {
+        AST tree = ProgramGenerator.parse("x = 1\nfor i in 1..3\ny = x + i\nend");
+        Scope scope = Resolver.resolve(tree);
+        assertEquals(List.of("x", "i", "y"), scope.getNames());
+        assertSame(scope, Resolver.resolve(tree, scope));
+        assertEquals(List.of("x", "i", "y"), scope.getNames());
+    }
+
+    // A later program in the same scope keeps the earlier slots and appends its new names, so
+    // memory left by the first program is read where the second expects it
+    @Test
+    void flatTreesInASharedScopeKeepEarlierSlots() {
+        FlatTree first = FlatTree.of(ProgramGenerator.parse("x = 1\ny = 2"));
+        double[] memory = first.newMemory();
+        first.execute(memory);
+
+        Scope scope = first.getScope();
+        FlatTree second = FlatTree.of(ProgramGenerator.parse("z = y + 1\nx = z * 2"), scope);
+        assertSame(scope, second.getScope());
+        assertEquals(List.of("x", "y", "z"), scope.getNames());
+        memory = scope.ensureFrame(memory);
+        second.execute(memory);
+        assertArrayEquals(new double[] {6, 2, 3}, memory);
+    }
+
+    // Every variable lives in a register, so MAX_REGISTERS of them fit and one more does not
+    @Test
+    void registerCompilerRejectsMoreVariablesThanRegisters() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < RegisterProgram.MAX_REGISTERS; i++) {
+            source.append('v').append(i).append(" = ").append(i).append('\n');
+        }
+        RegisterProgram program = RegisterCompiler.compile(ProgramGenerator.parse(
+                source.toString()));
+        assertEquals(255.0, program.getVariable(program.run(), "v255"));
+        source.append("v256 = 256\n");
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> RegisterCompiler.compile(ProgramGenerator.parse(source.toString())));
+        assertEquals("Too many variables for the register file", e.getMessage());
+    }
+}
@@ -0,0 +1,184 @@
+package interpreter;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+// Counters are updated just after a future completes, so tests read them after close()
+class ScriptServiceTest {
+    private static final String ENDLESS = "x = 0\nwhile 1 < 2\nx = x + 1\nend";
+
+    // A program that holds its thread until released, so tests decide when scripts end
+    static class Blocking implements Program {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Semaphore started = new Semaphore(0);
+        final AtomicInteger runs = new AtomicInteger();
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        volatile Thread thread;
+
+        @Override
+        public Scope getScope() {
+            return new Scope();
+        }
+
+        @Override
+        public void execute(double[] memory, Budget budget) {
+            thread = Thread.currentThread();
+            runs.incrementAndGet();
+            started.release();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        }
+
+        void awaitStarted(int count) throws InterruptedException {
+            assertTrue(started.tryAcquire(count, 5, TimeUnit.SECONDS));
+            started.release(count);
+        }
+    }
+
+    @Test
+    void runsScriptsOnThePlatformPool() throws Exception {
+        try (ScriptService service = new ScriptService(2, 2, ScriptService.NO_TIMEOUT)) {
+            Blocking program = new Blocking();
+            program.release.countDown();
+            service.submit(program, context -> { }).get(5, TimeUnit.SECONDS);
+            assertTrue(program.thread.isDaemon());
+            assertTrue(program.thread.getName().startsWith("script-"), program.thread.getName());
+            ExecutionContext context = service.submit("y = x * 2", c -> c.set("x", 21))
+                    .get(5, TimeUnit.SECONDS);
+            assertEquals(42.0, context.get("y"));
+            service.close();
+            assertEquals(2, service.getCompleted());
+        }
+    }
+
+    // Two run, the third waits for a turn
+    @Test
+    void runsAtMostMaxConcurrencyAtOnce() throws Exception {
+        try (ScriptService service = new ScriptService(2, 1, ScriptService.NO_TIMEOUT)) {
+            Blocking program = new Blocking();
+            CompletableFuture<?>[] results = new CompletableFuture<?>[3];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = service.submit(program, context -> { });
+            }
+            program.awaitStarted(2);
+            Thread.sleep(100);
+            assertEquals(2, program.runs.get());
+            program.release.countDown();
+            CompletableFuture.allOf(results).get(5, TimeUnit.SECONDS);
+            assertEquals(3, program.runs.get());
+        }
+    }
+
+    // One running and one queued fill the service, so a third submit() blocks until one ends
+    @Test
+    void submitBlocksWhileTheServiceIsFull() throws Exception {
+        ExecutorService producer = Executors.newSingleThreadExecutor();
+        try (ScriptService service = new ScriptService(1, 1, ScriptService.NO_TIMEOUT)) {
+            Blocking program = new Blocking();
+            service.submit(program, context -> { });
+            service.submit(program, context -> { });
+            Future<CompletableFuture<ExecutionContext>> third =
+                    producer.submit(() -> service.submit("x = 1"));
+            assertThrows(TimeoutException.class, () -> third.get(200, TimeUnit.MILLISECONDS));
+            program.release.countDown();
+            assertEquals(1.0, third.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS).get("x"));
+        } finally {
+            producer.shutdown();
+        }
+    }
+
+    @Test
+    void timedSubmitRejectsWhenTheServiceIsFull() throws Exception {
+        try (ScriptService service = new ScriptService(1, 0, ScriptService.NO_TIMEOUT)) {
+            Blocking program = new Blocking();
+            service.submit(program, context -> { });
+            program.awaitStarted(1);
+            assertThrows(RejectedExecutionException.class,
+                    () -> service.submit("x = 1", context -> { }, 0, TimeUnit.SECONDS));
+            assertThrows(RejectedExecutionException.class,
+                    () -> service.submit("x = 1", context -> { }, 50, TimeUnit.MILLISECONDS));
+            program.release.countDown();
+            assertEquals(1.0, service.submit("x = 1", context -> { }, 5, TimeUnit.SECONDS)
+                    .get(5, TimeUnit.SECONDS).get("x"));
+        }
+    }
+
+    // The script never checks its Budget, so only the interrupt can stop it
+    @Test
+    void timeoutInterruptsTheRunningScript() throws Exception {
+        try (ScriptService service = new ScriptService(1, 1, 100)) {
+            Blocking program = new Blocking();
+            CompletableFuture<ExecutionContext> result = service.submit(program, context -> { });
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> result.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(TimeoutException.class, e.getCause());
+            // The thread is free for the next script once the interrupt has ended the run
+            assertEquals(2.0, service.submit("x = 2").get(5, TimeUnit.SECONDS).get("x"));
+            assertTrue(program.interrupted.get());
+            service.close();
+            assertEquals(1, service.getTimedOut());
+            assertEquals(0, service.getFailed());
+        }
+    }
+
+    @Test
+    void scriptsCancelledWhileQueuedNeverRun() throws Exception {
+        try (ScriptService service = new ScriptService(1, 1, ScriptService.NO_TIMEOUT)) {
+            Blocking running = new Blocking();
+            Blocking queued = new Blocking();
+            queued.release.countDown();
+            CompletableFuture<ExecutionContext> first = service.submit(running, context -> { });
+            CompletableFuture<ExecutionContext> second = service.submit(queued, context -> { });
+            running.awaitStarted(1);
+            assertTrue(second.cancel(true));
+            running.release.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            // The cancelled script gives back its place without running
+            service.submit("x = 1").get(5, TimeUnit.SECONDS);
+            assertEquals(0, queued.runs.get());
+            service.close();
+            assertEquals(2, service.getCompleted());
+        }
+    }
+
+    // Both scripts were admitted before shutdown(), so the second, which only starts after the
+    // first has timed out, must still get its own timeout. Once both end, every thread ends.
+    @Test
+    void shutdownKeepsTimeoutsForAdmittedScripts() throws Exception {
+        ScriptService service = new ScriptService(1, 1, 100);
+        Blocking program = new Blocking();
+        CompletableFuture<ExecutionContext> first = service.submit(program, context -> { });
+        CompletableFuture<ExecutionContext> second = service.submit(program, context -> { });
+        service.shutdown();
+        assertThrows(RejectedExecutionException.class, () -> service.submit("x = 1"));
+        for (CompletableFuture<ExecutionContext> result : List.of(first, second)) {
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> result.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(TimeoutException.class, e.getCause());
+        }
+        service.awaitTermination();
+        assertTrue(service.isTerminated());
+        assertEquals(2, service.getTimedOut());
+    }
+
+    @Test
+    void budgetStopsScriptsWithoutATimeout() {
+        try (ScriptService service = new ScriptService(1, 0, ScriptService.NO_TIMEOUT, 1000)) {
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> service.submit(ENDLESS).get(5, TimeUnit.SECONDS));
+            assertInstanceOf(BudgetExceededException.class, e.getCause());
+            service.close();
+            assertEquals(1, service.getFailed());
+        }
+    }
+}
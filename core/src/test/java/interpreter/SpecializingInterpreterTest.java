@@ -0,0 +1,57 @@
+package interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+class SpecializingInterpreterTest {
+
+    // Bounded, so integers stay exact in the double engines too. Long nodes give 0 where the
+    // double engines give -0.0, hence the + 0.0 on both sides.
+    @Test
+    void matchesInterpreterOnBoundedPrograms() {
+        ProgramGenerator generator = new ProgramGenerator(23, true);
+        for (int i = 0; i < 500; i++) {
+            String source = generator.program();
+            SpecializingInterpreter specializing = new SpecializingInterpreter(
+                    ProgramGenerator.parse(source));
+            specializing.interpret();
+            Interpreter interpreter = new Interpreter(ProgramGenerator.parse(source));
+            interpreter.interpret();
+            for (String name : Resolver.resolve(ProgramGenerator.parse(source)).getNames()) {
+                assertEquals(interpreter.getVariable(name) + 0.0,
+                        specializing.getVariable(name) + 0.0,
+                        () -> "specializing disagrees on " + name + " in\n" + source);
+            }
+        }
+    }
+
+    // i / 2 is a long for even i and a double for odd i, so the sum turns double
+    @Test
+    void longNodesMoveToDoubleOnInexactDivision() {
+        SpecializingInterpreter interpreter = run(
+                "s = 0\ni = 1\nwhile i < 6\ns = s + i / 2\ni = i + 1\nend");
+        assertEquals(7.5, interpreter.getValue("s"));
+        assertEquals(6L, interpreter.getValue("i"));
+    }
+
+    @Test
+    void stringsConcatenateAndCompare() {
+        SpecializingInterpreter interpreter = run(
+                "s = \"a\"\ni = 0\nwhile i < 3\ns = s + \"b\"\ni = i + 1\nend\n" +
+                "t = s > \"ab\"\nu = s == 1");
+        assertEquals("abbb", interpreter.getValue("s"));
+        assertEquals(1L, interpreter.getValue("t"));
+        assertEquals(0L, interpreter.getValue("u"));
+        assertThrows(RuntimeException.class, () -> run("x = 1\ny = \"a\" - x"));
+    }
+
+    private static SpecializingInterpreter run(String source) {
+        SpecializingInterpreter interpreter = new SpecializingInterpreter(
+                ProgramGenerator.parse(source));
+        interpreter.interpret();
+        return interpreter;
+    }
+}